@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat.benchmarks;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import thermostat.FlatTree;
+import thermostat.SquarifiedTreeMap;
+import thermostat.TreeMapNode;
+import thermostat.TreeProcessor;
+import thermostat.benchmarks.TreeShapes.Shape;
+
+/**
+ * Benchmarks for the layout engine: a single squarify step on the root's 
+ * children, and the processing of the whole tree, as nodes and as a 
+ * {@link FlatTree}.
+ * <p>Laying out changes its input: weights are normalized, rectangles and 
+ * colors are set and children are sorted. So the trees are rebuilt from 
+ * the same seed before each invocation, in a setup that isn't measured, 
+ * and every invocation lays out a fresh tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss16m", "-Djava.awt.headless=true"})
+public class LayoutBenchmark {
+
+    @Param({"FLAT", "DEEP", "ZIPF"})
+    public Shape shape;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private TreeMapNode tree;
+
+    private FlatTree flatTree;
+
+    private List<TreeMapNode> rootChildren;
+
+    private Rectangle2D.Double area;
+
+    @Setup
+    public void setUp() {
+        area = new Rectangle2D.Double(0, 0, 1920, 1080);
+    }
+
+    @Setup(Level.Invocation)
+    public void buildTrees() {
+        tree = TreeShapes.tree(shape, size);
+        flatTree = FlatTree.fromNodes(tree);
+        rootChildren = tree.getChildren();
+    }
+
+    @Benchmark
+    public List<TreeMapNode> squarify() {
+        return new SquarifiedTreeMap(new Rectangle2D.Double(0, 0, 1920, 1080), 
+                rootChildren).squarify();
+    }
+
+    @Benchmark
+    public TreeMapNode processTreeMap() {
+        return TreeProcessor.processTreeMap(tree, 
+                new Rectangle2D.Double(area.x, area.y, area.width, area.height));
+    }
+
+    @Benchmark
+    public FlatTree processFlatTree() {
+        return TreeProcessor.processTreeMap(flatTree, 
+                new Rectangle2D.Double(area.x, area.y, area.width, area.height));
+    }
+}
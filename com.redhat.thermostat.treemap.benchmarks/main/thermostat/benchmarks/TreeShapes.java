@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import thermostat.TreeMapNode;
+import thermostat.WorkloadGenerator;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+/**
+ * Builds the inputs used by benchmarks. All inputs are generated from a fixed
+ * seed, so every run measures the same data.
+ */
+public class TreeShapes {
+
+    /**
+     * The shape of the generated trees.
+     */
+    public enum Shape {
+        /** A root with all the nodes as direct children. */
+        FLAT,
+        /** A complete binary tree. */
+        DEEP,
+        /** Random fan-out with Zipf distributed weights, like a real heap. */
+        ZIPF
+    }
+
+    private static final long SEED = 42;
+
+    /**
+     * Create a tree having the given shape and the given number of nodes.
+     * @param shape the tree shape.
+     * @param size the number of nodes, root excluded.
+     * @return the tree's root.
+     */
+    public static TreeMapNode tree(Shape shape, int size) {
+        Random random = new Random(SEED);
+        TreeMapNode root = new TreeMapNode("root", 0);
+        Deque<TreeMapNode> parents = new ArrayDeque<>();
+        parents.add(root);
+
+        for (int i = 0; i < size; i++) {
+            TreeMapNode parent = parents.peekFirst();
+            TreeMapNode node = new TreeMapNode("node" + i, weight(shape, random, i));
+            parent.addChild(node);
+            parents.addLast(node);
+
+            switch (shape) {
+                case FLAT:
+                    // never change parent
+                    parents.removeLast();
+                    break;
+                case DEEP:
+                    if (parent.getChildren().size() == 2) {
+                        parents.removeFirst();
+                    }
+                    break;
+                case ZIPF:
+                    if (random.nextInt(16) == 0) {
+                        parents.removeFirst();
+                    }
+                    break;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Create an histogram with the given number of classes. Package nesting
+     * follows the given shape: all classes in one package, a deep package 
+     * hierarchy, or a realistic heap made by {@link WorkloadGenerator}.
+     * @param shape the histogram shape.
+     * @param size the number of records.
+     * @return the histogram.
+     */
+    public static ObjectHistogram histogram(Shape shape, int size) {
+        if (shape == Shape.ZIPF) {
+            return new WorkloadGenerator(SEED).histogram(size);
+        }
+        Random random = new Random(SEED);
+        ObjectHistogram histogram = new ObjectHistogram();
+        for (int i = 0; i < size; i++) {
+            String pkg;
+            switch (shape) {
+                case FLAT:
+                    pkg = "com.example";
+                    break;
+                default:
+                    pkg = "com.example" + binaryPath(i);
+                    break;
+            }
+            long bytes = (long) weight(shape, random, i);
+            histogram.addRecord(new HistogramRecord(pkg + ".Class" + i, bytes / 16 + 1, bytes));
+        }
+        return histogram;
+    }
+
+    private static String binaryPath(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = i + 1; n > 1; n >>= 1) {
+            sb.append(".b").append(n & 1);
+        }
+        return sb.toString();
+    }
+
+    private static double weight(Shape shape, Random random, int i) {
+        if (shape == Shape.ZIPF) {
+            // rank drawn at random, weight proportional to 1 / rank
+            return 1e9 / (1 + random.nextInt(1 + i));
+        }
+        return 1 + random.nextInt(1000);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.geom.Rectangle2D;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class records the events of {@link TreeMapEvents} with Java Flight 
+ * Recorder. It is built apart from the other classes, as it needs the 
+ * jdk.jfr module, and it is only loaded by reflection when JFR is 
+ * available.
+ */
+final class JfrRecorder extends TreeMapEvents.Recorder {
+
+    JfrRecorder() {
+    }
+
+    @Override
+    Object begin(String name) {
+        Event event;
+        switch (name) {
+            case TreeMapEvents.CONVERSION:
+                event = new ConversionEvent();
+                break;
+            case TreeMapEvents.LAYOUT:
+                event = new LayoutEvent();
+                break;
+            case TreeMapEvents.PAINT:
+                event = new PaintEvent();
+                break;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    boolean end(Object event) {
+        Event e = (Event) event;
+        e.end();
+        return e.shouldCommit();
+    }
+
+    @Override
+    void commitConversion(Object event, int records, int nodes, int depth) {
+        ConversionEvent e = (ConversionEvent) event;
+        e.records = records;
+        e.nodes = nodes;
+        e.depth = depth;
+        e.commit();
+    }
+
+    @Override
+    void commitLayout(Object event, TreeMapMetrics.LayoutSample sample, 
+            Rectangle2D area) {
+        LayoutEvent e = (LayoutEvent) event;
+        e.nodes = sample.placed;
+        e.visited = sample.visited;
+        e.culled = sample.culled;
+        e.depth = sample.depth;
+        e.width = area.getWidth();
+        e.height = area.getHeight();
+        e.sortTime = sample.sortTime;
+        e.normalizeTime = sample.normalizeTime;
+        e.squarifyTime = sample.squarifyTime;
+        e.squarifySteps = sample.squarifySteps;
+        e.commit();
+    }
+
+    @Override
+    void commitPaint(Object event, int nodes, int depth, int width, 
+            int height, boolean rendered) {
+        PaintEvent e = (PaintEvent) event;
+        e.nodes = nodes;
+        e.depth = depth;
+        e.width = width;
+        e.height = height;
+        e.rendered = rendered;
+        e.commit();
+    }
+
+    @Name(TreeMapEvents.CONVERSION)
+    @Label("TreeMap Conversion")
+    @Description("Conversion of an object histogram to a tree")
+    @Category({ "Thermostat", "TreeMap" })
+    @StackTrace(false)
+    static class ConversionEvent extends Event {
+        @Label("Records")
+        int records;
+
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name(TreeMapEvents.LAYOUT)
+    @Label("TreeMap Layout")
+    @Description("Calculation of the rectangles of a tree")
+    @Category({ "Thermostat", "TreeMap" })
+    @StackTrace(false)
+    static class LayoutEvent extends Event {
+        @Label("Nodes")
+        @Description("Nodes placed by the layout")
+        long nodes;
+
+        @Label("Visited")
+        @Description("Nodes whose children have been laid out")
+        long visited;
+
+        @Label("Culled")
+        @Description("Nodes too small to be processed")
+        long culled;
+
+        @Label("Depth")
+        @Description("Depth of the deepest visited node")
+        int depth;
+
+        @Label("Width")
+        double width;
+
+        @Label("Height")
+        double height;
+
+        @Label("Sort Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long sortTime;
+
+        @Label("Normalize Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long normalizeTime;
+
+        @Label("Squarify Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long squarifyTime;
+
+        @Label("Squarify Steps")
+        @Description("Greedy steps of the squarified algorithm")
+        long squarifySteps;
+    }
+
+    @Name(TreeMapEvents.PAINT)
+    @Label("TreeMap Paint")
+    @Description("Paint of a TreeMap component")
+    @Category({ "Thermostat", "TreeMap" })
+    @StackTrace(false)
+    static class PaintEvent extends Event {
+        @Label("Nodes")
+        @Description("Nodes shown by the component")
+        int nodes;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Rendered")
+        @Description("True if the TreeMap image has been rendered again")
+        boolean rendered;
+    }
+}
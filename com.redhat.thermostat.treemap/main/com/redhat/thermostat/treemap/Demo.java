@@ -3,7 +3,8 @@ package com.redhat.thermostat.treemap;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
-import java.util.Random;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import javax.swing.JFrame;
 
@@ -11,6 +12,8 @@ import com.redhat.thermostat.treemap.impl.TreeMapComponent;
 import com.redhat.thermostat.treemap.impl.TreeMapToolbar;
 import com.redhat.thermostat.treemap.model.TreeMapNode;
 
+import thermostat.WorkloadGenerator;
+
 /**
  * This class provides a demo for Thermostat TreeMap instantiation and usage.
  */
@@ -36,24 +39,37 @@ public class Demo {
         f.setVisible(true);
     }
 
-    
+    /**
+     * Seed of the generated trees, so that each run shows the same TreeMap.
+     */
+    private static final long SEED = 0;
+
     static int generatorCounter;
-    static int id = 0;
-    public static void generateTree(TreeMapNode root, int levels, int childrenNumber, boolean random) {        
-        TreeMapNode node;
-        if (levels == 0) {
-        } else {
-            Random rand = new Random();
-            int children = random ? rand.nextInt(childrenNumber) + 1 : childrenNumber;
-            for (int i = 0; i < children; i++) {
-                int val = rand.nextInt(50);
-                id++;
-                node = new TreeMapNode("Node #" + id, val);
-                root.addChild(node);
+
+    /**
+     * Add to the given node the children of a tree generated by a seeded
+     * {@link WorkloadGenerator}. Each node has <i>childrenNumber</i> 
+     * children, or a random number in [1, childrenNumber] if <i>random</i> 
+     * is true.
+     */
+    public static void generateTree(TreeMapNode root, int levels, int childrenNumber, boolean random) {
+        thermostat.TreeMapNode generated = new WorkloadGenerator(SEED).tree(levels, 
+                childrenNumber, random);
+        // the generator builds nodes of the thermostat package, copy them
+        Deque<thermostat.TreeMapNode> sources = new ArrayDeque<>();
+        Deque<TreeMapNode> targets = new ArrayDeque<>();
+        sources.push(generated);
+        targets.push(root);
+        while (!sources.isEmpty()) {
+            thermostat.TreeMapNode source = sources.pop();
+            TreeMapNode target = targets.pop();
+            for (thermostat.TreeMapNode child : source.getChildren()) {
+                TreeMapNode node = new TreeMapNode(child.getLabel(), 0);
+                node.setRealWeight(child.getRealWeight());
+                target.addChild(node);
                 generatorCounter++;
-            }
-            for (TreeMapNode child : root.getChildren()) {
-                generateTree(child, levels-1, childrenNumber, random);
+                sources.push(child);
+                targets.push(node);
             }
         }
     }
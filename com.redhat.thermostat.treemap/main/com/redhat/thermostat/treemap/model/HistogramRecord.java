@@ -41,9 +41,18 @@ import java.util.Objects;
 
 public class HistogramRecord implements Serializable {
 
+    /**
+     * The value computed for the records without module and class loader, 
+     * so that their serialized form can still be read. Those records are 
+     * read with a null module and class loader.
+     */
+    private static final long serialVersionUID = 1062481296875422236L;
+
     String classname;
     long numberOf;
     long totalSize;
+    private String module;
+    private String classLoader;
 
     HistogramRecord(String classname) {
         this(classname, 0, 0);
@@ -55,6 +64,19 @@ public class HistogramRecord implements Serializable {
         this.totalSize = totalSize;
     }
 
+    /**
+     * Constructor for records which know where their class comes from.
+     * @param module the name of the class' module, or null if unknown or 
+     * unnamed.
+     * @param classLoader the name of the class' loader, or null if unknown.
+     */
+    public HistogramRecord(String classname, long numberOf, long totalSize, 
+            String module, String classLoader) {
+        this(classname, numberOf, totalSize);
+        this.module = module;
+        this.classLoader = classLoader;
+    }
+
     public String getClassname() {
         return classname;
     }
@@ -67,18 +89,33 @@ public class HistogramRecord implements Serializable {
         return totalSize;
     }
 
+    /**
+     * @return the name of the class' module, or null if unknown or unnamed.
+     */
+    public String getModule() {
+        return module;
+    }
+
+    /**
+     * @return the name of the class' loader, or null if unknown.
+     */
+    public String getClassLoader() {
+        return classLoader;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (! (o instanceof HistogramRecord)) {
             return false;
         }
         HistogramRecord other = (HistogramRecord) o;
-        return Objects.equals(classname, other.classname) && numberOf == other.numberOf && totalSize == other.totalSize;
+        return Objects.equals(classname, other.classname) && numberOf == other.numberOf && totalSize == other.totalSize
+                && Objects.equals(module, other.module) && Objects.equals(classLoader, other.classLoader);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(classname, numberOf, totalSize);
+        return Objects.hash(classname, numberOf, totalSize, module, classLoader);
     }
 }
 
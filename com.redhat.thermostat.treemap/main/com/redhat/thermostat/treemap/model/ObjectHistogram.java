@@ -58,6 +58,15 @@ public class ObjectHistogram implements Serializable {
         record.totalSize += 1;//thing.getSize();
     }
 
+    /**
+     * Add the given record to this histogram, replacing the one with the same
+     * class name if present.
+     * @param record the record to add.
+     */
+    public void addRecord(HistogramRecord record) {
+        histogram.put(record.getClassname(), record);
+    }
+
     public Collection<HistogramRecord> getHistogram() {
         return histogram.values();
     }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class describes the typed attributes shared by the nodes of a tree,
+ * like the number of instances of a class. Each attribute has a key and a
+ * type, and is given a slot when registered. The schema also stores the 
+ * values of the nodes sharing it, as primitives in a column per slot 
+ * indexed by each node's row, so that they can be read, compared and sorted
+ * without parsing strings nor boxing, and a node without attributes costs 
+ * nothing.
+ * 
+ * <p>Keys should be resolved to slots once, with {@link #getSlot(String)},
+ * before visiting nodes. Attributes are also shown as strings by 
+ * {@link TreeMapNode#getInfo(String)}.
+ */
+public final class AttributeSchema {
+
+    /**
+     * Types of attributes.
+     */
+    public enum Type {
+        LONG,
+        DOUBLE
+    }
+
+    /**
+     * Slot returned for unknown keys.
+     */
+    public static final int NONE = -1;
+
+    private static final long[] EMPTY = new long[0];
+
+    private final List<String> keys = new ArrayList<>();
+    private final List<Type> types = new ArrayList<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * The values by slot and by row, and the bit sets of the rows having a
+     * value by slot. Columns grow when written.
+     */
+    private long[][] values = new long[0][];
+    private long[][] present = new long[0][];
+    private int rows;
+
+    /**
+     * Register an attribute, or return its slot if already registered with
+     * the same type.
+     * @param key the attribute's key.
+     * @param type the attribute's type.
+     * @return the attribute's slot.
+     * @throws IllegalArgumentException if the key is registered with another
+     * type.
+     */
+    public int register(String key, Type type) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            if (types.get(slot) != type) {
+                throw new IllegalArgumentException("attribute " + key 
+                        + " already registered as " + types.get(slot));
+            }
+            return slot;
+        }
+        slot = keys.size();
+        keys.add(key);
+        types.add(type);
+        slots.put(key, slot);
+        values = Arrays.copyOf(values, slot + 1);
+        values[slot] = EMPTY;
+        present = Arrays.copyOf(present, slot + 1);
+        present[slot] = EMPTY;
+        return slot;
+    }
+
+    /**
+     * @return the slot of the given key, or {@link #NONE} if not registered.
+     */
+    public int getSlot(String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? NONE : slot;
+    }
+
+    /**
+     * @return the number of registered attributes.
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    public String getKey(int slot) {
+        return keys.get(slot);
+    }
+
+    public Type getType(int slot) {
+        return types.get(slot);
+    }
+
+    /**
+     * @return the keys of the registered attributes, ordered by slot.
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Give a node its row of values.
+     * @return the new row.
+     */
+    int newRow() {
+        return rows++;
+    }
+
+    /**
+     * @return true if the given row has a value for the given slot.
+     */
+    boolean has(int slot, int row) {
+        if (slot < 0 || slot >= present.length) {
+            return false;
+        }
+        long[] bits = present[slot];
+        int word = row >>> 6;
+        return word < bits.length && (bits[word] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return the value of the given row for the given slot, which must 
+     * have been set.
+     */
+    long get(int slot, int row) {
+        return values[slot][row];
+    }
+
+    /**
+     * Set the value of the given row for the given slot.
+     */
+    void set(int slot, int row, long bits) {
+        long[] column = values[slot];
+        if (row >= column.length) {
+            column = Arrays.copyOf(column, Math.max(rows, 2 * column.length));
+            values[slot] = column;
+        }
+        column[row] = bits;
+        long[] mask = present[slot];
+        int word = row >>> 6;
+        if (word >= mask.length) {
+            mask = Arrays.copyOf(mask, Math.max((rows + 63) >>> 6, 2 * mask.length));
+            present[slot] = mask;
+        }
+        mask[word] |= 1L << row;
+    }
+
+    /**
+     * Decode a value stored by nodes.
+     */
+    double decode(int slot, long bits) {
+        return types.get(slot) == Type.LONG ? bits : Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @return the string of a value stored by nodes.
+     */
+    String format(int slot, long bits) {
+        return types.get(slot) == Type.LONG ? Long.toString(bits) 
+                : Double.toString(Double.longBitsToDouble(bits));
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage of a {@link FlatTree} outside of the Java heap, in a direct 
+ * {@link ByteBuffer} or in a file mapped in memory.
+ * 
+ * <p>The buffer starts with a header, followed by one fixed size record per
+ * node holding its int fields and then its double fields. When the storage
+ * is backed by a file, the pools of labels and colors are written after the
+ * records on {@link #flush()}. Reopening the file maps the records as they
+ * are and reads labels only when they are asked for, so that a stored tree 
+ * is ready to be processed and drawn without being loaded.
+ */
+final class BufferTreeStorage implements TreeStorage {
+
+    static final int MAGIC = 0x544d4654;
+    static final int VERSION = 1;
+
+    /**
+     * Header fields: magic, version, size, capacity, labels count, colors
+     * count and offset of the pools, or 0 if not written.
+     */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int LABELS_OFFSET = 16;
+    private static final int COLORS_OFFSET = 20;
+    private static final int POOLS_OFFSET = 24;
+    static final int HEADER = 64;
+
+    private static final int DOUBLES = 32;
+    static final int RECORD = DOUBLES + 8 * DOUBLE_FIELDS;
+
+    private static final int NULL_LABEL = -1;
+
+    private ByteBuffer buffer;
+    private final FileChannel channel;
+
+    private int size;
+    private int capacity;
+
+    /**
+     * Pools, in memory once loaded.
+     */
+    private List<String> labels;
+    private int[] colors;
+    private int colorCount;
+
+    /**
+     * Pools written in the file, read on demand until loaded.
+     */
+    private ByteBuffer pools;
+    private int storedLabels;
+    private String[] labelCache;
+
+    private BufferTreeStorage(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return a storage in a direct buffer, for the given number of nodes.
+     */
+    static BufferTreeStorage allocateDirect(int capacity) {
+        BufferTreeStorage storage = new BufferTreeStorage(null);
+        storage.capacity = Math.max(1, capacity);
+        storage.buffer = ByteBuffer.allocateDirect(bytes(storage.capacity))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        storage.initPools();
+        storage.writeHeader(0);
+        return storage;
+    }
+
+    /**
+     * @return a storage in the given file, replacing its content, for the
+     * given number of nodes.
+     */
+    static BufferTreeStorage create(Path file, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        BufferTreeStorage storage = new BufferTreeStorage(channel);
+        try {
+            storage.capacity = Math.max(1, capacity);
+            storage.buffer = storage.map(storage.capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        storage.initPools();
+        storage.writeHeader(0);
+        return storage;
+    }
+
+    /**
+     * @return the storage previously written in the given file.
+     * @throws IOException if the file can't be read or is not a stored tree.
+     */
+    static BufferTreeStorage open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        BufferTreeStorage storage = new BufferTreeStorage(channel);
+        try {
+            storage.read();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return storage;
+    }
+
+    private void read() throws IOException {
+        if (channel.size() < HEADER) {
+            throw new IOException("not a tree file: too short");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("not a tree file: bad magic number");
+        }
+        if (header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("unsupported version " + header.getInt(VERSION_OFFSET));
+        }
+        size = header.getInt(SIZE_OFFSET);
+        capacity = header.getInt(CAPACITY_OFFSET);
+        long poolsOffset = header.getLong(POOLS_OFFSET);
+        if (size < 0 || capacity < size || poolsOffset == 0
+                || channel.size() < (long) bytes(capacity)
+                || poolsOffset < bytes(capacity) || poolsOffset > channel.size()) {
+            throw new IOException("corrupted or unflushed tree file");
+        }
+        buffer = map(capacity);
+
+        storedLabels = header.getInt(LABELS_OFFSET);
+        colorCount = header.getInt(COLORS_OFFSET);
+        pools = channel.map(FileChannel.MapMode.READ_ONLY, poolsOffset, 
+                channel.size() - poolsOffset).order(ByteOrder.LITTLE_ENDIAN);
+        colors = new int[Math.max(8, colorCount)];
+        for (int i = 0; i < colorCount; i++) {
+            colors[i] = pools.getInt(4 * i);
+        }
+        labelCache = new String[storedLabels];
+    }
+
+    private MappedByteBuffer map(int nodes) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes(nodes));
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+
+    private static int bytes(int nodes) {
+        long bytes = HEADER + (long) RECORD * nodes;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("too many nodes for a buffer: " + nodes);
+        }
+        return (int) bytes;
+    }
+
+    private void initPools() {
+        labels = new ArrayList<>();
+        colors = new int[8];
+        colorCount = 0;
+    }
+
+    /**
+     * Read the pools stored in the file, before they are changed or 
+     * overwritten by records.
+     */
+    private void loadPools() {
+        if (labels != null) {
+            return;
+        }
+        List<String> loaded = new ArrayList<>(storedLabels);
+        for (int i = 0; i < storedLabels; i++) {
+            loaded.add(getLabel(i));
+        }
+        labels = loaded;
+        pools = null;
+        labelCache = null;
+    }
+
+    /**
+     * Mark the stored pools as not valid anymore, until the next flush.
+     */
+    private void invalidatePools() {
+        loadPools();
+        buffer.putLong(POOLS_OFFSET, 0);
+    }
+
+    private void writeHeader(long poolsOffset) {
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(SIZE_OFFSET, size);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(LABELS_OFFSET, getLabelCount());
+        buffer.putInt(COLORS_OFFSET, colorCount);
+        buffer.putLong(POOLS_OFFSET, poolsOffset);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void setSize(int size) {
+        this.size = size;
+        buffer.putInt(SIZE_OFFSET, size);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = (int) Math.min(Math.max(required, 2L * capacity), 
+                (Integer.MAX_VALUE - HEADER) / RECORD);
+        if (newCapacity < required) {
+            bytes(required);
+        }
+        // records will overwrite the stored pools
+        invalidatePools();
+        if (channel == null) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(bytes(newCapacity))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer old = buffer.duplicate();
+            old.clear();
+            grown.put(old);
+            buffer = grown;
+        } else {
+            try {
+                buffer = map(newCapacity);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        capacity = newCapacity;
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+    }
+
+    @Override
+    public int getInt(int node, int field) {
+        return buffer.getInt(HEADER + node * RECORD + 4 * field);
+    }
+
+    @Override
+    public void setInt(int node, int field, int value) {
+        buffer.putInt(HEADER + node * RECORD + 4 * field, value);
+    }
+
+    @Override
+    public double getDouble(int node, int field) {
+        return buffer.getDouble(HEADER + node * RECORD + DOUBLES + 8 * field);
+    }
+
+    @Override
+    public void setDouble(int node, int field, double value) {
+        buffer.putDouble(HEADER + node * RECORD + DOUBLES + 8 * field, value);
+    }
+
+    @Override
+    public int getLabelCount() {
+        return labels != null ? labels.size() : storedLabels;
+    }
+
+    @Override
+    public String getLabel(int id) {
+        if (labels != null) {
+            return labels.get(id);
+        }
+        if (id < 0 || id >= storedLabels) {
+            throw new IndexOutOfBoundsException("label " + id + ", count " + storedLabels);
+        }
+        String label = labelCache[id];
+        if (label == null && !isNullLabel(id)) {
+            label = decodeLabel(id);
+            labelCache[id] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Stored pools are: colors, offsets of labels relative to the pools, 
+     * labels as length and UTF-8 bytes.
+     */
+    private int labelOffset(int id) {
+        return (int) pools.getLong(4 * colorCount + 8 * id);
+    }
+
+    private boolean isNullLabel(int id) {
+        return pools.getInt(labelOffset(id)) == NULL_LABEL;
+    }
+
+    private String decodeLabel(int id) {
+        int offset = labelOffset(id);
+        byte[] bytes = new byte[pools.getInt(offset)];
+        ByteBuffer data = pools.duplicate();
+        data.position(offset + 4);
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void addLabel(String label) {
+        invalidatePools();
+        labels.add(label);
+    }
+
+    @Override
+    public int getColorCount() {
+        return colorCount;
+    }
+
+    @Override
+    public int getColor(int id) {
+        return colors[id];
+    }
+
+    @Override
+    public void addColor(int argb) {
+        invalidatePools();
+        if (colorCount == colors.length) {
+            colors = Arrays.copyOf(colors, colorCount * 2);
+        }
+        colors[colorCount++] = argb;
+    }
+
+    @Override
+    public void flush() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (labels != null) {
+                writePools();
+            } else {
+                writeHeader(buffer.getLong(POOLS_OFFSET));
+            }
+            ((MappedByteBuffer) buffer).force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writePools() throws IOException {
+        long poolsOffset = bytes(capacity);
+        byte[][] encoded = new byte[labels.size()][];
+        long length = 4L * colorCount + 8L * labels.size();
+        for (int i = 0; i < encoded.length; i++) {
+            String label = labels.get(i);
+            encoded[i] = label == null ? null : label.getBytes(StandardCharsets.UTF_8);
+            length += 4 + (label == null ? 0 : encoded[i].length);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("labels too large for a buffer");
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < colorCount; i++) {
+            data.putInt(colors[i]);
+        }
+        long offset = 4L * colorCount + 8L * encoded.length;
+        for (byte[] bytes : encoded) {
+            data.putLong(offset);
+            offset += 4 + (bytes == null ? 0 : bytes.length);
+        }
+        for (byte[] bytes : encoded) {
+            if (bytes == null) {
+                data.putInt(NULL_LABEL);
+            } else {
+                data.putInt(bytes.length);
+                data.put(bytes);
+            }
+        }
+        data.flip();
+        long position = poolsOffset;
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+        channel.truncate(poolsOffset + length);
+        channel.force(false);
+        writeHeader(poolsOffset);
+    }
+
+    @Override
+    public void close() {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
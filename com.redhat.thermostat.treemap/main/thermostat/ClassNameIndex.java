@@ -0,0 +1,664 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class indexes the classes of a tree, that is its leaves, by their 
+ * full name, to find the ones whose name starts with or contains a text 
+ * typed by the user. Searches ignore case.
+ * 
+ * <p>Prefixes are looked up by binary search in the names sorted by full 
+ * name and by simple name, so <i>str</i> finds both <i>java.lang.String</i> 
+ * and <i>strings.Util</i>: the classes starting with a prefix are a range 
+ * of each sorted array, as they would be a subtree of a trie, without a 
+ * node per character. Substrings are looked up through the lists of the 
+ * classes containing each sequence of one to three characters. A text of up
+ * to three characters is its own sequence, so its list holds exactly its 
+ * matches; a longer text verifies only the classes of the shortest list of
+ * its sequences of three characters.
+ * 
+ * <p>A {@link Search} refines its matches as characters are typed, 
+ * looking only among the matches of the previous text.
+ * 
+ * <p>As {@link NameIndex} does, the index is rebuilt by the first lookup 
+ * after nodes of its tree are added, moved or renamed; changes of other 
+ * trees don't affect it. Matches already returned keep referring to the old
+ * nodes.
+ */
+public final class ClassNameIndex {
+
+    /**
+     * Length of the character sequences indexed for substring searches.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Matches of an empty text.
+     */
+    private static final Matches EMPTY = new Matches(new TreeMapNode[0], new int[0], 0);
+
+    private final TreeMapNode root;
+
+    private int version;
+
+    /**
+     * Number of times the index has been built.
+     */
+    private int buildCount;
+
+    /**
+     * Number of names compared with a searched text.
+     */
+    private long compareCount;
+
+    /**
+     * Leaves and their lower case full names, by id.
+     */
+    private TreeMapNode[] nodes;
+    private String[] names;
+
+    /**
+     * Index of the simple name in the full name, by id.
+     */
+    private int[] simpleStarts;
+
+    /**
+     * Ids sorted by full name and, for classes in a package, by simple name.
+     */
+    private int[] byName;
+    private int[] bySimpleName;
+
+    /**
+     * Open addressing hash table of the sequences of characters, -1 marking
+     * free slots, and the ids of the classes containing each sequence, 
+     * stored from offsets[slot] to offsets[slot + 1].
+     */
+    private int[] grams;
+    private int[] offsets;
+    private int[] postings;
+
+    /**
+     * Constructor.
+     * @param root the root of the tree to index.
+     */
+    public ClassNameIndex(TreeMapNode root) {
+        this.root = root;
+        build();
+    }
+
+    /**
+     * @return the number of times the index has been built.
+     */
+    int getBuildCount() {
+        return buildCount;
+    }
+
+    /**
+     * @return the number of names compared with a searched text, by the 
+     * binary searches of prefixes and by the verification of substrings.
+     */
+    long getCompareCount() {
+        return compareCount;
+    }
+
+    /**
+     * @return the number of classes.
+     */
+    public int size() {
+        update();
+        return nodes.length;
+    }
+
+    /**
+     * Find the classes whose full name or simple name starts with the given
+     * text.
+     * @param prefix the text to look for.
+     * @return the matching classes, none if the text is empty.
+     */
+    public Matches findPrefix(CharSequence prefix) {
+        update();
+        return findPrefix(lowerCase(prefix));
+    }
+
+    /**
+     * Find the classes whose full name contains the given text.
+     * @param text the text to look for.
+     * @return the matching classes, none if the text is empty.
+     */
+    public Matches findSubstring(CharSequence text) {
+        update();
+        return findSubstring(lowerCase(text), null);
+    }
+
+    /**
+     * @param prefix if true the search looks for classes whose name starts 
+     * with the text, else for classes whose full name contains it.
+     * @return a new incremental search, with an empty text.
+     */
+    public Search search(boolean prefix) {
+        return new Search(prefix);
+    }
+
+    private Matches findPrefix(String prefix) {
+        if (prefix.isEmpty()) {
+            return EMPTY;
+        }
+        int from = lowerBound(byName, prefix, false, 0);
+        int to = lowerBound(byName, prefix, false, 1);
+        int simpleFrom = lowerBound(bySimpleName, prefix, true, 0);
+        int simpleTo = lowerBound(bySimpleName, prefix, true, 1);
+
+        int[] ids = new int[to - from + simpleTo - simpleFrom];
+        System.arraycopy(byName, from, ids, 0, to - from);
+        int size = to - from;
+        for (int i = simpleFrom; i < simpleTo; i++) {
+            int id = bySimpleName[i];
+            // already found by its full name
+            if (!names[id].startsWith(prefix)) {
+                ids[size++] = id;
+            }
+        }
+        return new Matches(nodes, ids, size);
+    }
+
+    /**
+     * @param text the lower case text to look for.
+     * @param previous matches of a text contained in this one, or null.
+     */
+    private Matches findSubstring(String text, Matches previous) {
+        if (text.isEmpty()) {
+            return EMPTY;
+        }
+        int[] candidates = null;
+        int from = 0;
+        int to = names.length;
+        if (previous != null) {
+            candidates = previous.ids;
+            to = previous.size;
+        }
+        // the shortest list of the classes containing a sequence of the text
+        int length = Math.min(text.length(), GRAM);
+        for (int i = 0; i + length <= text.length(); i++) {
+            int slot = find(gram(text, i, length));
+            if (slot == -1) {
+                return EMPTY;
+            }
+            if (offsets[slot + 1] - offsets[slot] < to - from) {
+                candidates = postings;
+                from = offsets[slot];
+                to = offsets[slot + 1];
+            }
+        }
+
+        if (candidates == postings && text.length() <= GRAM && isExact(text)) {
+            // the list of the text itself
+            return new Matches(nodes, Arrays.copyOfRange(postings, from, to), to - from);
+        }
+
+        int[] ids = new int[to - from];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            int id = candidates == null ? i : candidates[i];
+            if (names[id].contains(text)) {
+                ids[size++] = id;
+            }
+        }
+        compareCount += to - from;
+        return new Matches(nodes, ids, size);
+    }
+
+    /**
+     * @param sorted ids sorted by full or simple name.
+     * @param bound 0 for the first name starting with or greater than the 
+     * prefix, 1 for the first name greater than the prefix and not starting 
+     * with it.
+     * @return the index in sorted.
+     */
+    private int lowerBound(int[] sorted, String prefix, boolean simple, int bound) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int id = sorted[mid];
+            int start = simple ? simpleStarts[id] : 0;
+            compareCount++;
+            if (comparePrefix(names[id], start, prefix) < bound) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare two strings from the given indexes, as 
+     * {@link String#compareTo(String)} does.
+     */
+    private static int compareFrom(String a, int startA, String b, int startB) {
+        int length = Math.min(a.length() - startA, b.length() - startB);
+        for (int i = 0; i < length; i++) {
+            int diff = a.charAt(startA + i) - b.charAt(startB + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (a.length() - startA) - (b.length() - startB);
+    }
+
+    /**
+     * @return a negative number, zero or a positive number if the name from 
+     * start is less than, starts with or is greater than the prefix.
+     */
+    private static int comparePrefix(String name, int start, String prefix) {
+        int length = Math.min(name.length() - start, prefix.length());
+        for (int i = 0; i < length; i++) {
+            int diff = name.charAt(start + i) - prefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length < prefix.length() ? -1 : 0;
+    }
+
+    private void update() {
+        if (version != root.getStructureVersion()) {
+            build();
+        }
+    }
+
+    private void build() {
+        version = root.getStructureVersion();
+        buildCount++;
+        final List<TreeMapNode> leaves = new ArrayList<>();
+        final List<String> leafNames = new ArrayList<>();
+        // full names of the nodes from the root to the current one
+        final List<String> path = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        root.accept(new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                sb.setLength(0);
+                if (depth == 0) {
+                    sb.append(root.getFullName());
+                } else {
+                    sb.append(path.get(depth - 1));
+                    node.appendName(sb, false);
+                }
+                String name = sb.toString();
+                path.add(name);
+                if (node.getChildren().isEmpty() && !name.isEmpty()) {
+                    leaves.add(node);
+                    leafNames.add(lowerCase(name));
+                }
+                return Result.CONTINUE;
+            }
+
+            @Override
+            public Result leave(TreeMapNode node, int depth) {
+                path.remove(depth);
+                return Result.CONTINUE;
+            }
+        });
+        nodes = leaves.toArray(new TreeMapNode[leaves.size()]);
+        names = leafNames.toArray(new String[leafNames.size()]);
+        simpleStarts = new int[names.length];
+        for (int id = 0; id < names.length; id++) {
+            simpleStarts[id] = names[id].lastIndexOf('.') + 1;
+        }
+
+        byName = sort(false);
+        bySimpleName = sort(true);
+        buildGrams();
+    }
+
+    /**
+     * @param simple if true sort the classes in a package by simple name, 
+     * else all the classes by full name.
+     * @return the sorted ids.
+     */
+    private int[] sort(final boolean simple) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (!simple || simpleStarts[id] > 0) {
+                ids.add(id);
+            }
+        }
+        Integer[] sorted = ids.toArray(new Integer[ids.size()]);
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (!simple) {
+                    return names[a].compareTo(names[b]);
+                }
+                return compareFrom(names[a], simpleStarts[a], names[b], simpleStarts[b]);
+            }
+        });
+        int[] result = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            result[i] = sorted[i];
+        }
+        return result;
+    }
+
+    /**
+     * Fill the lists of the classes containing each sequence of one to 
+     * {@link #GRAM} characters in two passes: the first counts the classes,
+     * the second stores them. Ids are visited in order, so lists are sorted 
+     * and a class is stored once per list.
+     */
+    private void buildGrams() {
+        grams = newTable(1024);
+        int[] counts = new int[grams.length];
+        int[] last = new int[grams.length];
+        int used = 0;
+        for (int id = 0; id < names.length; id++) {
+            String name = names[id];
+            for (int length = 1; length <= GRAM; length++) {
+                for (int i = 0; i + length <= name.length(); i++) {
+                    int gram = gram(name, i, length);
+                    int slot = find(gram);
+                    if (slot == -1) {
+                        if (2 * (used + 1) > grams.length) {
+                            int[][] tables = rehash(counts, last);
+                            counts = tables[0];
+                            last = tables[1];
+                        }
+                        slot = insert(gram);
+                        used++;
+                    }
+                    if (counts[slot] == 0 || last[slot] != id) {
+                        counts[slot]++;
+                        last[slot] = id;
+                    }
+                }
+            }
+        }
+
+        offsets = new int[grams.length + 1];
+        for (int slot = 0; slot < grams.length; slot++) {
+            offsets[slot + 1] = offsets[slot] + counts[slot];
+        }
+        postings = new int[offsets[grams.length]];
+        // next free position of each list
+        int[] next = Arrays.copyOf(offsets, grams.length);
+        for (int id = 0; id < names.length; id++) {
+            String name = names[id];
+            for (int length = 1; length <= GRAM; length++) {
+                for (int i = 0; i + length <= name.length(); i++) {
+                    int slot = find(gram(name, i, length));
+                    if (next[slot] == offsets[slot] || postings[next[slot] - 1] != id) {
+                        postings[next[slot]++] = id;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the sequence of the given length starting at the given index,
+     * packed into an int: the two high bits tell shorter sequences apart. 
+     * Characters above 1023 share codes, so the lists of their sequences 
+     * may hold classes not containing them, which are verified.
+     */
+    private static int gram(String s, int start, int length) {
+        int gram = GRAM - length;
+        for (int i = start; i < start + length; i++) {
+            gram = (gram << 10) | (s.charAt(i) & 0x3ff);
+        }
+        return gram << (10 * (GRAM - length));
+    }
+
+    /**
+     * @return true if the list of the given text's sequence holds exactly the
+     * classes containing it.
+     */
+    private static boolean isExact(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x3ff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the slot of the given sequence, or -1 if it is not indexed.
+     */
+    private int find(int gram) {
+        int mask = grams.length - 1;
+        int slot = mix(gram) & mask;
+        while (grams[slot] != -1) {
+            if (grams[slot] == gram) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insert(int gram) {
+        int mask = grams.length - 1;
+        int slot = mix(gram) & mask;
+        while (grams[slot] != -1) {
+            slot = (slot + 1) & mask;
+        }
+        grams[slot] = gram;
+        return slot;
+    }
+
+    /**
+     * Double the hash table, moving the values of the given per slot arrays.
+     * @return the new per slot arrays.
+     */
+    private int[][] rehash(int[]... values) {
+        int[] old = grams;
+        grams = newTable(2 * old.length);
+        int[][] result = new int[values.length][grams.length];
+        for (int slot = 0; slot < old.length; slot++) {
+            if (old[slot] != -1) {
+                int newSlot = insert(old[slot]);
+                for (int v = 0; v < values.length; v++) {
+                    result[v][newSlot] = values[v][slot];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String lowerCase(CharSequence s) {
+        char[] chars = new char[s.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(s.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The classes found by a search, in the order of the index.
+     */
+    public static final class Matches extends AbstractList<TreeMapNode> {
+
+        private final TreeMapNode[] nodes;
+        private final int[] ids;
+        private final int size;
+
+        private Matches(TreeMapNode[] nodes, int[] ids, int size) {
+            this.nodes = nodes;
+            this.ids = ids;
+            this.size = size;
+        }
+
+        @Override
+        public TreeMapNode get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return nodes[ids[index]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A search whose text is typed a character at a time. The matches of
+     * each prefix of the text are kept, so deleting characters doesn't 
+     * search again.
+     */
+    public final class Search {
+
+        private final boolean prefix;
+
+        /**
+         * The lower case text and the matches of each of its prefixes, null
+         * if not searched yet.
+         */
+        private final StringBuilder text = new StringBuilder();
+        private final List<Matches> results = new ArrayList<>();
+
+        private int searchVersion = version;
+
+        private Search(boolean prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Add a character to the text.
+         * @return the matches of the new text.
+         */
+        public Matches append(char c) {
+            text.append(Character.toLowerCase(c));
+            results.add(null);
+            return getMatches();
+        }
+
+        /**
+         * Add some characters to the text.
+         * @return the matches of the new text.
+         */
+        public Matches append(CharSequence s) {
+            for (int i = 0; i < s.length(); i++) {
+                text.append(Character.toLowerCase(s.charAt(i)));
+                results.add(null);
+            }
+            return getMatches();
+        }
+
+        /**
+         * Remove the last character of the text, if any.
+         * @return the matches of the new text.
+         */
+        public Matches backspace() {
+            if (text.length() > 0) {
+                text.setLength(text.length() - 1);
+                results.remove(results.size() - 1);
+            }
+            return getMatches();
+        }
+
+        /**
+         * Remove all the characters of the text.
+         */
+        public void clear() {
+            text.setLength(0);
+            results.clear();
+        }
+
+        /**
+         * @return the lower case text.
+         */
+        public String getText() {
+            return text.toString();
+        }
+
+        /**
+         * @return the matches of the text, none if the text is empty.
+         */
+        public Matches getMatches() {
+            update();
+            if (searchVersion != version) {
+                // ids changed, matches are searched again
+                searchVersion = version;
+                for (int i = 0; i < results.size(); i++) {
+                    results.set(i, null);
+                }
+            }
+            return getMatches(text.length());
+        }
+
+        /**
+         * @return the matches of the first length characters of the text.
+         */
+        private Matches getMatches(int length) {
+            if (length == 0) {
+                return EMPTY;
+            }
+            Matches matches = results.get(length - 1);
+            if (matches == null) {
+                String s = text.substring(0, length);
+                if (prefix) {
+                    matches = findPrefix(s);
+                } else {
+                    Matches previous = length > 1 ? results.get(length - 2) : null;
+                    matches = findSubstring(s, previous);
+                }
+                results.set(length - 1, matches);
+            }
+            return matches;
+        }
+    }
+}
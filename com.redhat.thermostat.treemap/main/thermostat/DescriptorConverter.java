@@ -36,63 +36,265 @@
 
 package thermostat;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * The JVM uses internal names for classes and fields (like "<code>[I</code>").
  * This class helps to decode them.
+ * 
+ * <p>The set of descriptors found in a JVM changes slowly, so decoded names
+ * are memoized. The cache is bounded and can be shared by several threads 
+ * without locking: it is a fixed size table where each descriptor can be 
+ * stored in two slots, and a new descriptor evicts the older entry of its 
+ * slots when both are taken. A hit doesn't allocate anything.
+ * 
+ * <p>Descriptors can be given as any {@link CharSequence}, for example a view
+ * on the buffer of a parser, and are looked up without creating intermediate
+ * strings.
  *
  * @see MethodDescriptorConverter
  */
 public class DescriptorConverter {
 
-    private static final Map<Character, String> lookupTable = new HashMap<>();
-
-    static {
-        lookupTable.put('Z', "boolean");
-        lookupTable.put('B', "byte");
-        lookupTable.put('C', "char");
-        lookupTable.put('S', "short");
-        lookupTable.put('I', "int");
-        lookupTable.put('J', "long");
-        lookupTable.put('F', "float");
-        lookupTable.put('D', "double");
+    /**
+     * Default number of descriptors stored in a cache.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final DescriptorConverter SHARED = new DescriptorConverter(DEFAULT_CAPACITY);
+
+    private final AtomicReferenceArray<Entry> entries;
+
+    /**
+     * The mask giving the first slot of a hash.
+     */
+    private final int mask;
+
+    /**
+     * Constructor.
+     * @param capacity the max number of descriptors to store. It is rounded
+     * up to a power of two.
+     */
+    public DescriptorConverter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new AtomicReferenceArray<>(size);
+        this.mask = (size - 1) & ~1;
     }
 
+    /**
+     * Decode the given descriptor using a cache shared by the whole 
+     * application.
+     * @param fieldDescriptor the descriptor to decode.
+     * @return the Java type name of the descriptor.
+     */
     public static String toJavaType(String fieldDescriptor) {
-        return toJavaType(fieldDescriptor, lookupTable);
+        return SHARED.convert(fieldDescriptor);
     }
 
-    static String toJavaType(String fieldDescriptor, Map<Character, String> lookupTable) {
-        StringBuilder result = new StringBuilder();
+    /**
+     * Decode the descriptor held by the given range of a character sequence 
+     * using a cache shared by the whole application.
+     * @param s the sequence containing the descriptor.
+     * @param start the index of the descriptor's first character.
+     * @param end the index after the descriptor's last character.
+     * @return the Java type name of the descriptor.
+     */
+    public static String toJavaType(CharSequence s, int start, int end) {
+        return SHARED.convert(s, start, end);
+    }
 
+    /**
+     * Decode the given descriptor, without using any cache, and append it to
+     * the given builder.
+     * @param s the sequence containing the descriptor.
+     * @param start the index of the descriptor's first character.
+     * @param end the index after the descriptor's last character.
+     * @param result the builder receiving the Java type name.
+     * @return the given builder.
+     */
+    public static StringBuilder appendJavaType(CharSequence s, int start, int end, 
+            StringBuilder result) {
         int arrayDimensions = 0;
-        int lastLocation = 0;
-        int i = -1;
-        while ((i = fieldDescriptor.indexOf('[', lastLocation)) != -1) {
-            arrayDimensions++;
-            lastLocation = i + 1;
+        int lastLocation = start;
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '[') {
+                arrayDimensions++;
+                lastLocation = i + 1;
+            }
         }
 
-        char indicator = fieldDescriptor.charAt(lastLocation);
+        if (lastLocation >= end) {
+            throw new IndexOutOfBoundsException("no type in descriptor");
+        }
+        char indicator = s.charAt(lastLocation);
+        String primitive = primitiveName(indicator);
 
-        if (lookupTable.get(indicator) != null) {
-            result.append(lookupTable.get(indicator));
+        if (primitive != null) {
+            result.append(primitive);
         } else if (indicator == 'L') {
-            String internalClassName = fieldDescriptor.substring(lastLocation + 1, fieldDescriptor.length() - 1);
-            String commonClassName = internalClassName.replace('/', '.');
-            result.append(commonClassName);
+            // the class name lies between 'L' and ';'
+            for (int i = lastLocation + 1; i < end - 1; i++) {
+                char c = s.charAt(i);
+                result.append(c == '/' ? '.' : c);
+            }
         } else {
-            result.append(fieldDescriptor);
+            result.append(s, start, end);
         }
-        String dim = "";
         for (int k = 0; k < arrayDimensions; k++) {
-            dim += "[]";
+            result.append("[]");
+        }
+        return result;
+    }
+
+    /**
+     * @param fieldDescriptor the descriptor to decode.
+     * @return the Java type name of the descriptor.
+     */
+    public String convert(String fieldDescriptor) {
+        int hash = fieldDescriptor.hashCode();
+        int slot = slot(hash);
+        for (int i = slot; i < slot + 2; i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && entry.hash == hash 
+                    && (entry.descriptor == fieldDescriptor 
+                    || entry.descriptor.equals(fieldDescriptor))) {
+                return entry.javaType;
+            }
+        }
+        String javaType = decode(fieldDescriptor);
+        store(slot, new Entry(fieldDescriptor, hash, javaType));
+        return javaType;
+    }
+
+    /**
+     * @param s the sequence containing the descriptor.
+     * @param start the index of the descriptor's first character.
+     * @param end the index after the descriptor's last character.
+     * @return the Java type name of the descriptor.
+     */
+    public String convert(CharSequence s, int start, int end) {
+        if (start < 0 || end > s.length() || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ")");
+        }
+        // same as String.hashCode(), so both lookups find the same entries
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
         }
-        result.append(dim);
+        int slot = slot(hash);
+        for (int i = slot; i < slot + 2; i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && entry.hash == hash 
+                    && entry.matches(s, start, end)) {
+                return entry.javaType;
+            }
+        }
+        String descriptor = s.subSequence(start, end).toString();
+        String javaType = decode(descriptor);
+        store(slot, new Entry(descriptor, hash, javaType));
+        return javaType;
+    }
 
-        return result.toString();
+    /**
+     * @return the number of descriptors stored in this cache.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            if (entries.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
     }
-}
 
+    /**
+     * Remove all descriptors from this cache.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+    private int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Store a new entry in the first of its slots, moving the previous 
+     * occupant to the second one unless that is free.
+     */
+    private void store(int slot, Entry entry) {
+        Entry first = entries.get(slot);
+        if (first != null && entries.get(slot + 1) == null) {
+            entries.set(slot + 1, entry);
+            return;
+        }
+        if (first != null) {
+            entries.set(slot + 1, first);
+        }
+        entries.set(slot, entry);
+    }
+
+    private static String decode(String descriptor) {
+        if (descriptor.indexOf('[') == -1 && descriptor.length() > 0) {
+            char indicator = descriptor.charAt(0);
+            if (indicator != 'L' && primitiveName(indicator) == null) {
+                // already a Java name
+                return descriptor;
+            }
+        }
+        int length = descriptor.length();
+        return appendJavaType(descriptor, 0, length, 
+                new StringBuilder(length + 8)).toString();
+    }
+
+    private static String primitiveName(char indicator) {
+        switch (indicator) {
+        case 'Z': return "boolean";
+        case 'B': return "byte";
+        case 'C': return "char";
+        case 'S': return "short";
+        case 'I': return "int";
+        case 'J': return "long";
+        case 'F': return "float";
+        case 'D': return "double";
+        default: return null;
+        }
+    }
+
+    /**
+     * A decoded descriptor. Entries are immutable, so they can be published
+     * to other threads through the table.
+     */
+    private static final class Entry {
+        private final String descriptor;
+        private final int hash;
+        private final String javaType;
+
+        Entry(String descriptor, int hash, String javaType) {
+            this.descriptor = descriptor;
+            this.hash = hash;
+            this.javaType = javaType;
+        }
+
+        boolean matches(CharSequence s, int start, int end) {
+            if (descriptor.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (descriptor.charAt(i - start) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores a tree in flat records instead of a graph of 
+ * {@link TreeMapNode} objects, to hold multi-million nodes trees with a few
+ * bytes per node and to traverse them without pointer chasing.
+ * 
+ * <p>Nodes are identified by their index, the root being the node 0. Each 
+ * node is described by:
+ * <ul>
+ * <li>the indexes of its parent, its first child and its next sibling;</li>
+ * <li>its real weight, the weight used for layout and its rectangle, 
+ * relative to the parent's origin as in {@link TreeMapNode};</li>
+ * <li>the ids of its label and its color, which refer to pools of distinct
+ * values shared by all nodes.</li>
+ * </ul>
+ * 
+ * <p>Trees can be converted from and to {@link TreeMapNode} trees. They can
+ * be processed by {@link TreeProcessor} and drawn by {@link TreeMapRenderer}
+ * directly. Nodes' information maps are not stored.
+ * 
+ * <p>Records are kept in Java arrays by default. They can also be kept out
+ * of the heap, in a direct buffer ({@link #allocateDirect(int)}) or in a 
+ * file mapped in memory ({@link #create(Path, int)}), which can be reopened 
+ * later ({@link #open(Path)}) and drawn without loading the tree again.
+ */
+public class FlatTree implements Closeable {
+
+    /**
+     * Index used for missing nodes, like the root's parent.
+     */
+    public static final int NONE = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final TreeStorage storage;
+
+    private int size;
+
+    /**
+     * Lookups of the pooled labels and colors, built when first needed.
+     */
+    private Map<String, Integer> labelIds;
+    private List<Color> colors;
+    private Map<Color, Integer> colorIds;
+
+    /**
+     * Constructor.
+     */
+    public FlatTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the number of nodes to allocate space for.
+     */
+    public FlatTree(int capacity) {
+        this(new HeapTreeStorage(capacity));
+    }
+
+    FlatTree(TreeStorage storage) {
+        this.storage = storage;
+        this.size = storage.getSize();
+    }
+
+    /**
+     * Create an empty tree stored in a direct buffer, outside of the heap.
+     * @param capacity the number of nodes to allocate space for.
+     */
+    public static FlatTree allocateDirect(int capacity) {
+        return new FlatTree(BufferTreeStorage.allocateDirect(capacity));
+    }
+
+    /**
+     * Create an empty tree stored in the given file, mapped in memory. The
+     * file's content is replaced. Changes are written on {@link #flush()} and
+     * {@link #close()}.
+     * @param file the file.
+     * @param capacity the number of nodes to allocate space for.
+     * @throws IOException if the file can't be created or mapped.
+     */
+    public static FlatTree create(Path file, int capacity) throws IOException {
+        return new FlatTree(BufferTreeStorage.create(file, capacity));
+    }
+
+    /**
+     * Open a tree stored in the given file, mapping it in memory. Nodes are 
+     * not read until they are accessed, so the tree can be processed and 
+     * drawn right away.
+     * @param file a file written by a tree created with 
+     * {@link #create(Path, int)}.
+     * @throws IOException if the file can't be read or doesn't hold a tree.
+     */
+    public static FlatTree open(Path file) throws IOException {
+        return new FlatTree(BufferTreeStorage.open(file));
+    }
+
+    /**
+     * Write pending changes to the file storing this tree, if any.
+     */
+    public void flush() {
+        storage.flush();
+    }
+
+    /**
+     * Flush and release the storage of this tree. 
+     */
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    /**
+     * Add a node to this tree, as last child of the given parent.
+     * @param parentIndex the parent's index, or {@link #NONE} to add the root.
+     * @param nodeLabel the node's label.
+     * @param nodeWeight the node's real weight.
+     * @return the index of the new node.
+     * @throws IllegalArgumentException if the parent doesn't exist or if the
+     * root is added twice.
+     */
+    public int addNode(int parentIndex, String nodeLabel, double nodeWeight) {
+        if (parentIndex == NONE ? size != 0 : parentIndex < 0 || parentIndex >= size) {
+            throw new IllegalArgumentException("invalid parent " + parentIndex);
+        }
+        TreeStorage s = storage;
+        s.ensureCapacity(size + 1);
+        int node = size;
+        s.setInt(node, TreeStorage.PARENT, parentIndex);
+        s.setInt(node, TreeStorage.FIRST_CHILD, NONE);
+        s.setInt(node, TreeStorage.LAST_CHILD, NONE);
+        s.setInt(node, TreeStorage.NEXT_SIBLING, NONE);
+        s.setInt(node, TreeStorage.CHILD_COUNT, 0);
+        s.setInt(node, TreeStorage.LABEL, labelId(nodeLabel));
+        s.setInt(node, TreeStorage.COLOR, NONE);
+        s.setDouble(node, TreeStorage.REAL_WEIGHT, nodeWeight);
+        s.setDouble(node, TreeStorage.WEIGHT, nodeWeight);
+        s.setDouble(node, TreeStorage.X, 0);
+        s.setDouble(node, TreeStorage.Y, 0);
+        s.setDouble(node, TreeStorage.WIDTH, 0);
+        s.setDouble(node, TreeStorage.HEIGHT, 0);
+
+        if (parentIndex != NONE) {
+            int last = s.getInt(parentIndex, TreeStorage.LAST_CHILD);
+            if (last == NONE) {
+                s.setInt(parentIndex, TreeStorage.FIRST_CHILD, node);
+            } else {
+                s.setInt(last, TreeStorage.NEXT_SIBLING, node);
+            }
+            s.setInt(parentIndex, TreeStorage.LAST_CHILD, node);
+            s.setInt(parentIndex, TreeStorage.CHILD_COUNT, 
+                    s.getInt(parentIndex, TreeStorage.CHILD_COUNT) + 1);
+        }
+        size = node + 1;
+        s.setSize(size);
+        return node;
+    }
+
+    /**
+     * @return the number of nodes in this tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the root's index, or {@link #NONE} if the tree is empty.
+     */
+    public int getRoot() {
+        return size == 0 ? NONE : 0;
+    }
+
+    public int getParent(int node) {
+        return storage.getInt(check(node), TreeStorage.PARENT);
+    }
+
+    public int getFirstChild(int node) {
+        return storage.getInt(check(node), TreeStorage.FIRST_CHILD);
+    }
+
+    public int getNextSibling(int node) {
+        return storage.getInt(check(node), TreeStorage.NEXT_SIBLING);
+    }
+
+    public int getChildCount(int node) {
+        return storage.getInt(check(node), TreeStorage.CHILD_COUNT);
+    }
+
+    /**
+     * Replace the order of the given node's children.
+     * @param node the parent node.
+     * @param children the node's children in the new order.
+     * @param count the number of children.
+     */
+    void setChildrenOrder(int node, int[] children, int count) {
+        if (count != storage.getInt(node, TreeStorage.CHILD_COUNT)) {
+            throw new IllegalArgumentException("children count mismatch");
+        }
+        if (count == 0) {
+            return;
+        }
+        storage.setInt(node, TreeStorage.FIRST_CHILD, children[0]);
+        for (int i = 1; i < count; i++) {
+            storage.setInt(children[i - 1], TreeStorage.NEXT_SIBLING, children[i]);
+        }
+        storage.setInt(children[count - 1], TreeStorage.NEXT_SIBLING, NONE);
+        storage.setInt(node, TreeStorage.LAST_CHILD, children[count - 1]);
+    }
+
+    public String getLabel(int node) {
+        return storage.getLabel(storage.getInt(check(node), TreeStorage.LABEL));
+    }
+
+    /**
+     * @return the id of the node's label. Nodes having equal labels have the
+     * same id.
+     */
+    public int getLabelId(int node) {
+        return storage.getInt(check(node), TreeStorage.LABEL);
+    }
+
+    public void setLabel(int node, String nodeLabel) {
+        storage.setInt(check(node), TreeStorage.LABEL, labelId(nodeLabel));
+    }
+
+    /**
+     * @return the number of distinct labels in this tree.
+     */
+    public int getLabelCount() {
+        return storage.getLabelCount();
+    }
+
+    private int labelId(String nodeLabel) {
+        if (labelIds == null) {
+            labelIds = new HashMap<>();
+            for (int i = 0; i < storage.getLabelCount(); i++) {
+                labelIds.put(storage.getLabel(i), i);
+            }
+        }
+        Integer id = labelIds.get(nodeLabel);
+        if (id == null) {
+            id = storage.getLabelCount();
+            storage.addLabel(nodeLabel);
+            labelIds.put(nodeLabel, id);
+        }
+        return id;
+    }
+
+    public double getRealWeight(int node) {
+        return storage.getDouble(check(node), TreeStorage.REAL_WEIGHT);
+    }
+
+    public void setRealWeight(int node, double w) {
+        storage.setDouble(check(node), TreeStorage.REAL_WEIGHT, w);
+    }
+
+    /**
+     * @return the weight used for layout. Processing the tree doesn't 
+     * change it.
+     */
+    public double getWeight(int node) {
+        return storage.getDouble(check(node), TreeStorage.WEIGHT);
+    }
+
+    public void setWeight(int node, double w) {
+        storage.setDouble(check(node), TreeStorage.WEIGHT, w);
+    }
+
+    public double getX(int node) {
+        return storage.getDouble(check(node), TreeStorage.X);
+    }
+
+    public double getY(int node) {
+        return storage.getDouble(check(node), TreeStorage.Y);
+    }
+
+    public double getWidth(int node) {
+        return storage.getDouble(check(node), TreeStorage.WIDTH);
+    }
+
+    public double getHeight(int node) {
+        return storage.getDouble(check(node), TreeStorage.HEIGHT);
+    }
+
+    /**
+     * Set the node's rectangle, relative to its parent's origin.
+     */
+    public void setRectangle(int node, double x, double y, double w, double h) {
+        check(node);
+        storage.setDouble(node, TreeStorage.X, x);
+        storage.setDouble(node, TreeStorage.Y, y);
+        storage.setDouble(node, TreeStorage.WIDTH, w);
+        storage.setDouble(node, TreeStorage.HEIGHT, h);
+    }
+
+    /**
+     * @return a copy of the node's rectangle.
+     */
+    public Rectangle2D.Double getRectangle(int node) {
+        check(node);
+        return new Rectangle2D.Double(storage.getDouble(node, TreeStorage.X), 
+                storage.getDouble(node, TreeStorage.Y), 
+                storage.getDouble(node, TreeStorage.WIDTH), 
+                storage.getDouble(node, TreeStorage.HEIGHT));
+    }
+
+    /**
+     * @return true if the node's rectangle is drawable, as 
+     * {@link TreeMapNode#isDrawable()}.
+     */
+    public boolean isDrawable(int node) {
+        check(node);
+        return storage.getDouble(node, TreeStorage.WIDTH) >= 1 
+                && storage.getDouble(node, TreeStorage.HEIGHT) >= 1;
+    }
+
+    /**
+     * @return the node's color, or null if not set.
+     */
+    public Color getColor(int node) {
+        int id = storage.getInt(check(node), TreeStorage.COLOR);
+        return id == NONE ? null : colors().get(id);
+    }
+
+    public void setColor(int node, Color c) {
+        check(node);
+        if (c == null) {
+            storage.setInt(node, TreeStorage.COLOR, NONE);
+            return;
+        }
+        colors();
+        Integer id = colorIds.get(c);
+        if (id == null) {
+            id = colors.size();
+            colors.add(c);
+            colorIds.put(c, id);
+            storage.addColor(c.getRGB());
+        }
+        storage.setInt(node, TreeStorage.COLOR, id);
+    }
+
+    private List<Color> colors() {
+        if (colors == null) {
+            colors = new ArrayList<>();
+            colorIds = new HashMap<>();
+            for (int i = 0; i < storage.getColorCount(); i++) {
+                Color c = new Color(storage.getColor(i), true);
+                colors.add(c);
+                colorIds.put(c, i);
+            }
+        }
+        return colors;
+    }
+
+    private int check(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("node " + node + ", size " + size);
+        }
+        return node;
+    }
+
+    /**
+     * Create a flat tree from the given {@link TreeMapNode} tree. Children 
+     * keep their order, and nodes are numbered in pre-order.
+     * @param root the tree's root.
+     * @return the flat tree.
+     */
+    public static FlatTree fromNodes(TreeMapNode root) {
+        FlatTree tree = new FlatTree();
+        tree.addNodes(NONE, root);
+        return tree;
+    }
+
+    /**
+     * Add a copy of the given {@link TreeMapNode} tree to this tree. Children
+     * keep their order, and nodes are numbered in pre-order.
+     * @param parentIndex the parent of the copy, or {@link #NONE} to make it
+     * the root of this tree.
+     * @param root the root of the tree to copy.
+     * @return the index of the copy of the given root.
+     */
+    public int addNodes(int parentIndex, TreeMapNode root) {
+        int first = size;
+        List<TreeMapNode> stack = new ArrayList<>();
+        int[] parents = new int[DEFAULT_CAPACITY];
+        stack.add(root);
+        parents[0] = parentIndex;
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            TreeMapNode node = stack.remove(top);
+            int index = addNode(parents[top], node.getLabel(), node.getRealWeight());
+            setWeight(index, node.getWeight());
+            Rectangle2D.Double r = node.getRectangle();
+            setRectangle(index, r.x, r.y, r.width, r.height);
+            setColor(index, node.getColor());
+
+            // push children in reverse order, so the first is visited first
+            List<TreeMapNode> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                if (stack.size() == parents.length) {
+                    parents = Arrays.copyOf(parents, parents.length * 2);
+                }
+                parents[stack.size()] = index;
+                stack.add(children.get(i));
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Create a {@link TreeMapNode} tree from this tree.
+     * @return the root of the new tree, or null if this tree is empty.
+     */
+    public TreeMapNode toNodes() {
+        if (size == 0) {
+            return null;
+        }
+        TreeMapNode[] nodes = new TreeMapNode[size];
+        // parents always precede their children
+        for (int i = 0; i < size; i++) {
+            double realWeight = getRealWeight(i);
+            double weight = getWeight(i);
+            TreeMapNode node = new TreeMapNode(getLabel(i), realWeight);
+            if (weight != realWeight) {
+                // weights set apart from the real ones
+                node.setWeight((int) weight);
+            }
+            node.setRectangle(getRectangle(i));
+            node.setColor(getColor(i));
+            nodes[i] = node;
+        }
+        for (int i = 0; i < size; i++) {
+            for (int c = getFirstChild(i); c != NONE; c = getNextSibling(c)) {
+                nodes[i].addChild(nodes[c]);
+            }
+        }
+        return nodes[0];
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+
+/**
+ * This class decides the groups of the tree built by 
+ * {@link HistogramConverter}: for each record it adds to a {@link Branch} 
+ * the labels of the nodes from the root's child down to the record's leaf.
+ * Records are grouped in a single pass, as they are read, and branches 
+ * are stored as labels of the tree's {@link LabelDictionary}, so grouping 
+ * doesn't create strings.
+ * 
+ * <p>The records of a group pruned by a {@link PruningPolicy} are folded 
+ * into a {@link HistogramConverter#OTHERS} leaf of the group.
+ */
+public abstract class GroupingStrategy {
+
+    /**
+     * Label of the group of records without a module.
+     */
+    public static final String UNNAMED_MODULE = "(unnamed module)";
+
+    /**
+     * Label of the group of records without a class loader.
+     */
+    public static final String UNKNOWN_LOADER = "(unknown loader)";
+
+    /**
+     * Labels of the groups of arrays and of other instances.
+     */
+    public static final String ARRAYS = "(arrays)";
+    public static final String INSTANCES = "(instances)";
+
+    /**
+     * Add to the branch the labels of the given record's groups and leaf.
+     * @param record the record to group.
+     * @param javaType the record's class name, as returned by 
+     * {@link DescriptorConverter#toJavaType(String)}.
+     * @param branch the branch to fill, empty.
+     */
+    public abstract void group(HistogramRecord record, String javaType, Branch branch);
+
+    /**
+     * @return the strategy grouping classes by package, one level per 
+     * package name segment. This is the default grouping.
+     */
+    public static GroupingStrategy packages() {
+        return new GroupingStrategy() {
+            @Override
+            public void group(HistogramRecord record, String javaType, Branch branch) {
+                branch.addAll(javaType);
+            }
+        };
+    }
+
+    /**
+     * @return a strategy grouping classes by the first n segments of their 
+     * package, the rest of the class name being the label of their leaf. 
+     * E.g. with n equal to 2 <i>com.example.util.List</i> is shown as 
+     * <i>util.List</i> in <i>com.example</i>.
+     */
+    public static GroupingStrategy packageDepth(final int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must be non-negative");
+        }
+        return new GroupingStrategy() {
+            @Override
+            public void group(HistogramRecord record, String javaType, Branch branch) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    int end = javaType.indexOf(TreeMapNode.NAME_SEPARATOR, start);
+                    if (end == -1) {
+                        break;
+                    }
+                    branch.add(javaType, start, end);
+                    start = end + 1;
+                }
+                branch.add(javaType, start, javaType.length());
+            }
+        };
+    }
+
+    /**
+     * @return a strategy grouping classes by module, then by package.
+     */
+    public static GroupingStrategy moduleThenPackage() {
+        return new GroupingStrategy() {
+            @Override
+            public void group(HistogramRecord record, String javaType, Branch branch) {
+                String module = record.getModule();
+                branch.add(module == null ? UNNAMED_MODULE : module);
+                branch.addAll(javaType);
+            }
+        };
+    }
+
+    /**
+     * @return a strategy grouping classes by class loader, then by package.
+     */
+    public static GroupingStrategy classLoaderThenPackage() {
+        return new GroupingStrategy() {
+            @Override
+            public void group(HistogramRecord record, String javaType, Branch branch) {
+                String loader = record.getClassLoader();
+                branch.add(loader == null ? UNKNOWN_LOADER : loader);
+                branch.addAll(javaType);
+            }
+        };
+    }
+
+    /**
+     * @return a strategy putting arrays and other instances in two groups,
+     * then grouping by package. Arrays are grouped by the package of their 
+     * element type, as decoded by {@link DescriptorConverter}, so arrays of
+     * a class of any number of dimensions are siblings.
+     */
+    public static GroupingStrategy arraysThenElementType() {
+        return new GroupingStrategy() {
+            @Override
+            public void group(HistogramRecord record, String javaType, Branch branch) {
+                branch.add(javaType.endsWith("[]") ? ARRAYS : INSTANCES);
+                branch.addAll(javaType);
+            }
+        };
+    }
+
+    /**
+     * The labels from the root's child to a record's leaf, stored as the 
+     * label of the leaf's full name.
+     */
+    public static final class Branch {
+
+        private final LabelDictionary labels;
+        private int path = LabelDictionary.NONE;
+
+        Branch(LabelDictionary labels) {
+            this.labels = labels;
+        }
+
+        /**
+         * Add a node labeled with the given characters.
+         */
+        public void add(CharSequence s, int start, int end) {
+            path = labels.label(path, labels.segment(s, start, end));
+        }
+
+        /**
+         * Add a node labeled with the given string.
+         */
+        public void add(CharSequence s) {
+            add(s, 0, s.length());
+        }
+
+        /**
+         * Add a node for each dot separated segment of the given string.
+         */
+        public void addAll(CharSequence s) {
+            int start = 0;
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) == TreeMapNode.NAME_SEPARATOR) {
+                    add(s, start, i);
+                    start = i + 1;
+                }
+            }
+            add(s, start, s.length());
+        }
+
+        /**
+         * @return the label of the branch in the tree's dictionary, or
+         * {@link LabelDictionary#NONE} if empty.
+         */
+        int getPath() {
+            return path;
+        }
+
+        void clear() {
+            path = LabelDictionary.NONE;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage of a {@link FlatTree} in Java arrays, one record of fields per 
+ * node.
+ */
+final class HeapTreeStorage implements TreeStorage {
+
+    private int size = 0;
+    private int[] ints;
+    private double[] doubles;
+
+    private final List<String> labels = new ArrayList<>();
+    private int[] colors = new int[8];
+    private int colorCount = 0;
+
+    HeapTreeStorage(int capacity) {
+        capacity = Math.max(1, capacity);
+        ints = new int[capacity * INT_FIELDS];
+        doubles = new double[capacity * DOUBLE_FIELDS];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public int getCapacity() {
+        return ints.length / INT_FIELDS;
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (capacity > getCapacity()) {
+            capacity = Math.max(capacity, getCapacity() * 2);
+            ints = Arrays.copyOf(ints, capacity * INT_FIELDS);
+            doubles = Arrays.copyOf(doubles, capacity * DOUBLE_FIELDS);
+        }
+    }
+
+    @Override
+    public int getInt(int node, int field) {
+        return ints[node * INT_FIELDS + field];
+    }
+
+    @Override
+    public void setInt(int node, int field, int value) {
+        ints[node * INT_FIELDS + field] = value;
+    }
+
+    @Override
+    public double getDouble(int node, int field) {
+        return doubles[node * DOUBLE_FIELDS + field];
+    }
+
+    @Override
+    public void setDouble(int node, int field, double value) {
+        doubles[node * DOUBLE_FIELDS + field] = value;
+    }
+
+    @Override
+    public int getLabelCount() {
+        return labels.size();
+    }
+
+    @Override
+    public String getLabel(int id) {
+        return labels.get(id);
+    }
+
+    @Override
+    public void addLabel(String label) {
+        labels.add(label);
+    }
+
+    @Override
+    public int getColorCount() {
+        return colorCount;
+    }
+
+    @Override
+    public int getColor(int id) {
+        return colors[id];
+    }
+
+    @Override
+    public void addColor(int argb) {
+        if (colorCount == colors.length) {
+            colors = Arrays.copyOf(colors, colorCount * 2);
+        }
+        colors[colorCount++] = argb;
+    }
+
+    @Override
+    public void flush() {
+        // nothing to do
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
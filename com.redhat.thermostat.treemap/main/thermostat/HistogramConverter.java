@@ -37,7 +37,13 @@
 package thermostat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import com.redhat.thermostat.treemap.model.HistogramRecord;
 import com.redhat.thermostat.treemap.model.ObjectHistogram;
@@ -49,15 +55,36 @@ import com.redhat.thermostat.treemap.model.ObjectHistogram;
 public class HistogramConverter {
     
     /**
-     * The splitter regular expression to split records' className
+     * Key of the {@link AttributeSchema.Type#LONG} attribute storing into 
+     * nodes the <i>number of instances</i> information of histogram records.
      */
-    private static final String SPLIT_REG_EXP = "\\."; //escaped dot
-    
+    public static final String NUMBER_OF = "Number Of Instances";  
+
+    /**
+     * Key of the {@link AttributeSchema.Type#LONG} attribute storing into 
+     * nodes the total size of the instances of histogram records.
+     */
+    public static final String TOTAL_SIZE = "Total Size";
+
+    /**
+     * Keys of the {@link AttributeSchema.Type#LONG} attributes storing the
+     * changes of the number of instances and of the total size since a 
+     * previous histogram.
+     */
+    public static final String DELTA_NUMBER_OF = "Delta Number Of Instances";
+    public static final String DELTA_TOTAL_SIZE = "Delta Total Size";
+
+    /**
+     * Key of the {@link AttributeSchema.Type#LONG} attribute storing into 
+     * {@link #OTHERS} leaves the number of classes folded into them.
+     */
+    public static final String PRUNED_CLASSES = "Pruned Classes";
+
     /**
-     * Key used to put into nodes the <i>number of instances</i> information 
-     * stored in histogram records.
+     * Label of the leaves holding the classes of a package, or group, pruned by a 
+     * {@link PruningPolicy}.
      */
-    private static final String NUMBER_OF = "Number Of Instances";  
+    public static final String OTHERS = "(others)";
     
     /**
      * Call this method to create the full TreeMapNode object corresponding to
@@ -66,17 +93,83 @@ public class HistogramConverter {
      * @return the resulting tree
      */
     public static TreeMapNode convertToTreeMap(ObjectHistogram histrogram) {
-       TreeMapNode root = new TreeMapNode("", 0);
+        return convertToTreeMap(histrogram, null);
+    }
+
+    /**
+     * Call this method to create the full TreeMapNode object corresponding to
+     * the {@link ObjectHistogram} histogram given in input, storing in nodes
+     * the changes since the previous histogram. Classes of the previous 
+     * histogram only are not shown.
+     * @param histrogram the histogram to represent as TreeMapNode
+     * @param previous the histogram to compare with, or null.
+     * @return the resulting tree
+     * @see TreeProcessor#processTreeMap(TreeMapNode, java.awt.geom.Rectangle2D.Double, int)
+     */
+    public static TreeMapNode convertToTreeMap(ObjectHistogram histrogram, 
+            ObjectHistogram previous) {
+        return convertToTreeMap(histrogram, previous, null);
+    }
+
+    /**
+     * Call this method to create the TreeMapNode object corresponding to 
+     * the {@link ObjectHistogram} histogram given in input, as 
+     * {@link #convertToTreeMap(ObjectHistogram, ObjectHistogram)} does. The
+     * records not selected by the given policy are not given a node: those
+     * of each package are summed into a single {@link #OTHERS} leaf, which 
+     * stores how many they are as the {@link #PRUNED_CLASSES} attribute.
+     * @param histrogram the histogram to represent as TreeMapNode
+     * @param previous the histogram to compare with, or null.
+     * @param policy the policy selecting the records to show one by one, or
+     * null to show all of them.
+     * @return the resulting tree
+     */
+    public static TreeMapNode convertToTreeMap(ObjectHistogram histrogram, 
+            ObjectHistogram previous, PruningPolicy policy) {
+        return convertToTreeMap(histrogram, previous, policy, GroupingStrategy.packages());
+    }
+
+    /**
+     * Call this method to create the TreeMapNode object corresponding to 
+     * the {@link ObjectHistogram} histogram given in input, as 
+     * {@link #convertToTreeMap(ObjectHistogram, ObjectHistogram, PruningPolicy)}
+     * does, grouping classes with the given strategy instead of by package.
+     * @param histrogram the histogram to represent as TreeMapNode
+     * @param previous the histogram to compare with, or null.
+     * @param policy the policy selecting the records to show one by one, or
+     * null to show all of them.
+     * @param strategy the strategy deciding the groups of records.
+     * @return the resulting tree
+     */
+    public static TreeMapNode convertToTreeMap(ObjectHistogram histrogram, 
+            ObjectHistogram previous, PruningPolicy policy, GroupingStrategy strategy) {
+        Objects.requireNonNull(strategy);
+        Object event = TreeMapEvents.beginConversion();
+        // labels share their segments and prefixes
+        LabelDictionary labels = new LabelDictionary();
+        TreeMapNode root = new TreeMapNode(labels, labels.label(""), 0);
+        AttributeSchema schema = new AttributeSchema();
+        schema.register(TOTAL_SIZE, AttributeSchema.Type.LONG);
+        schema.register(NUMBER_OF, AttributeSchema.Type.LONG);
+        if (previous != null) {
+            schema.register(DELTA_TOTAL_SIZE, AttributeSchema.Type.LONG);
+            schema.register(DELTA_NUMBER_OF, AttributeSchema.Type.LONG);
+        }
+        if (policy != null) {
+            schema.register(PRUNED_CLASSES, AttributeSchema.Type.LONG);
+        }
+        root.setAttributeSchema(schema);
         
         List<HistogramRecord> records = new ArrayList<>();
         records.addAll(histrogram.getHistogram());
 
         // build the tree from the histogram object
-        processRecords(records, root);
-        // calculates weights for inner nodes
-        fillWeights(root);
-        // collapse nodes with only one child 
-        packTree(root);
+        processRecords(records, root, labels, schema, index(previous), policy, strategy);
+        // calculates weights for inner nodes and collapse nodes with only 
+        // one child
+        fillWeightsAndPack(root, labels);
+        root.updateDepths();
+        TreeMapEvents.commitConversion(event, records.size(), root);
         return root;
     }
     
@@ -84,88 +177,258 @@ public class HistogramConverter {
      * This method is responsible for building correctly the histogram 
      * corresponding tree. For each histogram record, a tree branch is created
      * but only leaves node have a weight value.
-     * Furthermore, additional information are added to the nodes' map.
+     * Furthermore, the number of instances is stored as a typed attribute.
      * 
      * @param records {@list} of HistogramRecord used to build the tree.
      * @param root the tree's root.
+     * @param labels the dictionary storing nodes' labels.
+     * @param schema the schema of nodes' attributes.
+     * @param previous the records of the previous histogram by class name,
+     * or null.
+     * @param policy the policy selecting the records having a node, or null.
+     * @param strategy the strategy deciding the branch of each record.
      */
-    private static void processRecords(List<HistogramRecord> records, TreeMapNode root) {
-        
+    private static void processRecords(List<HistogramRecord> records, TreeMapNode root,
+            LabelDictionary labels, AttributeSchema schema, 
+            Map<String, HistogramRecord> previous, PruningPolicy policy, 
+            GroupingStrategy strategy) {
+        // slots of the number of instances, the total size and their changes
+        int[] slots = {
+            schema.getSlot(NUMBER_OF), schema.getSlot(TOTAL_SIZE), 
+            schema.getSlot(DELTA_NUMBER_OF), schema.getSlot(DELTA_TOTAL_SIZE),
+        };
+        Branches branches = new Branches(root, labels, schema);
+        GroupingStrategy.Branch branch = new GroupingStrategy.Branch(labels);
+
+        // records are grouped while they are read, unless the policy has to
+        // know all the groups first
+        int[] paths = null;
+        BitSet kept = null;
+        if (policy != null) {
+            paths = new int[records.size()];
+            List<String> groups = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                paths[i] = group(records.get(i), strategy, branch);
+                int group = labels.getPrefix(paths[i]);
+                groups.add(group == LabelDictionary.NONE ? "" : labels.toString(group));
+            }
+            kept = policy.select(records, groups);
+        }
+
+        // sizes, instances, their changes and number of the pruned records
+        // of each group
+        Map<Integer, long[]> others = new LinkedHashMap<>();
         for (int i = 0; i < records.size(); i++) {
-            
-            TreeMapNode lastProcessed = root;
-            String className = records.get(i).getClassname();
-            
-            // if className is a primitive type it is converted with its full name
-            className = DescriptorConverter.toJavaType(className);
-
-            while (!className.equals("")) {
-               
-                String nodeId = className.split(SPLIT_REG_EXP)[0];
-                
-                TreeMapNode child = lastProcessed.searchNodeByLabel(nodeId);
-                
-                if (child == null) {
-                    child = new TreeMapNode(nodeId, 0);
-                    lastProcessed.addChild(child);
+            HistogramRecord record = records.get(i);
+            HistogramRecord before = previous == null ? null : previous.get(record.getClassname());
+            long deltaTotalSize = record.getTotalSize() - (before == null ? 0 : before.getTotalSize());
+            long deltaNumberOf = record.getNumberOf() - (before == null ? 0 : before.getNumberOf());
+            int path = paths == null ? group(record, strategy, branch) : paths[i];
+            if (kept == null || kept.get(i)) {
+                TreeMapNode lastProcessed = branches.leaf(path);
+                // at this point lastProcessed references to a leaf
+                setValues(lastProcessed, schema, slots, record.getTotalSize(), 
+                        record.getNumberOf(), deltaTotalSize, deltaNumberOf);
+            } else {
+                Integer group = labels.getPrefix(path);
+                long[] sum = others.get(group);
+                if (sum == null) {
+                    sum = new long[5];
+                    others.put(group, sum);
                 }
-                
-                lastProcessed = child;
+                sum[0] += record.getTotalSize();
+                sum[1] += record.getNumberOf();
+                sum[2] += deltaTotalSize;
+                sum[3] += deltaNumberOf;
+                sum[4]++;
+            }
+        }
 
-                className = className.substring(nodeId.length());
-                if (className.startsWith(".")) {
-                    className = className.substring(1);
-                }
-                // removes semicolon from leaves
-                if (className.endsWith(";")) {
-                    className.replace(";", "");
+        int prunedClasses = schema.getSlot(PRUNED_CLASSES);
+        int othersSegment = labels.segment(OTHERS, 0, OTHERS.length());
+        for (Map.Entry<Integer, long[]> entry : others.entrySet()) {
+            int path = labels.label(entry.getKey(), othersSegment);
+            TreeMapNode leaf = branches.leaf(path);
+            long[] sum = entry.getValue();
+            setValues(leaf, schema, slots, sum[0], sum[1], sum[2], sum[3]);
+            leaf.setLongAttribute(schema, prunedClasses, sum[4]);
+        }
+    }
+
+    /**
+     * @return the label of the branch of the given record, as decided by 
+     * the strategy.
+     */
+    private static int group(HistogramRecord record, GroupingStrategy strategy, 
+            GroupingStrategy.Branch branch) {
+        // if className is a primitive type it is converted with its full name
+        String className = DescriptorConverter.toJavaType(record.getClassname());
+        branch.clear();
+        strategy.group(record, className, branch);
+        if (branch.getPath() == LabelDictionary.NONE) {
+            throw new IllegalStateException("empty branch for " + className);
+        }
+        return branch.getPath();
+    }
+
+    /**
+     * Finds or creates the nodes of records' branches.
+     */
+    private static final class Branches {
+        private final TreeMapNode root;
+        private final LabelDictionary labels;
+        private final AttributeSchema schema;
+
+        /**
+         * Nodes indexed by the label id of their branch, to find a node's 
+         * child in constant time.
+         */
+        private final List<TreeMapNode> nodes = new ArrayList<>();
+
+        /**
+         * Labels of the missing nodes of a branch, from the leaf up.
+         */
+        private int[] missing = new int[16];
+
+        Branches(TreeMapNode root, LabelDictionary labels, AttributeSchema schema) {
+            this.root = root;
+            this.labels = labels;
+            this.schema = schema;
+        }
+
+        /**
+         * Find or create the nodes of the given branch. Nodes are created 
+         * from the top, so that each one is added to a parent having its 
+         * final depth.
+         * @param path the label of the branch.
+         * @return the branch's leaf.
+         */
+        TreeMapNode leaf(int path) {
+            TreeMapNode node = path < nodes.size() ? nodes.get(path) : null;
+            if (node != null) {
+                return node;
+            }
+            while (nodes.size() < labels.size()) {
+                nodes.add(null);
+            }
+            int count = 0;
+            int p = path;
+            while (p != LabelDictionary.NONE && nodes.get(p) == null) {
+                if (count == missing.length) {
+                    missing = Arrays.copyOf(missing, 2 * count);
                 }
+                missing[count++] = p;
+                p = labels.getPrefix(p);
             }
-            
-            // at this point lastProcessed references to a leaf
-            lastProcessed.setRealWeight(records.get(i).getTotalSize());
-            lastProcessed.addInfo(NUMBER_OF, 
-                    Long.toString(records.get(i).getNumberOf()));
+            TreeMapNode lastProcessed = p == LabelDictionary.NONE ? root : nodes.get(p);
+            for (int i = count - 1; i >= 0; i--) {
+                TreeMapNode child = new TreeMapNode(labels, 
+                        labels.label(LabelDictionary.NONE, labels.getSegment(missing[i])), 0);
+                child.setAttributeSchema(schema);
+                lastProcessed.addChild(child);
+                nodes.set(missing[i], child);
+                lastProcessed = child;
+            }
+            return lastProcessed;
         }
     }
 
     /**
-     * This method calcs the real weights using a bottom-up traversal. From leaves, 
-     * weights are passed to parent nodem which will have as weight the sum of
-     * the children's weights.
-     * 
-     * @param node the subtree's root from which start to calc weights.
-     * @return the node's real weight.
+     * Store into the given leaf its weight and attributes. Changes are 
+     * stored only if the schema has their slots.
+     * @param slots the slots of the number of instances, the total size and
+     * their changes.
      */
-    private static double fillWeights(TreeMapNode node) {
-        if (node.getChildren().size() == 0) {
-            return node.getRealWeight();
+    private static void setValues(TreeMapNode leaf, AttributeSchema schema, int[] slots, 
+            long totalSize, long numberOf, long deltaTotalSize, long deltaNumberOf) {
+        leaf.setRealWeight(totalSize);
+        leaf.setLongAttribute(schema, slots[0], numberOf);
+        leaf.setLongAttribute(schema, slots[1], totalSize);
+        if (slots[2] != AttributeSchema.NONE) {
+            leaf.setLongAttribute(schema, slots[2], deltaNumberOf);
+            leaf.setLongAttribute(schema, slots[3], deltaTotalSize);
         }
+    }
 
-        double sum = 0;
-        for (TreeMapNode child : node.getChildren()) {
-            sum += fillWeights(child);
+    /**
+     * @return the records of the given histogram by class name, or null if
+     * the histogram is null.
+     */
+    private static Map<String, HistogramRecord> index(ObjectHistogram histogram) {
+        if (histogram == null) {
+            return null;
         }
-        node.setRealWeight(sum);
-        return node.getRealWeight();
+        Map<String, HistogramRecord> records = new HashMap<>();
+        for (HistogramRecord record : histogram.getHistogram()) {
+            records.put(record.getClassname(), record);
+        }
+        return records;
     }
 
     /**
-     * This method allows to collapse nodes which have only one child.
-     * E.g. nodes labeled <i>com</i> and <i>example</i> are collapsed in the 
-     * parent node, which will have as label <i>com.example</i>.
-     * @param node the subree's root from which start packing.
-     */
-    private static void packTree(TreeMapNode node) {
-        if (node.getChildren().size() == 1) {
-            TreeMapNode child = node.getChildren().get(0);
-            node.setLabel(node.getLabel() + "." + child.getLabel());
-            node.setChildren(child.getChildren());
-            packTree(node);
-        } else {
-            for (TreeMapNode child : node.getChildren()) {
-                packTree(child);
+     * This method calcs the real weights using a bottom-up traversal. From 
+     * leaves, weights are passed to parent nodes which will have as weight 
+     * the sum of the children's weights.
+     * 
+     * <p>In the same traversal, chains of nodes having only one child are 
+     * collapsed in their first node. E.g. nodes labeled <i>com</i> and 
+     * <i>example</i> are collapsed in the parent node, which will have as 
+     * label <i>com.example</i>. Chains are collapsed when the traversal 
+     * leaves their first node, joining their labels once. Their children 
+     * are moved without walking the moved subtrees, whose depths are left 
+     * for the caller to update once.
+     * 
+     * @param root the subtree's root from which start.
+     * @param labels the dictionary storing nodes' labels.
+     * @return the root's real weight.
+     */
+    private static double fillWeightsAndPack(final TreeMapNode root, 
+            final LabelDictionary labels) {
+        root.accept(new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                return Result.CONTINUE;
             }
+
+            @Override
+            public Result leave(TreeMapNode node, int depth) {
+                // children have been left before their parent
+                List<TreeMapNode> children = node.getChildren();
+                if (children.isEmpty()) {
+                    return Result.CONTINUE;
+                }
+                double sum = 0;
+                for (TreeMapNode child : children) {
+                    sum += child.getRealWeight();
+                }
+                node.setRealWeight(sum);
+
+                boolean chainStart = node == root || node.getParent().getChildren().size() != 1;
+                if (children.size() == 1 && chainStart) {
+                    pack(node, labels);
+                }
+                return Result.CONTINUE;
+            }
+        });
+        return root.getRealWeight();
+    }
+
+    /**
+     * Collapse into the given node the chain of nodes having only one child
+     * which starts from it.
+     * @param node the first node of the chain.
+     * @param labels the dictionary storing nodes' labels.
+     */
+    private static void pack(TreeMapNode node, LabelDictionary labels) {
+        int label = node.getLabelId();
+        TreeMapNode last = node;
+        while (last.getChildren().size() == 1) {
+            last = last.getChildren().get(0);
+            label = labels.concat(label, last.getLabelId());
+            node.takeInfo(last);
         }
+        node.setLabel(labels, label);
+        // depths are fixed once the whole tree has been packed
+        node.relinkChildren(last);
     }
 }
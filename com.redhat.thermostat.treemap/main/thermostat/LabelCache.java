@@ -0,0 +1,367 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class caches the measures of the labels drawn inside a TreeMap. For
+ * each pair (text, font) the bounds and the {@link GlyphVector} are 
+ * calculated just once, so repeated redraws of the same tree don't need any
+ * text measurement.
+ * 
+ * <p>It also allows to fit a label in a given width, truncating it and 
+ * appending an ellipsis. Truncation uses the glyph positions of the cached
+ * text, so it doesn't require new measures either. The last few truncated
+ * versions of a label are kept with its entry, by number of characters 
+ * kept, so a label drawn at several widths doesn't build them again, and 
+ * they don't take the place of other labels in the cache.
+ * 
+ * <p>The cache is bounded: when it is full the least recently used entry is
+ * discarded. Texts are looked up by their characters, so labels built into
+ * a reused {@link StringBuilder} are found without creating strings; a 
+ * string is created only for a text measured the first time. As Swing 
+ * components, a cache is meant to be used by one thread at a time.
+ */
+public class LabelCache {
+
+    /**
+     * The string appended to truncated labels.
+     */
+    public static final String ELLIPSIS = "...";
+
+    /**
+     * Default number of labels stored in the cache.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Number of truncated versions kept for each label.
+     */
+    static final int FITS = 4;
+
+    /**
+     * The cached entries, in access order.
+     */
+    private final Map<Key, Entry> entries;
+
+    /**
+     * The key used to look texts up, reused.
+     */
+    private final Key probe = new Key();
+
+    /**
+     * The width of the ellipsis drawn with the last font used to fit a text.
+     */
+    private Font ellipsisFont;
+    private int ellipsisWidth;
+
+    /**
+     * Number of text measurements performed by this cache.
+     */
+    private long measureCount = 0;
+
+    /**
+     * Constructor. Creates a cache with default capacity.
+     */
+    public LabelCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the max number of labels to store.
+     */
+    public LabelCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, LabelCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the bounds of the given text drawn with the given font. The 
+     * rectangle's origin is relative to the text baseline.
+     * @param text the text to measure.
+     * @param font the font used to draw the text.
+     * @return the text bounds. The returned object is shared, don't modify it.
+     */
+    public Rectangle getBounds(CharSequence text, Font font) {
+        return getEntry(text, font).bounds;
+    }
+
+    /**
+     * Return the {@link GlyphVector} representing the given text drawn with 
+     * the given font.
+     * @param text the text to draw.
+     * @param font the font used to draw the text.
+     * @return the glyph vector of the text.
+     */
+    public GlyphVector getGlyphVector(CharSequence text, Font font) {
+        return getEntry(text, font).glyphs;
+    }
+
+    /**
+     * Fit the given text in the given width. If the text is too long, it is
+     * truncated and an ellipsis is appended to it.
+     * @param text the text to fit.
+     * @param font the font used to draw the text.
+     * @param maxWidth the available width.
+     * @return the text if it fits, a truncated version of it or null if not
+     * even one character followed by the ellipsis fits.
+     */
+    public String fit(CharSequence text, Font font, int maxWidth) {
+        Entry entry = getEntry(text, font);
+        if (entry.bounds.width < maxWidth) {
+            return entry.text;
+        }
+        int fit = truncate(entry, font, maxWidth);
+        return fit < 0 ? null : entry.fitTexts[fit];
+    }
+
+    /**
+     * Return the {@link GlyphVector} of the given text fitted in the given 
+     * width, as {@link #fit(CharSequence, Font, int)} does. It is drawn at
+     * the same baseline as the whole text.
+     * @param text the text to fit.
+     * @param font the font used to draw the text.
+     * @param maxWidth the available width.
+     * @return the glyph vector of the text or of its truncated version, or
+     * null if not even one character followed by the ellipsis fits.
+     */
+    public GlyphVector getFitGlyphVector(CharSequence text, Font font, int maxWidth) {
+        Entry entry = getEntry(text, font);
+        if (entry.bounds.width < maxWidth) {
+            return entry.glyphs;
+        }
+        int fit = truncate(entry, font, maxWidth);
+        if (fit < 0) {
+            return null;
+        }
+        if (entry.fitGlyphs[fit] == null) {
+            entry.fitGlyphs[fit] = font.createGlyphVector(renderContext(font), 
+                    entry.fitTexts[fit]);
+            measureCount++;
+        }
+        return entry.fitGlyphs[fit];
+    }
+
+    /**
+     * Truncate the text of the given entry to fit the given width.
+     * @return the index of the truncated version in the entry, or -1 if 
+     * not even one character followed by the ellipsis fits.
+     */
+    private int truncate(Entry entry, Font font, int maxWidth) {
+        if (!font.equals(ellipsisFont)) {
+            ellipsisWidth = font.getStringBounds(ELLIPSIS, renderContext(font)).getBounds().width;
+            ellipsisFont = font;
+            measureCount++;
+        }
+        // look for the longest prefix which fits together with the ellipsis
+        int low = 1;
+        int high = entry.text.length() - 1;
+        int chars = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entry.advance(mid) + ellipsisWidth < maxWidth) {
+                chars = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return chars > 0 ? entry.fit(chars) : -1;
+    }
+
+    private static FontRenderContext renderContext(Font font) {
+        return new FontRenderContext(font.getTransform(), false, false);
+    }
+
+    /**
+     * @return the number of text measurements performed by this cache.
+     */
+    public long getMeasureCount() {
+        return measureCount;
+    }
+
+    /**
+     * @return the number of labels stored in this cache.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all labels from this cache.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private Entry getEntry(CharSequence text, Font font) {
+        Entry entry = entries.get(probe.set(Objects.requireNonNull(text), 
+                Objects.requireNonNull(font)));
+        // don't keep the caller's builder
+        probe.text = null;
+        if (entry == null) {
+            String string = text.toString();
+            entry = new Entry(string, font);
+            entries.put(new Key().set(string, font), entry);
+            measureCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * The key of the cache's entries. Keys stored in the cache hold strings,
+     * the probe used for lookups any characters.
+     */
+    private static final class Key {
+        private CharSequence text;
+        private Font font;
+        private int hash;
+
+        Key set(CharSequence newText, Font newFont) {
+            this.text = newText;
+            this.font = newFont;
+            // the same as String.hashCode()
+            int h = 0;
+            for (int i = 0; i < newText.length(); i++) {
+                h = 31 * h + newText.charAt(i);
+            }
+            this.hash = 31 * h + newFont.hashCode();
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (hash != other.hash || !font.equals(other.font) 
+                    || text.length() != other.text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) != other.text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The measures of a label.
+     */
+    private static final class Entry {
+        private final String text;
+        private final GlyphVector glyphs;
+        private final Rectangle bounds;
+
+        /**
+         * The truncated versions of the text, by number of characters kept,
+         * and their glyphs, created when first drawn. Created by the first
+         * truncation, and replaced in turn when all are used.
+         */
+        private int[] fitChars;
+        private String[] fitTexts;
+        private GlyphVector[] fitGlyphs;
+        private int nextFit;
+
+        Entry(String text, Font font) {
+            FontRenderContext frc = renderContext(font);
+            this.text = text;
+            this.glyphs = font.createGlyphVector(frc, text);
+            this.bounds = font.getStringBounds(text, frc).getBounds();
+        }
+
+        /**
+         * @return the width of the first <i>chars</i> characters.
+         */
+        double advance(int chars) {
+            // glyphs and chars match for the text drawn in a TreeMap 
+            // (class and package names), fall back to the full width if not
+            if (chars >= glyphs.getNumGlyphs()) {
+                return bounds.width;
+            }
+            return glyphs.getGlyphPosition(chars).getX();
+        }
+
+        /**
+         * @return the index of the version of the text truncated to the 
+         * given number of characters, created if needed.
+         */
+        int fit(int chars) {
+            if (fitChars == null) {
+                fitChars = new int[FITS];
+                fitTexts = new String[FITS];
+                fitGlyphs = new GlyphVector[FITS];
+            }
+            for (int i = 0; i < FITS; i++) {
+                if (fitChars[i] == chars) {
+                    return i;
+                }
+            }
+            int i = nextFit;
+            nextFit = (nextFit + 1) % FITS;
+            fitChars[i] = chars;
+            fitTexts[i] = text.substring(0, chars) + ELLIPSIS;
+            fitGlyphs[i] = null;
+            return i;
+        }
+    }
+}
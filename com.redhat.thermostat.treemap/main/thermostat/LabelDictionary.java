@@ -0,0 +1,397 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.Arrays;
+
+/**
+ * This class stores labels made of dot separated segments, like package and
+ * class names, sharing equal segments and equal prefixes.
+ * 
+ * <p>Each distinct segment is stored once, as characters of a shared array,
+ * and is identified by an int id. Each distinct label is identified by an 
+ * int id too, and is stored as the id of the label it extends plus the id of
+ * its last segment: <i>java.lang.String</i> is <i>java.lang</i> followed by 
+ * <i>String</i>. Equal labels have equal ids, so they can be compared as
+ * ints, and labels' strings are built only when asked for.
+ * 
+ * <p>Adding segments and labels is not thread safe. Once labels have been
+ * added, they can be read by several threads at the same time: reading 
+ * methods don't share any scratch state. Strings of labels are not kept: 
+ * they are built into the caller's builder by 
+ * {@link #append(int, StringBuilder)}, so memory doesn't grow with the 
+ * labels shown.
+ */
+public final class LabelDictionary {
+
+    /**
+     * Id of the missing label, the prefix of single segment labels.
+     */
+    public static final int NONE = -1;
+
+    private static final char SEPARATOR = '.';
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Segments' characters, with start and length of each segment.
+     */
+    private char[] chars = new char[DEFAULT_CAPACITY * 8];
+    private int charCount = 0;
+    private int[] segmentStart = new int[DEFAULT_CAPACITY];
+    private int[] segmentLength = new int[DEFAULT_CAPACITY];
+    private int segmentCount = 0;
+
+    /**
+     * Labels' prefix and last segment.
+     */
+    private int[] prefix = new int[DEFAULT_CAPACITY];
+    private int[] segment = new int[DEFAULT_CAPACITY];
+    private int labelCount = 0;
+
+    /**
+     * Open addressing hash tables of segments' and labels' ids, -1 marking
+     * empty slots.
+     */
+    private int[] segmentTable = newTable(2 * DEFAULT_CAPACITY);
+    private int[] labelTable = newTable(2 * DEFAULT_CAPACITY);
+
+    /**
+     * Scratch buffer of {@link #concat(int, int)}, which adds labels.
+     */
+    private int[] path = new int[16];
+
+    /**
+     * @return the number of distinct labels.
+     */
+    public int size() {
+        return labelCount;
+    }
+
+    /**
+     * @return the number of distinct segments.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Return the id of the given segment, adding it if needed.
+     * @param s the characters containing the segment.
+     * @param start the segment's first character.
+     * @param end the index after the segment's last character.
+     */
+    public int segment(CharSequence s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        int mask = segmentTable.length - 1;
+        int slot = mix(hash) & mask;
+        int id;
+        while ((id = segmentTable[slot]) != -1) {
+            if (segmentEquals(id, s, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int length = end - start;
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(2 * chars.length, charCount + length));
+        }
+        for (int i = start; i < end; i++) {
+            chars[charCount++] = s.charAt(i);
+        }
+        if (segmentCount == segmentStart.length) {
+            segmentStart = Arrays.copyOf(segmentStart, 2 * segmentCount);
+            segmentLength = Arrays.copyOf(segmentLength, 2 * segmentCount);
+        }
+        id = segmentCount++;
+        segmentStart[id] = charCount - length;
+        segmentLength[id] = length;
+        segmentTable[slot] = id;
+        if (2 * segmentCount > segmentTable.length) {
+            segmentTable = rehash(segmentTable, true);
+        }
+        return id;
+    }
+
+    private boolean segmentEquals(int id, CharSequence s, int start, int end) {
+        int length = segmentLength[id];
+        if (length != end - start) {
+            return false;
+        }
+        int offset = segmentStart[id];
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the id of the label made of the given prefix followed by the
+     * given segment, adding it if needed.
+     * @param prefixId the prefix's label id, or {@link #NONE}.
+     * @param segmentId the last segment's id.
+     */
+    public int label(int prefixId, int segmentId) {
+        if (prefixId < NONE || prefixId >= labelCount) {
+            throw new IndexOutOfBoundsException("label " + prefixId + ", size " + labelCount);
+        }
+        if (segmentId < 0 || segmentId >= segmentCount) {
+            throw new IndexOutOfBoundsException("segment " + segmentId + ", count " + segmentCount);
+        }
+        int mask = labelTable.length - 1;
+        int slot = mix(31 * prefixId + segmentId) & mask;
+        int id;
+        while ((id = labelTable[slot]) != -1) {
+            if (prefix[id] == prefixId && segment[id] == segmentId) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (labelCount == prefix.length) {
+            prefix = Arrays.copyOf(prefix, 2 * labelCount);
+            segment = Arrays.copyOf(segment, 2 * labelCount);
+        }
+        id = labelCount++;
+        prefix[id] = prefixId;
+        segment[id] = segmentId;
+        labelTable[slot] = id;
+        if (2 * labelCount > labelTable.length) {
+            labelTable = rehash(labelTable, false);
+        }
+        return id;
+    }
+
+    /**
+     * Return the id of the given label, splitting it in segments at dots and
+     * adding what is needed.
+     */
+    public int label(CharSequence s) {
+        int id = NONE;
+        int start = 0;
+        int length = s.length();
+        while (true) {
+            int end = start;
+            while (end < length && s.charAt(end) != SEPARATOR) {
+                end++;
+            }
+            id = label(id, segment(s, start, end));
+            if (end == length) {
+                return id;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Return the id of the label made of the first label followed by the
+     * segments of the second one, as the dot separated concatenation of 
+     * their strings.
+     */
+    public int concat(int first, int second) {
+        int count = path(second);
+        int id = first;
+        for (int i = count - 1; i >= 0; i--) {
+            id = label(id, segment[path[i]]);
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of the label's prefix, or {@link #NONE} if the label has
+     * only one segment.
+     */
+    public int getPrefix(int label) {
+        return prefix[check(label)];
+    }
+
+    /**
+     * @return the id of the label's last segment.
+     */
+    public int getSegment(int label) {
+        return segment[check(label)];
+    }
+
+    /**
+     * Append the given label to the given builder, without building its 
+     * string.
+     * @return the builder.
+     */
+    public StringBuilder append(int label, StringBuilder sb) {
+        check(label);
+        // segments are found from the last one, so fill the builder backwards
+        int start = sb.length();
+        int end = start + length(label);
+        sb.setLength(end);
+        for (int id = label; id != NONE; id = prefix[id]) {
+            int seg = segment[id];
+            int offset = segmentStart[seg];
+            end -= segmentLength[seg];
+            for (int i = 0; i < segmentLength[seg]; i++) {
+                sb.setCharAt(end + i, chars[offset + i]);
+            }
+            if (end > start) {
+                sb.setCharAt(--end, SEPARATOR);
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Build the string of the given label. Strings are not kept: where a 
+     * label is only drawn or compared, use {@link #append(int, StringBuilder)}
+     * with a reused builder or {@link #matches(int, CharSequence)}.
+     * @return a new string.
+     */
+    public String toString(int label) {
+        check(label);
+        char[] buffer = new char[length(label)];
+        int end = buffer.length;
+        for (int id = label; id != NONE; id = prefix[id]) {
+            int seg = segment[id];
+            end -= segmentLength[seg];
+            System.arraycopy(chars, segmentStart[seg], buffer, end, segmentLength[seg]);
+            if (end > 0) {
+                buffer[--end] = SEPARATOR;
+            }
+        }
+        return new String(buffer);
+    }
+
+    /**
+     * @return true if the given label's string is equal to the given 
+     * characters, without building it.
+     */
+    public boolean matches(int label, CharSequence s) {
+        check(label);
+        // compare from the last segment, the first one found
+        int position = s.length();
+        for (int id = label; id != NONE; id = prefix[id]) {
+            int seg = segment[id];
+            int length = segmentLength[seg];
+            if (length > position 
+                    || !segmentEquals(seg, s, position - length, position)) {
+                return false;
+            }
+            position -= length;
+            if (prefix[id] != NONE) {
+                if (position == 0 || s.charAt(position - 1) != SEPARATOR) {
+                    return false;
+                }
+                position--;
+            }
+        }
+        return position == 0;
+    }
+
+    /**
+     * @return the length of the given label's string.
+     */
+    private int length(int label) {
+        int length = -1;
+        for (int id = label; id != NONE; id = prefix[id]) {
+            length += segmentLength[segment[id]] + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Store the given label and its prefixes, from the label itself to its 
+     * first segment, into {@link #path}. Only used while adding labels.
+     * @return the number of labels stored.
+     */
+    private int path(int label) {
+        check(label);
+        int count = 0;
+        for (int id = label; id != NONE; id = prefix[id]) {
+            if (count == path.length) {
+                path = Arrays.copyOf(path, 2 * count);
+            }
+            path[count++] = id;
+        }
+        return count;
+    }
+
+    private int check(int label) {
+        if (label < 0 || label >= labelCount) {
+            throw new IndexOutOfBoundsException("label " + label + ", size " + labelCount);
+        }
+        return label;
+    }
+
+    private int[] rehash(int[] table, boolean segments) {
+        int[] result = newTable(2 * table.length);
+        int mask = result.length - 1;
+        for (int id : table) {
+            if (id == -1) {
+                continue;
+            }
+            int slot = mix(segments ? segmentHash(id) : 31 * prefix[id] + segment[id]) & mask;
+            while (result[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            result[slot] = id;
+        }
+        return result;
+    }
+
+    private int segmentHash(int id) {
+        int hash = 0;
+        int end = segmentStart[id] + segmentLength[id];
+        for (int i = segmentStart[id]; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class keeps the latest layout of a tree for each metric, so that 
+ * switching the metric a TreeMap is drawn by, like from the size of classes
+ * to their number of instances and back, restores the rectangles computed
+ * before instead of laying out the tree again.
+ * 
+ * <p>Nodes' weights are never changed: a metric's weights are kept by a 
+ * {@link TreeView} showing the whole tree, which is reused when the tree is
+ * laid out again in another area. {@link AttributeSchema#NONE} lays out the
+ * tree by nodes' real weights.
+ * 
+ * <p>A layout is reused if it has been computed for the same root and the
+ * same area, and if the tree still has the same shape. Changes of nodes' 
+ * attributes are not detected: call {@link #clear()} after changing them.
+ * 
+ * <p>The cache keeps the layouts of a bounded number of metrics, dropping 
+ * the least recently used one, and holds the nodes of the trees it has 
+ * laid out: call {@link #clear()} when the tree is replaced, so the old one
+ * can be collected.
+ * 
+ * @see TreeProcessor#processTreeMap(TreeMapNode, Rectangle2D.Double, int)
+ */
+public class LayoutCache {
+
+    /**
+     * Values stored for each node.
+     */
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int W = 2;
+    private static final int H = 3;
+    private static final int VALUES = 4;
+
+    /**
+     * Default number of metrics whose layout is kept.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * The layout and the weights of the tree for each metric, in access 
+     * order.
+     */
+    private final Map<Integer, Kept> layouts;
+
+    /**
+     * Number of layouts restored instead of being computed.
+     */
+    private int hits = 0;
+
+    /**
+     * Constructor. Creates a cache keeping the layouts of 
+     * {@link #DEFAULT_CAPACITY} metrics.
+     */
+    public LayoutCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the max number of metrics whose layout is kept.
+     */
+    public LayoutCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.layouts = new LinkedHashMap<Integer, Kept>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Kept> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Lay out the tree by the given metric, or restore the layout computed 
+     * before for it.
+     * @param tree the tree's root.
+     * @param area the area to fill.
+     * @param metric the slot of the attribute to use as weight, as in
+     * {@link TreeProcessor#processTreeMap(TreeMapNode, Rectangle2D.Double, int)}.
+     * @return the updated tree.
+     */
+    public TreeMapNode process(TreeMapNode tree, Rectangle2D.Double area, int metric) {
+        Objects.requireNonNull(tree);
+        Objects.requireNonNull(area);
+        Kept kept = layouts.get(metric);
+        if (kept == null) {
+            kept = new Kept();
+            layouts.put(metric, kept);
+        }
+        Layout layout = kept.layout;
+        if (layout != null && layout.matches(tree, area) && layout.restore()) {
+            hits++;
+            return tree;
+        }
+        if (metric == AttributeSchema.NONE) {
+            TreeProcessor.processTreeMap(tree, area);
+        } else {
+            if (kept.view == null || kept.view.getRoot() != tree) {
+                kept.view = new TreeView(tree, TreeView.all(), metric);
+            }
+            TreeProcessor.processTreeMap(kept.view, tree, area);
+        }
+        kept.layout = new Layout(tree, area);
+        return tree;
+    }
+
+    /**
+     * Forget all layouts and weights.
+     */
+    public void clear() {
+        layouts.clear();
+    }
+
+    /**
+     * @return the number of layouts kept.
+     */
+    public int size() {
+        return layouts.size();
+    }
+
+    /**
+     * @return the number of layouts restored instead of being computed.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * The latest layout of a metric, and the weights of the tree by it.
+     */
+    private static final class Kept {
+        private Layout layout;
+        private TreeView view;
+    }
+
+    /**
+     * The rectangles and children order of a processed tree.
+     */
+    private static final class Layout {
+        private final TreeMapNode root;
+        private final Rectangle2D.Double area;
+
+        /**
+         * Nodes in breadth first order, so that each node's children are 
+         * contiguous, with their children count and values.
+         */
+        private final TreeMapNode[] nodes;
+        private final int[] childCount;
+        private final double[] values;
+
+        Layout(TreeMapNode root, Rectangle2D.Double area) {
+            this.root = root;
+            this.area = (Rectangle2D.Double) area.clone();
+            List<TreeMapNode> list = new ArrayList<>();
+            list.add(root);
+            for (int i = 0; i < list.size(); i++) {
+                list.addAll(list.get(i).getChildren());
+            }
+            nodes = list.toArray(new TreeMapNode[list.size()]);
+            childCount = new int[nodes.length];
+            values = new double[VALUES * nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                TreeMapNode node = nodes[i];
+                Rectangle2D.Double r = node.getRectangle();
+                int v = VALUES * i;
+                childCount[i] = node.getChildren().size();
+                values[v + X] = r.x;
+                values[v + Y] = r.y;
+                values[v + W] = r.width;
+                values[v + H] = r.height;
+            }
+        }
+
+        boolean matches(TreeMapNode tree, Rectangle2D.Double other) {
+            return root == tree && area.equals(other);
+        }
+
+        /**
+         * Restore the stored layout into the nodes.
+         * @return false if the tree's shape has changed, in which case 
+         * nothing is restored.
+         */
+        boolean restore() {
+            int next = 1;
+            for (int i = 0; i < nodes.length; i++) {
+                List<TreeMapNode> children = nodes[i].getChildren();
+                if (children.size() != childCount[i]) {
+                    return false;
+                }
+                for (int c = 0; c < childCount[i]; c++) {
+                    if (next >= nodes.length || nodes[next].getParent() != nodes[i]) {
+                        return false;
+                    }
+                    next++;
+                }
+            }
+            next = 1;
+            for (int i = 0; i < nodes.length; i++) {
+                TreeMapNode node = nodes[i];
+                List<TreeMapNode> children = node.getChildren();
+                for (int c = 0; c < childCount[i]; c++) {
+                    children.set(c, nodes[next++]);
+                }
+                int v = VALUES * i;
+                node.setRectangle(new Rectangle2D.Double(values[v + X], values[v + Y], 
+                        values[v + W], values[v + H]));
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class indexes the nodes of a tree by their full name, as returned by
+ * {@link TreeMapNode#getFullName()}, so that external tools can jump to a 
+ * class or a package in constant time.
+ * 
+ * <p>The index follows the changes of the tree: it is rebuilt by the first 
+ * lookup after nodes of the tree are added, moved or renamed. Changes of 
+ * other trees don't affect it, and laying out the tree doesn't change its
+ * structure.
+ */
+public class NameIndex {
+
+    private final TreeMapNode root;
+
+    private final Map<String, TreeMapNode> nodes = new HashMap<>();
+
+    private int version;
+
+    /**
+     * Constructor.
+     * @param root the root of the tree to index.
+     */
+    public NameIndex(TreeMapNode root) {
+        this.root = root;
+        build();
+    }
+
+    /**
+     * @return the node with the given full name, or null if none.
+     */
+    public TreeMapNode get(String fullName) {
+        update();
+        return nodes.get(fullName);
+    }
+
+    /**
+     * @return the number of distinct full names.
+     */
+    public int size() {
+        update();
+        return nodes.size();
+    }
+
+    private void update() {
+        if (version != root.getStructureVersion()) {
+            build();
+        }
+    }
+
+    private void build() {
+        nodes.clear();
+        version = root.getStructureVersion();
+        // full names of the nodes from the root to the current one
+        final List<String> names = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        root.accept(new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                sb.setLength(0);
+                if (depth == 0) {
+                    sb.append(root.getFullName());
+                } else {
+                    sb.append(names.get(depth - 1));
+                    node.appendName(sb, false);
+                }
+                String name = sb.toString();
+                names.add(name);
+                if (!nodes.containsKey(name)) {
+                    nodes.put(name, node);
+                }
+                return Result.CONTINUE;
+            }
+
+            @Override
+            public Result leave(TreeMapNode node, int depth) {
+                names.remove(depth);
+                return Result.CONTINUE;
+            }
+        });
+    }
+}
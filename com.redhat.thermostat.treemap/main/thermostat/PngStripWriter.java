@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A minimal PNG encoder which receives the image a few rows at a time and 
+ * writes them immediately on the output stream, so the whole image never 
+ * needs to be kept in memory.
+ * 
+ * <p>Images are written as 8 bit RGB, not interlaced. Rows must be given in
+ * top to bottom order.
+ */
+public class PngStripWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {
+        (byte) 137, 80, 78, 71, 13, 10, 26, 10
+    };
+
+    /**
+     * Max size of an IDAT chunk.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+
+    /**
+     * Compresses rows into IDAT chunks.
+     */
+    private final DeflaterOutputStream idat;
+    private final Deflater deflater;
+
+    /**
+     * Buffer for a single row, including the filter type byte.
+     */
+    private final byte[] row;
+
+    /**
+     * Number of rows written so far.
+     */
+    private int rowsWritten = 0;
+
+    /**
+     * Constructor. It writes the PNG header.
+     * @param out the stream on which to write the image.
+     * @param width the image width.
+     * @param height the image height.
+     * @throws IOException if writing fails.
+     */
+    public PngStripWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid image size " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + 3 * width];
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8); // bit depth
+        h.writeByte(2); // color type: RGB
+        h.writeByte(0); // compression
+        h.writeByte(0); // filter
+        h.writeByte(0); // interlace
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.idat = new DeflaterOutputStream(new ChunkStream(), deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Write the given rows.
+     * @param rgb the pixels, as int RGB values. Alpha is ignored.
+     * @param offset the index of the first pixel of the first row.
+     * @param scanline the distance between the first pixels of two rows.
+     * @param rows the number of rows to write.
+     * @throws IOException if writing fails.
+     */
+    public void writeRows(int[] rgb, int offset, int scanline, int rows) throws IOException {
+        if (rowsWritten + rows > height) {
+            throw new IllegalStateException("too many rows");
+        }
+        for (int r = 0; r < rows; r++) {
+            int p = offset + r * scanline;
+            int k = 1;
+            row[0] = 0; // no filter
+            for (int x = 0; x < width; x++) {
+                int c = rgb[p + x];
+                row[k++] = (byte) (c >> 16);
+                row[k++] = (byte) (c >> 8);
+                row[k++] = (byte) c;
+            }
+            idat.write(row);
+        }
+        rowsWritten += rows;
+    }
+
+    /**
+     * Complete the image. The underlying stream is flushed but not closed.
+     * The compressor is released even if this method fails.
+     * @throws IOException if writing fails or not all rows have been written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("image incomplete: " + rowsWritten + " rows of " + height);
+            }
+            idat.finish();
+            // write the last, partial, IDAT chunk
+            idat.flush();
+            writeChunk("IEND", new byte[0], 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Stream which splits compressed data into IDAT chunks.
+     */
+    private class ChunkStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[count++] = (byte) b;
+            if (count == buffer.length) {
+                flushChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk("IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
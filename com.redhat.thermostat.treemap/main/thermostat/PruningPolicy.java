@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+
+/**
+ * This class selects the records of a histogram worth a node of their own. 
+ * {@link HistogramConverter} folds the other records of each package, or 
+ * group of a {@link GroupingStrategy}, into a single leaf, labeled 
+ * {@link HistogramConverter#OTHERS}, so nodes for 
+ * the long tail of small classes, which are too small to be drawn, are 
+ * never created.
+ */
+public abstract class PruningPolicy {
+
+    /**
+     * Select the records to keep.
+     * @param records the records of the histogram.
+     * @param groups the group of each record, that is the full name of the
+     * parent of its leaf: its package when grouping by package, empty for 
+     * classes in the default package and primitive types.
+     * @return the indexes of the records to keep.
+     */
+    public abstract BitSet select(List<HistogramRecord> records, List<String> groups);
+
+    /**
+     * @return a policy keeping the n largest classes of each package, or 
+     * group.
+     */
+    public static PruningPolicy topPerPackage(final int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must be non-negative");
+        }
+        return new PruningPolicy() {
+            @Override
+            public BitSet select(List<HistogramRecord> records, List<String> groups) {
+                Map<String, List<Integer>> byGroup = new HashMap<>();
+                for (int i = 0; i < records.size(); i++) {
+                    List<Integer> indexes = byGroup.get(groups.get(i));
+                    if (indexes == null) {
+                        indexes = new ArrayList<>();
+                        byGroup.put(groups.get(i), indexes);
+                    }
+                    indexes.add(i);
+                }
+                BitSet kept = new BitSet(records.size());
+                for (List<Integer> indexes : byGroup.values()) {
+                    sortBySize(indexes, records);
+                    for (int i = 0; i < Math.min(n, indexes.size()); i++) {
+                        kept.set(indexes.get(i));
+                    }
+                }
+                return kept;
+            }
+        };
+    }
+
+    /**
+     * @return a policy keeping the classes whose size is at least the given
+     * fraction of the total size, like 0.001 for one thousandth.
+     */
+    public static PruningPolicy minFraction(final double fraction) {
+        checkFraction(fraction);
+        return new PruningPolicy() {
+            @Override
+            public BitSet select(List<HistogramRecord> records, List<String> groups) {
+                double min = fraction * totalSize(records);
+                BitSet kept = new BitSet(records.size());
+                for (int i = 0; i < records.size(); i++) {
+                    if (records.get(i).getTotalSize() >= min) {
+                        kept.set(i);
+                    }
+                }
+                return kept;
+            }
+        };
+    }
+
+    /**
+     * @return a policy keeping the largest classes which together take at 
+     * least the given fraction of the total size, like 0.999 for 99.9%.
+     */
+    public static PruningPolicy coverage(final double fraction) {
+        checkFraction(fraction);
+        return new PruningPolicy() {
+            @Override
+            public BitSet select(List<HistogramRecord> records, List<String> groups) {
+                double target = fraction * totalSize(records);
+                List<Integer> indexes = new ArrayList<>();
+                for (int i = 0; i < records.size(); i++) {
+                    indexes.add(i);
+                }
+                sortBySize(indexes, records);
+                BitSet kept = new BitSet(records.size());
+                double covered = 0;
+                for (int i = 0; i < indexes.size() && covered < target; i++) {
+                    kept.set(indexes.get(i));
+                    covered += records.get(indexes.get(i)).getTotalSize();
+                }
+                return kept;
+            }
+        };
+    }
+
+    private static void checkFraction(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("fraction must be between 0 and 1");
+        }
+    }
+
+    private static double totalSize(List<HistogramRecord> records) {
+        double total = 0;
+        for (HistogramRecord record : records) {
+            total += record.getTotalSize();
+        }
+        return total;
+    }
+
+    /**
+     * Sort the given indexes by descending size of their records. 
+     */
+    private static void sortBySize(List<Integer> indexes, final List<HistogramRecord> records) {
+        Collections.sort(indexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(records.get(b).getTotalSize(), records.get(a).getTotalSize());
+            }
+        });
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This renderer fills nodes' rectangles writing directly into the pixel array
+ * of a {@link BufferedImage}, instead of issuing a Java2D call per rectangle.
+ * 
+ * <p>The image is split into horizontal bands which are filled in parallel.
+ * Each band only visits the rectangles intersecting it, found through a 
+ * spatial index built once per frame. Labels are then drawn with Java2D and,
+ * when drawing on a graphics object, the image is copied on it at once.
+ * {@link #paint(BufferedImage, TreeView, TreeMapNode)} draws directly into
+ * the given image, as {@link TreeMapComponent} does with its offscreen 
+ * image.
+ * 
+ * <p>If the drawing thread is interrupted while bands are being filled, the
+ * bands not started yet are cancelled and the running ones are waited for,
+ * so the pixels are never written after drawing returns. Labels and the 
+ * copy are then skipped and the thread's interrupt status is set.
+ * 
+ * <p>Direct filling is used in {@link TreeMapComponent#FLAT} mode, where 
+ * output is pixel identical to the one of {@link TreeMapRenderer}. With 
+ * other border styles, or when nodes' colors are translucent, this class 
+ * falls back to Java2D drawing.
+ */
+public class RasterTreeMapRenderer extends TreeMapRenderer {
+
+    /**
+     * Min number of rows in a band. Smaller images are filled by the calling
+     * thread.
+     */
+    private static final int MIN_BAND_HEIGHT = 64;
+
+    /**
+     * Thread pool shared by all raster renderers.
+     */
+    private static ExecutorService sharedExecutor;
+
+    /**
+     * The thread pool which fills bands.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The number of threads available in the pool.
+     */
+    private final int parallelism;
+
+    /**
+     * Constructor. Bands are filled by a thread pool shared by all the 
+     * renderers.
+     * @param font the font used for labels.
+     * @param labelCache the cache for labels' measures.
+     */
+    public RasterTreeMapRenderer(Font font, LabelCache labelCache) {
+        this(font, labelCache, getSharedExecutor(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param font the font used for labels.
+     * @param labelCache the cache for labels' measures.
+     * @param executor the thread pool which fills bands.
+     * @param parallelism the number of threads available in the pool.
+     */
+    public RasterTreeMapRenderer(Font font, LabelCache labelCache, 
+            ExecutorService executor, int parallelism) {
+        super(font, labelCache);
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Draw the given view. In flat mode the nodes are drawn into an image of
+     * the root's size which is then copied on the given graphics object.
+     */
+    @Override
+    public void paint(Graphics2D g, TreeView view, TreeMapNode root) {
+        if (getBorderStyle() != TreeMapComponent.FLAT) {
+            super.paint(g, view, root);
+            return;
+        }
+        Rectangle bounds = root.getRectangle().getBounds();
+        if (bounds.width <= 0 || bounds.height <= 0) {
+            return;
+        }
+        BufferedImage img = new BufferedImage(bounds.x + bounds.width, 
+                bounds.y + bounds.height, BufferedImage.TYPE_INT_ARGB);
+        if (draw(img, placements(view, root))) {
+            g.drawImage(img, 0, 0, null);
+        }
+    }
+
+    /**
+     * Draw the given view into the given image. In flat mode, if the image
+     * type is supported, the nodes are written directly into its pixels 
+     * without an intermediate image.
+     */
+    @Override
+    public void paint(BufferedImage img, TreeView view, TreeMapNode root) {
+        if (getBorderStyle() != TreeMapComponent.FLAT || !isSupported(img)) {
+            super.paint(img, view, root);
+            return;
+        }
+        draw(img, placements(view, root));
+    }
+
+    /**
+     * Draw the given flat tree. In flat mode the tree is drawn into an image
+     * of the root's size which is then copied on the given graphics object.
+     */
+    @Override
+    public void paint(Graphics2D g, FlatTree tree) {
+        if (getBorderStyle() != TreeMapComponent.FLAT) {
+            super.paint(g, tree);
+            return;
+        }
+        if (tree.size() == 0) {
+            return;
+        }
+        Rectangle bounds = tree.getRectangle(tree.getRoot()).getBounds();
+        if (bounds.width <= 0 || bounds.height <= 0) {
+            return;
+        }
+        BufferedImage img = new BufferedImage(bounds.x + bounds.width, 
+                bounds.y + bounds.height, BufferedImage.TYPE_INT_ARGB);
+        if (draw(img, placements(tree))) {
+            g.drawImage(img, 0, 0, null);
+        }
+    }
+
+    /**
+     * Draw the given tree into the given image, which must be of type 
+     * {@link BufferedImage#TYPE_INT_ARGB} or {@link BufferedImage#TYPE_INT_RGB}.
+     * Border style is ignored: rectangles are drawn in flat mode.
+     * @param img the image to draw into.
+     * @param root the root of a processed tree.
+     */
+    public void render(BufferedImage img, TreeMapNode root) {
+        render(img, null, root);
+    }
+
+    /**
+     * Draw the nodes shown by the given view into the given image, as 
+     * {@link #render(BufferedImage, TreeMapNode)} does.
+     * @param img the image to draw into.
+     * @param view the processed view, or null to draw all nodes.
+     * @param root the node from which to draw.
+     */
+    public void render(BufferedImage img, TreeView view, TreeMapNode root) {
+        checkType(img);
+        draw(img, placements(view, root));
+    }
+
+    /**
+     * Draw the given flat tree into the given image, as 
+     * {@link #render(BufferedImage, TreeMapNode)} does.
+     * @param img the image to draw into.
+     * @param tree a processed tree.
+     */
+    public void render(BufferedImage img, FlatTree tree) {
+        checkType(img);
+        draw(img, placements(tree));
+    }
+
+    private static Placements placements(TreeView view, TreeMapNode root) {
+        final Placements placements = new Placements();
+        TreeMapRenderer.visit(view, root, new Visitor() {
+            @Override
+            public void visit(TreeMapNode node, Rectangle bounds, Rectangle visible) {
+                placements.add(node.getColor(), node, null, visible);
+            }
+        });
+        return placements;
+    }
+
+    private static Placements placements(final FlatTree tree) {
+        final Placements placements = new Placements();
+        TreeMapRenderer.visit(tree, new FlatVisitor() {
+            @Override
+            public void visit(int node, Rectangle bounds, Rectangle visible) {
+                placements.add(tree.getColor(node), null, tree.getLabel(node), visible);
+            }
+        });
+        return placements;
+    }
+
+    private static boolean isSupported(BufferedImage img) {
+        return img.getType() == BufferedImage.TYPE_INT_ARGB 
+                || img.getType() == BufferedImage.TYPE_INT_RGB;
+    }
+
+    private static void checkType(BufferedImage img) {
+        if (!isSupported(img)) {
+            throw new IllegalArgumentException("unsupported image type");
+        }
+    }
+
+    /**
+     * Fill the placements into the image and draw their labels.
+     * @return false if the thread has been interrupted, in which case the
+     * image is incomplete and labels are not drawn.
+     */
+    private boolean draw(BufferedImage img, final Placements placements) {
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        final int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        if (img.getType() == BufferedImage.TYPE_INT_RGB) {
+            // alpha bits are not stored by Java2D in this case
+            for (int i = 0; i < placements.size; i++) {
+                placements.rgb[i] &= 0x00FFFFFF;
+            }
+        }
+
+        int bands = Math.min(parallelism * 2, height / MIN_BAND_HEIGHT);
+        if (placements.translucent) {
+            // colors need to be blended, let Java2D do it
+            Graphics2D g = img.createGraphics();
+            try {
+                for (int i = 0; i < placements.size; i++) {
+                    Color c = placements.colors.get(i);
+                    if (c != null) {
+                        g.setColor(c);
+                        g.fillRect(placements.x[i], placements.y[i], 
+                                placements.w[i], placements.h[i]);
+                    }
+                }
+            } finally {
+                g.dispose();
+            }
+        } else if (bands <= 1 || executor == null) {
+            fill(pixels, width, 0, height, placements, null);
+        } else {
+            BandIndex index = new BandIndex(placements, height, bands);
+            List<Future<Void>> results = new ArrayList<>(bands);
+            for (int b = 0; b < bands; b++) {
+                final int top = b * index.bandHeight;
+                final int bottom = Math.min(height, top + index.bandHeight);
+                final int[] members = index.members(b);
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        fill(pixels, width, top, bottom, placements, members);
+                        return null;
+                    }
+                }));
+            }
+            if (!waitAll(results)) {
+                return false;
+            }
+        }
+
+        if (isDrawLabels()) {
+            Graphics2D g = img.createGraphics();
+            try {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < placements.size; i++) {
+                    CharSequence label = placements.label(i, sb);
+                    if (label != null && label.length() > 0) {
+                        paintLabel(g, label, placements.rectangle(i));
+                    }
+                }
+            } finally {
+                g.dispose();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fill the rows in [top, bottom) with the given placements, in order.
+     * @param members the indexes of the placements to draw, or null to draw
+     * all of them.
+     */
+    private static void fill(int[] pixels, int width, int top, int bottom, 
+            Placements p, int[] members) {
+        int count = members == null ? p.size : members.length;
+        for (int k = 0; k < count; k++) {
+            int i = members == null ? k : members[k];
+            if (p.colors.get(i) == null) {
+                continue;
+            }
+            int rgb = p.rgb[i];
+            int x0 = Math.max(0, p.x[i]);
+            int x1 = Math.min(width, p.x[i] + p.w[i]);
+            int y0 = Math.max(top, p.y[i]);
+            int y1 = Math.min(bottom, p.y[i] + p.h[i]);
+            if (x0 >= x1) {
+                continue;
+            }
+            for (int row = y0; row < y1; row++) {
+                int offset = row * width;
+                Arrays.fill(pixels, offset + x0, offset + x1, rgb);
+            }
+        }
+    }
+
+    /**
+     * Wait for the given tasks. If the thread is interrupted, the tasks not
+     * started yet are cancelled and the running ones are still waited for,
+     * so none of them is running when this method returns; the interrupt 
+     * status is then restored.
+     * @return false if the thread has been interrupted.
+     */
+    private static boolean waitAll(List<Future<Void>> results) {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<Void> f : results) {
+            while (true) {
+                if (interrupted && f.cancel(false)) {
+                    break;
+                }
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (CancellationException e) {
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+        return !interrupted;
+    }
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "treemap-raster-" + count.getAndIncrement());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * The visible rectangles to fill, stored in parallel arrays in pre-order.
+     */
+    private static final class Placements {
+        int size = 0;
+        boolean translucent = false;
+        int[] x = new int[64];
+        int[] y = new int[64];
+        int[] w = new int[64];
+        int[] h = new int[64];
+        int[] rgb = new int[64];
+        List<Color> colors = new ArrayList<>();
+        // nodes, whose labels are built when drawn, or labels of flat trees
+        List<TreeMapNode> nodes = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+
+        void add(Color c, TreeMapNode node, String label, Rectangle r) {
+            if (size == x.length) {
+                int n = size * 2;
+                x = Arrays.copyOf(x, n);
+                y = Arrays.copyOf(y, n);
+                w = Arrays.copyOf(w, n);
+                h = Arrays.copyOf(h, n);
+                rgb = Arrays.copyOf(rgb, n);
+            }
+            x[size] = r.x;
+            y[size] = r.y;
+            w[size] = r.width;
+            h[size] = r.height;
+            rgb[size] = c == null ? 0 : c.getRGB();
+            if (c != null && c.getAlpha() != 255) {
+                translucent = true;
+            }
+            colors.add(c);
+            nodes.add(node);
+            labels.add(label);
+            size++;
+        }
+
+        /**
+         * @return the label of the given placement, built into the given 
+         * builder if it belongs to a node.
+         */
+        CharSequence label(int i, StringBuilder sb) {
+            TreeMapNode node = nodes.get(i);
+            if (node == null) {
+                return labels.get(i);
+            }
+            if (!node.hasLabel()) {
+                return null;
+            }
+            sb.setLength(0);
+            return node.appendLabel(sb);
+        }
+
+        Rectangle rectangle(int i) {
+            return new Rectangle(x[i], y[i], w[i], h[i]);
+        }
+    }
+
+    /**
+     * Spatial index which maps each horizontal band of the image to the 
+     * placements intersecting it, keeping their drawing order.
+     */
+    private static final class BandIndex {
+        final int bandHeight;
+        private final int[][] members;
+        private final int[] counts;
+
+        BandIndex(Placements p, int height, int bands) {
+            this.bandHeight = (height + bands - 1) / bands;
+            this.members = new int[bands][];
+            this.counts = new int[bands];
+            for (int b = 0; b < bands; b++) {
+                members[b] = new int[16];
+            }
+            for (int i = 0; i < p.size; i++) {
+                if (p.h[i] <= 0 || p.w[i] <= 0) {
+                    continue;
+                }
+                int first = Math.max(0, p.y[i] / bandHeight);
+                int last = Math.min(bands - 1, (p.y[i] + p.h[i] - 1) / bandHeight);
+                for (int b = first; b <= last; b++) {
+                    if (counts[b] == members[b].length) {
+                        members[b] = Arrays.copyOf(members[b], counts[b] * 2);
+                    }
+                    members[b][counts[b]++] = i;
+                }
+            }
+        }
+
+        int[] members(int band) {
+            return Arrays.copyOf(members[band], counts[band]);
+        }
+    }
+}
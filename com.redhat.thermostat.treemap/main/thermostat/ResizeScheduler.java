@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.Timer;
+
+/**
+ * This class coalesces bursts of requests (typically resize events generated
+ * while a window is being dragged) into as few executions of a task as 
+ * possible.
+ * 
+ * <p>Requests are debounced: the task runs once no new request has arrived
+ * for <i>debounce</i> millisec. To keep the view responsive during long 
+ * drags, a request which arrives when the oldest pending one is older than 
+ * <i>maxWait</i> millisec runs the task immediately. Because every request
+ * (re)arms the debounce timer, the last request of a burst is never dropped:
+ * a trailing execution always follows it.
+ * 
+ * <p>Each instance has its own state, so several components scheduling their
+ * own tasks don't interfere each other. The timer fires on the Event 
+ * Dispatch Thread, and this class is meant to be used from it.
+ */
+public class ResizeScheduler {
+
+    /**
+     * The task to run.
+     */
+    private final Runnable task;
+
+    /**
+     * Quiet period in millisec after the last request before running the task.
+     */
+    private final int debounce;
+
+    /**
+     * Max time in nanosec a request can stay pending.
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * Timer used to fire the trailing execution.
+     */
+    private final Timer timer;
+
+    /**
+     * Time in nanosec of the oldest pending request, -1 if nothing is pending.
+     */
+    private long firstPending = -1;
+
+    /**
+     * Number of times the task has been executed.
+     */
+    private long runCount = 0;
+
+    /**
+     * Number of requests absorbed by a later one without running the task.
+     */
+    private long skippedCount = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param task the task to run.
+     * @param debounce the quiet period in millisec before running the task.
+     * @param maxWait the max time in millisec a request can be delayed.
+     * 
+     * @throws NullPointerException if task is null.
+     * @throws IllegalArgumentException if debounce or maxWait are negative.
+     */
+    public ResizeScheduler(Runnable task, int debounce, int maxWait) {
+        this.task = Objects.requireNonNull(task);
+        if (debounce < 0 || maxWait < 0) {
+            throw new IllegalArgumentException("negative delay");
+        }
+        this.debounce = debounce;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        this.timer = new Timer(debounce, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runNow();
+            }
+        });
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Request an execution of the task. If another request is pending, it is
+     * coalesced with this one.
+     */
+    public void schedule() {
+        long now = System.nanoTime();
+        if (isPending()) {
+            skippedCount++;
+        } else {
+            firstPending = now;
+        }
+
+        if (now - firstPending >= maxWaitNanos) {
+            runNow();
+        } else {
+            timer.setInitialDelay(debounce);
+            timer.restart();
+        }
+    }
+
+    /**
+     * Run immediately the pending request, if any.
+     */
+    public void flush() {
+        if (isPending()) {
+            runNow();
+        }
+    }
+
+    /**
+     * Drop the pending request, if any, without running the task.
+     */
+    public void cancel() {
+        if (isPending()) {
+            timer.stop();
+            firstPending = -1;
+            skippedCount++;
+        }
+    }
+
+    /**
+     * @return true if a request is waiting to be executed, else false.
+     */
+    public boolean isPending() {
+        return firstPending >= 0;
+    }
+
+    /**
+     * @return the number of times the task has been executed.
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * @return the number of requests which didn't cause an execution of the
+     * task because they were coalesced with a later one.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    private void runNow() {
+        timer.stop();
+        firstPending = -1;
+        runCount++;
+        task.run();
+    }
+}
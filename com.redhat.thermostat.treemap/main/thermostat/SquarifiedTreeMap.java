@@ -38,7 +38,6 @@ package thermostat;
 
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
@@ -48,15 +47,27 @@ import java.util.Objects;
  *  possible to associate a rectangle to a {@link TreeMapNode} element and its 
  *  children.
  *  <p>
+ *  The algorithm works on arrays of weights and rectangles, so it can also 
+ *  be used by trees not made of {@link TreeMapNode} objects, like 
+ *  {@link FlatTree}.
+ *  <p>
  *  @see TreeMapNode
  *  @see TreMapBuilder
  */
 public class SquarifiedTreeMap {
     
+    /**
+     * Offsets of rectangles' fields in the rectangles array.
+     */
+    static final int X = 0;
+    static final int Y = 1;
+    static final int W = 2;
+    static final int H = 3;
+
     /**
      * List of node to represent as TreeMap.
      */
-    private LinkedList<TreeMapNode> elements;
+    private List<TreeMapNode> elements;
     
     /**
      * Represent the area in which draw nodes.
@@ -84,9 +95,11 @@ public class SquarifiedTreeMap {
     private List<TreeMapNode> squarifiedNodes;
 
     /**
-     * List of the current rectangles under processing.
+     * Weights of the elements, sorted in descending order, and their 
+     * rectangles, stored as x, y, width and height.
      */
-    private List<TreeMapNode> currentRow;
+    private double[] weights;
+    private double[] rects;
 
     /**
      * Coordinates on which to draw.
@@ -104,8 +117,18 @@ public class SquarifiedTreeMap {
      * @throws a NullPointerException if one of the arguments is null.
      */
     public SquarifiedTreeMap(Rectangle2D.Double bounds, List<TreeMapNode> list) {
-        this.elements = new LinkedList<>();
-        elements.addAll(Objects.requireNonNull(list));
+        this.elements = new ArrayList<>(Objects.requireNonNull(list));
+        this.container = Objects.requireNonNull(bounds);
+    }
+
+    /**
+     * Constructor for array based trees. Use 
+     * {@link #squarify(double[], int, double[], TreeMapMetrics.LayoutSample)}
+     * to calculate rectangles.
+     * 
+     * @param bounds the total area in which draw elements.
+     */
+    SquarifiedTreeMap(Rectangle2D.Double bounds) {
         this.container = Objects.requireNonNull(bounds);
     }
 
@@ -116,56 +139,118 @@ public class SquarifiedTreeMap {
      * available area.
      */
     public List<TreeMapNode> squarify() {
-        initializeArea();
-        prepareData(elements);
-        List<TreeMapNode> row = new ArrayList<>();
-        double w = getPrincipalSide();	
-        squarify(elements, row, w);
-        return getSquarifiedNodes();
+        return squarify(null);
     }
 
     /**
-     * Calculate recursively the rectangles to draw and their size.
-     * 
-     * @param nodes the list of elements to draw.
-     * @param row the list of current rectangles to process.
-     * @param w the side against which to calculate the rectangles.
+     * Calculate the rectangles for the TreeMap, recording the time spent in
+     * each phase.
+     * @param sample where to record metrics, can be null.
+     * @return the same as {@link #squarify()}.
      */
-    private void squarify(LinkedList<TreeMapNode> nodes, List<TreeMapNode> row, double w) {
-        if (nodes.isEmpty() && row.isEmpty()) {
-            // work done
-            return;
+    List<TreeMapNode> squarify(TreeMapMetrics.LayoutSample sample) {
+        long start = sample == null ? 0 : System.nanoTime();
+        TreeMapNode.sort(elements);
+        if (sample != null) {
+            sample.sortTime += System.nanoTime() - start;
         }
-        if (nodes.isEmpty()) {
-            // no more element to process, just draw current row
-            finalizeRow(row);
-            return;
+
+        int count = elements.size();
+        double[] w = new double[count];
+        double[] r = new double[4 * count];
+        for (int i = 0; i < count; i++) {
+            w[i] = elements.get(i).getWeight();
         }
-        if (row.isEmpty()) {
-            // add the first element to the row and iterate the process over it
-            row.add(nodes.getFirst());
-            nodes.removeFirst();
-            squarify(nodes, row, w);
-            return;
+        squarify(w, count, r, sample);
+
+        for (int i = 0; i < count; i++) {
+            TreeMapNode node = elements.get(i);
+            node.setWeight((int) w[i]);
+            node.setRectangle(new Rectangle2D.Double(r[4 * i + X], r[4 * i + Y], 
+                    r[4 * i + W], r[4 * i + H]));
         }
-        
-        /*  Greedy step: calculate the best aspect ratio of actual row and the
-         *  best aspect ratio given by adding another rectangle to the row.
-         *  If the current row can not be improved then finalize it
-         *  else add the next element, to improve the global aspect ratio
-         */
-        List<TreeMapNode> expandedRow = new ArrayList<TreeMapNode>(row);
-        expandedRow.add(nodes.getFirst());
-        double actualAspectRatio = bestAspectRatio(row, w);
-        double expandedAspectRatio = bestAspectRatio(expandedRow, w);
-
-        if (!willImprove(actualAspectRatio, expandedAspectRatio)) {
-            finalizeRow(row);
-            squarify(nodes, new ArrayList<TreeMapNode>(), getPrincipalSide());
-        } else {
-            nodes.removeFirst();
-            squarify(nodes, expandedRow, w);
+        squarifiedNodes = elements;
+        return getSquarifiedNodes();
+    }
+
+    /**
+     * Calculate the rectangles for the given weights. Weights are transformed
+     * proportionally to the available area.
+     * 
+     * @param weights the weights to draw, sorted in descending order. They 
+     * are replaced by the normalized weights.
+     * @param count the number of weights.
+     * @param rects the array in which store the rectangles, as x, y, width 
+     * and height. Its length must be at least 4 * count.
+     * @param sample where to record metrics, can be null.
+     */
+    void squarify(double[] weights, int count, double[] rects, 
+            TreeMapMetrics.LayoutSample sample) {
+        this.weights = weights;
+        this.rects = rects;
+        initializeArea();
+        prepareData(count, sample);
+        long start = sample == null ? 0 : System.nanoTime();
+        int steps = squarifyRows(count);
+        if (sample != null) {
+            sample.squarifyTime += System.nanoTime() - start;
+            sample.squarifySteps += steps;
         }
+        this.weights = null;
+        this.rects = null;
+    }
+
+    /**
+     * Calculate the rectangles to draw and their size. Elements are added to
+     * the current row until adding the next one would worsen the row's aspect
+     * ratio; then the row is finalized and a new one is started.
+     * <p>
+     * The row is a range of the sorted elements, whose sum, min and max 
+     * weights are kept up to date, so each step takes constant time.
+     * 
+     * @return the number of greedy steps, at most twice the elements.
+     */
+    private int squarifyRows(int count) {
+        int steps = 0;
+        int rowStart = 0;
+        double w = getPrincipalSide();
+        double sum = 0;
+        double min = 0;
+        double max = 0;
+        int i = 0;
+        while (i < count) {
+            double weight = weights[i];
+            if (i == rowStart) {
+                // add the first element to the row
+                sum = min = max = weight;
+                i++;
+                continue;
+            }
+
+            /*  Greedy step: calculate the best aspect ratio of actual row and the
+             *  best aspect ratio given by adding another rectangle to the row.
+             *  If the current row can not be improved then finalize it
+             *  else add the next element, to improve the global aspect ratio
+             */
+            steps++;
+            double actualAspectRatio = aspectRatio(sum, min, max, w);
+            double expandedAspectRatio = aspectRatio(sum + weight, 
+                    Math.min(min, weight), Math.max(max, weight), w);
+
+            if (!willImprove(actualAspectRatio, expandedAspectRatio)) {
+                finalizeRow(rowStart, i);
+                rowStart = i;
+                w = getPrincipalSide();
+            } else {
+                sum += weight;
+                min = Math.min(min, weight);
+                max = Math.max(max, weight);
+                i++;
+            }
+        }
+        // no more element to process, just draw current row
+        finalizeRow(rowStart, count);
+        return steps;
     }
 
     /**
@@ -184,8 +269,6 @@ public class SquarifiedTreeMap {
                 container.getWidth(), container.getHeight());
         lastX = 0;
         lastY = 0;
-        squarifiedNodes = new ArrayList<>();
-        currentRow = new ArrayList<>();
         updateDirection();
     }
     
@@ -207,43 +290,37 @@ public class SquarifiedTreeMap {
     }
     
     /**
-     * Keep the current list of nodes which produced the best aspect ratio
-     * in the available area, draw their respective rectangles and reinitialize 
-     * the current row to draw.
+     * Keep the current row of elements which produced the best aspect ratio
+     * in the available area, draw their respective rectangles and reduce the
+     * available area.
      * <p>
-     * @param nodes the list of numbers which represent the rectangles' area.
-     * @return the number of Rectangles created.
+     * @param from the index of the row's first element.
+     * @param to the index after the row's last element.
      */
-    private void finalizeRow(List<TreeMapNode> nodes) {
-        if (nodes == null || nodes.isEmpty()) {
+    private void finalizeRow(int from, int to) {
+        if (from >= to) {
             return;
         }
         // get the total weight of nodes in order to calculate their percentages
-        double sum = getSum(nodes);
+        double sum = getSum(from, to);
         // greedy optimization step: get the best aspect ratio for nodes drawn 
         // on the longer and on the smaller side, to evaluate the best.
-        double actualAR = bestAspectRatio(nodes, getPrincipalSide());
-        double alternativeAR = bestAspectRatio(nodes, getSecondarySide());
+        double actualAR = bestAspectRatio(from, to, getPrincipalSide());
+        double alternativeAR = bestAspectRatio(from, to, getSecondarySide());
       
         if (willImprove(actualAR, alternativeAR)) {
             invertDirection();
         }
 
-        for (TreeMapNode node: nodes) {
+        for (int i = from; i < to; i++) {
             // assign a rectangle calculated as percentage of the total weight
-            Rectangle2D.Double r = createRectangle(sum, node.getWeight());
-            node.setRectangle(r);
+            createRectangle(sum, weights[i], i);
             
             // recalculate coordinates to draw next rectangle
-            updateXY(r);
-
-            // add the node to the current list of rectangles in processing
-            currentRow.add(node);
+            updateXY(i);
         }
-        // recalculate the area in which new rectangles will be drawn and 
-        // reinitialize the current list of node to represent.
-        reduceAvailableArea();
-        newRow();
+        // recalculate the area in which new rectangles will be drawn 
+        reduceAvailableArea(from);
     }
     
 
@@ -267,28 +344,30 @@ public class SquarifiedTreeMap {
      * <p>
      * @param sum the total size of all rectangles in the actual row.
      * @param area this Rectangle's area.
-     * @return the Rectangle which correctly fill the available area.
+     * @param i the index in which store the rectangle which correctly fill 
+     * the available area.
      */
-    private Rectangle2D.Double createRectangle(Double sum, Double area) {
+    private void createRectangle(double sum, double area, int i) {
         double side = getPrincipalSide();
         double w = 0;
         double h = 0;
         
         //don't want division by 0
-        if (validate(area) == 0 || validate(sum) == 0 || validate(side) == 0) {
-            return new Rectangle2D.Double(lastX, lastY, 0, 0);
+        if (validate(area) != 0 && validate(sum) != 0 && validate(side) != 0) {
+            // calculate the rectangle's principal side relatively to the container 
+            // rectangle's principal side.
+            if (drawingDir == DIRECTION.TOP_BOTTOM) {
+                h = (area / sum) * side;
+                w = area / h;
+            } else {
+                w = (area / sum) * side;
+                h = area / w;
+            }
         }
-        
-        // calculate the rectangle's principal side relatively to the container 
-        // rectangle's principal side.
-        if (drawingDir == DIRECTION.TOP_BOTTOM) {
-            h = (area / sum) * side;
-            w = area / h;
-        } else {
-            w = (area / sum) * side;
-            h = area / w;
-        }        
-        return new Rectangle2D.Double(lastX, lastY, w, h);
+        rects[4 * i + X] = lastX;
+        rects[4 * i + Y] = lastY;
+        rects[4 * i + W] = w;
+        rects[4 * i + H] = h;
     }
     
     /**
@@ -323,29 +402,30 @@ public class SquarifiedTreeMap {
     }
 
     /**
-     * Sum the elements in the list.
-     * @param nodes the list which contains elements to sum.
-     * @return the sum of the elements.
+     * Sum the weights in the given range.
+     * @param from the index of the first weight.
+     * @param to the index after the last weight.
+     * @return the sum of the weights.
      */
-    private double getSum(List<TreeMapNode> nodes) {
-        int sum = 0;
-        for (TreeMapNode n : nodes) {
-            sum += n.getWeight();
+    private double getSum(int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += weights[i];
         }
         return sum;
     }
 
     /**
      * Recalculate the origin to draw next rectangles.
-     * @param r the rectangle from which recalculate the origin.
+     * @param i the index of the rectangle from which recalculate the origin.
      */
-    private void updateXY(Rectangle2D.Double r) {
+    private void updateXY(int i) {
         if (drawingDir == DIRECTION.LEFT_RIGHT) {
             //lastY doesn't change
-            lastX += r.width; 
+            lastX += rects[4 * i + W]; 
         } else {
             //lastX doesn't change
-            lastY += r.height;
+            lastY += rects[4 * i + H];
         }
     }
 
@@ -361,83 +441,92 @@ public class SquarifiedTreeMap {
     /**
      * Reduce the size of the available rectangle. Use it after the current 
      * row's closure.
+     * @param first the index of the row's first rectangle.
      */
-    private void reduceAvailableArea() {
+    private void reduceAvailableArea(int first) {
+        int r = 4 * first;
         if (drawingDir == DIRECTION.LEFT_RIGHT) {
             // all rectangles inside the row have the same height
-            availableArea.height -= currentRow.get(0).getRectangle().height;
-            availableArea.y = lastY + currentRow.get(0).getRectangle().height;
-            availableArea.x = currentRow.get(0).getRectangle().x;
+            availableArea.height -= rects[r + H];
+            availableArea.y = lastY + rects[r + H];
+            availableArea.x = rects[r + X];
         } else {
             // all rectangles inside the row have the same width
-            availableArea.width -= currentRow.get(0).getRectangle().width;
-            availableArea.x = lastX + currentRow.get(0).getRectangle().width;
-            availableArea.y = currentRow.get(0).getRectangle().y;
+            availableArea.width -= rects[r + W];
+            availableArea.x = lastX + rects[r + W];
+            availableArea.y = rects[r + Y];
         }
         updateDirection();
         initializeXY(availableArea);
     }
-    
-    /**
-     * Close the current row and initialize a new one.
-     */
-    private void newRow() {
-        squarifiedNodes.addAll(currentRow);
-        currentRow = new ArrayList<>();
-    }
 
     /**
-     * Calculate the aspect ratio for all the rectangles in the list and
-     * return the max of them.
-     * @param row the list of rectangles.
+     * Calculate the aspect ratio for all the rectangles in the given range 
+     * and return the max of them.
+     * @param from the index of the first rectangle.
+     * @param to the index after the last rectangle.
      * @param side the side against which to calculate the the aspect ratio.
      * @return the max aspect ratio calculated for the row.
      */
-    private double bestAspectRatio(List<TreeMapNode> row, double side) {
-        if (row == null || row.isEmpty()) {
+    private double bestAspectRatio(int from, int to, double side) {
+        if (from >= to) {
             return Double.MAX_VALUE;
         }
-        double sum = getSum(row);
-        double max = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            sum += weights[i];
+            min = Math.min(min, weights[i]);
+            max = Math.max(max, weights[i]);
+        }
+        return aspectRatio(sum, min, max, side);
+    }
+    /**
+     * Calculate the max aspect ratio of a row of rectangles, given the sum 
+     * and the extremes of their weights.
+     * @param sum the sum of the weights.
+     * @param min the min weight.
+     * @param max the max weight.
+     * @param side the side against which to calculate the the aspect ratio.
+     * @return the max aspect ratio calculated for the row.
+     */
+    private double aspectRatio(double sum, double min, double max, double side) {
         // calculate the aspect ratio against the main side, and also its inverse.
         // this is because aspect ratio of rectangle 6x4 can be calculated as 
         // 6/4 but also 4/6. Here the aspect ratio has been calculated as 
-        // indicated in the Squarified algorithm.
-        for (TreeMapNode node : row) {
-            double m1 = (Math.pow(side, 2) * node.getWeight()) / Math.pow(sum, 2);
-            double m2 = Math.pow(sum, 2) / (Math.pow(side, 2) * node.getWeight());
-            double m = Math.max(m1, m2);
-
-            if (m > max) {
-                max = m;
-            }
-        }
-        return max;
+        // indicated in the Squarified algorithm. The first grows with the 
+        // weight and the second decreases, so the max is reached by the 
+        // biggest or by the smallest rectangle.
+        double m1 = (Math.pow(side, 2) * max) / Math.pow(sum, 2);
+        double m2 = Math.pow(sum, 2) / (Math.pow(side, 2) * min);
+        double m = Math.max(m1, m2);
+        // undefined for empty areas
+        return m > 0 ? m : 0;
     }
 
     
     /**
-     * Prepare the elements in the list, sorting them and transforming them
-     * proportionally the given dimension.
-     * @param dim the dimension in which rectangles will be drawn.
-     * @param elements the list of elements to draw.
-     * @return the list sorted and proportioned to the dimension.
+     * Transform the weights proportionally to the available area.
+     * @param count the number of weights.
+     * @param sample where to record metrics, can be null.
      */
-    private void  prepareData(List<TreeMapNode> elements) {
-        if (elements == null || elements.isEmpty()) {
+    private void prepareData(int count, TreeMapMetrics.LayoutSample sample) {
+        if (count == 0) {
             return;
         }
-        TreeMapNode.sort(elements);
+        long start = sample == null ? 0 : System.nanoTime();
         double totArea = availableArea.width * availableArea.height;
-        double sum = getSum(elements);
+        double sum = getSum(0, count);
         
         // recalculate weights in percentage of their sum
-        for (TreeMapNode node : elements) {
-            int w = (int) Math.round((node.getWeight()/sum) * totArea);
-            node.setWeight(w);
+        for (int i = 0; i < count; i++) {
+            weights[i] = (int) Math.round((weights[i] / sum) * totArea);
+        }
+        if (sample != null) {
+            sample.normalizeTime += System.nanoTime() - start;
         }
     }
-
     /**
      * This method check which from the values in input, that represent 
      * rectangles' aspect ratio, produces more approximatively a square.
@@ -2,7 +2,6 @@ package thermostat;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
-import java.util.Random;
 
 import javax.swing.JFrame;
 
@@ -18,8 +17,7 @@ public class ThermostatDemo {
 
 
         
-        TreeMapNode root = new TreeMapNode(0);
-        generateTree(root, 9, 3, false);
+        TreeMapNode root = new WorkloadGenerator(0).tree(9, 3, false);
 
         TreeMapComponent treemap = new TreeMapComponent(root, new Dimension(100, 100));
         f.getContentPane().add(treemap, BorderLayout.CENTER);
@@ -31,27 +29,4 @@ public class ThermostatDemo {
 
 
     }
-
-    
-    static int generatorCounter;
-    static int id = 0;
-    public static void generateTree(TreeMapNode root, int levels, int childrenNumber, boolean random) {        
-        TreeMapNode node;
-        if (levels == 0) {
-        } else {
-            Random rand = new Random();
-            int children = random ? rand.nextInt(childrenNumber) + 1 : childrenNumber;
-            for (int i = 0; i < children; i++) {
-                int val = rand.nextInt(50);
-                id++;
-                node = new TreeMapNode("Node #" + id, val);
-                root.addChild(node);
-                generatorCounter++;
-            }
-            for (TreeMapNode child : root.getChildren()) {
-                generateTree(child, levels-1, childrenNumber, random);
-            }
-        }
-    }
-
 }
@@ -43,7 +43,6 @@ import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.font.FontRenderContext;
-import java.util.LinkedList;
 import java.util.Objects;
 import java.util.Stack;
 
@@ -97,10 +96,9 @@ public class TreeMapBreadcrumb extends JComponent implements TreeMapObserver {
      * @param node the tree's branch to represent ad breadcrumb bar.
      */
     public void buildBreadcrumb(TreeMapNode node) {
-        LinkedList<TreeMapNode> nodes = node.getAncestors();
-
-        while (!nodes.isEmpty()) {
-            BreadcrumbItem item = new BreadcrumbItem(nodes.removeLast());
+        // from the root to the node
+        for (int level = 0; level <= node.getDepth(); level++) {
+            BreadcrumbItem item = new BreadcrumbItem(node.getAncestor(level));
             items.push(item);
             add(item);
         }
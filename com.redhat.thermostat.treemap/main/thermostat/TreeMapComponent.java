@@ -38,11 +38,11 @@ package thermostat;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.ComponentAdapter;
@@ -50,23 +50,18 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
 
-import javax.swing.BorderFactory;
 import javax.swing.JComponent;
-import javax.swing.JLabel;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
-import javax.swing.border.Border;
-import javax.swing.border.EmptyBorder;
-import javax.swing.border.EtchedBorder;
-import javax.swing.border.LineBorder;
 
 import com.redhat.thermostat.treemap.model.ObjectHistogram;
 
@@ -85,15 +80,62 @@ public class TreeMapComponent extends JComponent {
     Comp mainComp;
 
     /**
-     * Label Object to clone for faster initialization.
+     * Cache of the labels' measures.
      */
-    private Label cachedLabel;
+    private final LabelCache labelCache = new LabelCache();
+
+    /**
+     * Where to record components creation, culling and paint times.
+     */
+    private final TreeMapMetrics metrics = TreeMapMetrics.getInstance();
+
+    /**
+     * The object which draws the TreeMap into the offscreen image.
+     */
+    private TreeMapRenderer renderer;
+
+    /**
+     * Offscreen image holding the drawn TreeMap. It is recreated only when 
+     * the layout or the border style change: selections and mouse hovering
+     * are drawn over it. While the component is being resized, the image of
+     * the previous size is stretched until the new layout is computed.
+     */
+    private BufferedImage offscreen;
+
+    /**
+     * Number of times the TreeMap has been drawn into the offscreen image.
+     */
+    int offscreenRenderCount = 0;
+
+    /**
+     * Number of nodes shown and depth of the deepest one, reported by paint
+     * events.
+     */
+    private int shownNodes;
+    private int shownDepth;
+
+    /**
+     * Colors of the selection and hover overlays.
+     */
+    private static final Color SELECTION_COLOR = new Color(0, 0, 0, 77);
+    private static final Color HOVER_COLOR = new Color(0, 0, 128);
 
     /**
      * The tree to render as TreeMap.
      */
     TreeMapNode tree;
 
+    /**
+     * Nodes highlighted over the TreeMap image, like the matches of a 
+     * {@link ClassNameIndex} search.
+     */
+    private Collection<TreeMapNode> highlighted = Collections.emptyList();
+
+    /**
+     * The view of the tree to show, null to show all nodes.
+     */
+    private TreeView view;
+
     /**
      * Horizontal and vertical padding for nested component.
      */
@@ -104,7 +146,7 @@ public class TreeMapComponent extends JComponent {
      * Min size for rectangles' sides. rectangles having one or both sides less
      * than MIN_SIDE pixels will be not drawn.
      */
-    private final int MIN_SIDE = 1;
+    private final int MIN_SIDE = TreeMapRenderer.MIN_SIDE;
 
     /**
      * Default value for a TreeMap component.
@@ -124,11 +166,6 @@ public class TreeMapComponent extends JComponent {
      */
     private int borderStyle = ETCHED_LOWERED;
 
-    /**
-     * The components' border
-     */
-    private Border defaultBorder;
-
     /**
      * Font and size for this component's label.
      */
@@ -142,16 +179,34 @@ public class TreeMapComponent extends JComponent {
     private Dimension lastDim;
 
     /**
-     * Variable in which store last resize event call time.
+     * Quiet time in millisec after the last resize event before the TreeMap
+     * is redrawn.
+     */
+    private static final int MIN_DRAGGING_TIME = 60;
+
+    /**
+     * Max time in millisec a resize can be delayed while the component is 
+     * being dragged.
      */
-    private static long lastCall = 0;
+    private static final int MAX_DRAGGING_TIME = 250;
 
     /**
-     * Wait time in millisec to resize the TreeMap.
+     * Coalesces resize events into TreeMap redraws.
      */
-    private final int MIN_DRAGGING_TIME = 60;
+    private ResizeScheduler resizeScheduler;
 
 
+    /**
+     * The slot of the attribute the TreeMap is drawn by, or 
+     * {@link AttributeSchema#NONE} to use nodes' weights.
+     */
+    private int metric = AttributeSchema.NONE;
+
+    /**
+     * Latest layout of each metric, to switch between metrics instantly.
+     */
+    private final LayoutCache layouts = new LayoutCache();
+
     /**
      * Stack containing the zoom calls on the TreeMap.
      */
@@ -161,7 +216,31 @@ public class TreeMapComponent extends JComponent {
      * This object stores the last clicked rectangle in the TreeMap, in order to 
      * repaint it when another rectangle will be selected.
      */
-    private static Comp lastClicked;
+    private Comp lastClicked;
+
+    /**
+     * The rectangle under the mouse pointer.
+     */
+    private Comp hovered;
+
+    /**
+     * Listener shared by all rectangles to track mouse hovering.
+     */
+    private final MouseAdapter hoverListener = new MouseAdapter() {
+        @Override
+        public void mouseMoved(MouseEvent e) {
+            setHovered((Comp) e.getComponent());
+        }
+
+        @Override
+        public void mouseExited(MouseEvent e) {
+            Point p = SwingUtilities.convertPoint(e.getComponent(), e.getPoint(), 
+                    TreeMapComponent.this);
+            if (!contains(p)) {
+                setHovered(null);
+            }
+        }
+    };
     
     /**
      * List of objects observing this.
@@ -198,12 +277,14 @@ public class TreeMapComponent extends JComponent {
         if (FONT == null) {
             FONT = new Font(Font.SERIF, Font.PLAIN, FONT_SIZE);
         }
+        renderer = new RasterTreeMapRenderer(FONT, labelCache);
+        renderer.setBorderStyle(borderStyle);
 
         // assign a rectangle to the tree's root in order to process the tree.
         Rectangle2D.Double area = new Rectangle2D.Double(0, 0, d.width, d.height);
 
         // calculate rectangles of tree's subtrees
-        TreeProcessor.processTreeMap(tree, area);
+        layouts.process(tree, area, metric);
 
         drawTreeMap(tree); 
 
@@ -211,6 +292,23 @@ public class TreeMapComponent extends JComponent {
         repaint();
     }
 
+    /**
+     * Show another tree, as if this component had been created for it. The 
+     * zoom, the view, the highlighted nodes and the layouts kept for the 
+     * old tree are dropped, so this component doesn't hold it anymore.
+     * @param newTree the tree to represent as TreeMap.
+     * @throws NullPointerException if the tree is null.
+     */
+    public void setModel(TreeMapNode newTree) {
+        Objects.requireNonNull(newTree);
+        layouts.clear();
+        view = null;
+        highlighted = Collections.emptyList();
+        zoomStack.clear();
+        zoomStack.push(newTree);
+        redrawTreeMap(newTree);
+    }
+
     /**
      * This method returns the root of the tree showed ad TreeMap.
      * @return the TreeMap's root node.
@@ -226,12 +324,12 @@ public class TreeMapComponent extends JComponent {
     private void drawTreeMap(TreeMapNode tree) {
         // draw root
         drawMainComp(tree);
-        setBorderStyle(borderStyle);
+        invalidateOffscreen();
+        shownNodes = 1;
+        shownDepth = 0;
         
         // draw subtrees nested in children 
-        for (TreeMapNode child : tree.getChildren()) {
-            drawSubTree(child, mainComp);
-        }
+        drawSubTrees(tree);
         // setup this component
         prepareGUI();
     }
@@ -258,8 +356,6 @@ public class TreeMapComponent extends JComponent {
         mainComp.setLayout(null);
         mainComp.setBounds(tree.getRectangle().getBounds());        
         mainComp.setNode(tree);
-        cachedLabel = new Label(TITLE + tree.getLabel());        
-        addLabelIfPossible(TITLE + tree.getLabel(), mainComp);
     }
 
     /**
@@ -284,51 +380,39 @@ public class TreeMapComponent extends JComponent {
     }
 
     /**
-     * This method checks if the given container has enough space to instantiate
-     * a Label in it. If yes, a Label is cloned from an existing one, in order 
-     * to improve performance. If not, it exits.
-     * 
-     * @param s the label text.
-     * @param cont the parent container which will contain the new label.
-     * @return the cloned label.
+     * Draw the subtrees of the given root inside the main component, without
+     * recursion.
+     * @param root the shown root.
      */
-    private Label addLabelIfPossible(String s, Container cont) {
-        if (s == null || s.equals("")) {
-            return null;
-        }
-        int componentW = cont.getSize().width;
-        int componentH = cont.getSize().height;
-        // get the rectangle associated to the area needed for the label's text
-        Rectangle fontArea = FONT.getStringBounds(s, 
-                new FontRenderContext(FONT.getTransform(),
-                        false, false)).getBounds();
-
-        // if the container is greater than the label, add it to the container
-        if (componentW > fontArea.width && componentH > fontArea.height) {
-            Label label = (Label) cachedLabel.clone();
-            label.setBounds(5, 1, cont.getWidth(), fontArea.height);
-            label.setText(s);
-            cont.add(label);
-            return label;
-        }
-        return null;
-    }
+    private void drawSubTrees(TreeMapNode root) {
+        // components of the nodes from the root to the current one
+        final List<JComponent> parents = new ArrayList<>();
+        TreeTraversal.walk(root, new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                if (depth == 0) {
+                    parents.add(mainComp);
+                    return Result.CONTINUE;
+                }
+                Comp comp = addCompIfPossible(node, parents.get(parents.size() - 1));
 
-    /**
-     * Draw the whole {@param tree}'s subtree inside the given component.
-     * @param tree the tree to draw
-     * @param parent the component in which build the tree.
-     */
-    private void drawSubTree(TreeMapNode tree, JComponent parent) {
-        Comp comp = addCompIfPossible(tree, parent);
+                // if space was enough to draw a component, try to draw its children
+                if (comp == null) {
+                    return Result.SKIP_CHILDREN;
+                }
+                comp.setNode(node);
+                shownNodes++;
+                shownDepth = Math.max(shownDepth, depth);
+                parents.add(comp);
+                return Result.CONTINUE;
+            }
 
-        // if space was enough to draw a component, try to draw its children
-        if (comp != null) {
-            comp.setNode(tree);
-            for (TreeMapNode child : tree.getChildren()) {
-                drawSubTree(child, comp);
+            @Override
+            public Result leave(TreeMapNode node, int depth) {
+                parents.remove(parents.size() - 1);
+                return Result.CONTINUE;
             }
-        }
+        }, view);
     }
 
     /**
@@ -337,16 +421,21 @@ public class TreeMapComponent extends JComponent {
      * @param c the container in to assign the listener.
      */
     private void addResizeListener(final Container container) {
+        resizeScheduler = new ResizeScheduler(new Runnable() {
+            @Override
+            public void run() {
+                Dimension newDim = container.getSize();
+
+                if (isChangedSize(newDim)) {
+                    redrawTreeMap(tree); 
+                }
+            }
+        }, MIN_DRAGGING_TIME, MAX_DRAGGING_TIME);
+
         ComponentAdapter adapter = new ComponentAdapter() {
             public void componentResized(ComponentEvent e) {
-                // if enough time is passed from the last call, redraw the TreeMap
-                if (canResize(MIN_DRAGGING_TIME)) {
-                    Dimension newDim = container.getSize();
-
-                    if (isChangedSize(newDim)) {
-                        redrawTreeMap(tree); 
-                    }
-                } 
+                // redraw the TreeMap once the container stops being resized
+                resizeScheduler.schedule();
             }            
         };
         container.addComponentListener(adapter);
@@ -354,7 +443,7 @@ public class TreeMapComponent extends JComponent {
 
     /**
      * This method checks if the given container has enough space to instantiate
-     * a TreeMapComp object in it. If yes, a Label is cloned from an existing 
+     * a TreeMapComp object in it. If yes, a component is cloned from an existing 
      * one, in order to improve performance. If not, it exits.
      * 
      * @param node the node to draw and add to the given container.
@@ -369,9 +458,9 @@ public class TreeMapComponent extends JComponent {
 
             Comp toReturn = renderizeNode(node);
             if (toReturn == null) {
+                metrics.nodeCulled();
                 return null;
             }
-            addLabelIfPossible(TITLE + node.getLabel(), toReturn);
 
             // leaves some space from the parent's origin location
             Point loc = toReturn.getLocation();
@@ -382,6 +471,7 @@ public class TreeMapComponent extends JComponent {
             cont.add(toReturn);
             return toReturn;
         }
+        metrics.nodeCulled();
         return null;
     }
 
@@ -398,24 +488,80 @@ public class TreeMapComponent extends JComponent {
         newArea.height = getSize().height;
 
         // recalculate the tree
-        TreeProcessor.processTreeMap(tree, newArea);
+        if (view != null) {
+            TreeProcessor.processTreeMap(view, tree, newArea);
+        } else {
+            layouts.process(tree, newArea, metric);
+        }
 
         removeAll();
+        lastClicked = null;
+        hovered = null;
         drawTreeMap(tree);        
     }
 
+    /**
+     * Draw the TreeMap by the given attribute of the nodes, like the number
+     * of instances instead of the size. The latest layout of each metric is
+     * kept, so switching back to a metric doesn't lay out the tree again.
+     * @param newMetric the slot of the attribute in the tree's 
+     * {@link AttributeSchema}, or {@link AttributeSchema#NONE} to draw 
+     * nodes by their real weight.
+     */
+    public void setMetric(int newMetric) {
+        if (newMetric != metric) {
+            metric = newMetric;
+            redrawTreeMap(tree);
+        }
+    }
+
+    /**
+     * @return the slot of the attribute the TreeMap is drawn by, or 
+     * {@link AttributeSchema#NONE}.
+     */
+    public int getMetric() {
+        return metric;
+    }
+
+    /**
+     * Show only the nodes of the given view, which must be a view of this
+     * TreeMap's tree. The tree isn't copied: nodes are laid out by their 
+     * weight in the view. If the zoomed node isn't shown by the view, the 
+     * zoom is reset.
+     * @param newView the view to show, or null to show all nodes. A view 
+     * has its own weights, so the metric is not used while it is shown.
+     */
+    public void setView(TreeView newView) {
+        if (newView == view) {
+            return;
+        }
+        view = newView;
+        if (view != null && !view.contains(tree) && zoomStack.size() > 1) {
+            zoomFull();
+        } else {
+            redrawTreeMap(tree);
+        }
+    }
+
+    /**
+     * @return the shown view, or null if all nodes are shown.
+     */
+    public TreeView getView() {
+        return view;
+    }
+
     public void zoomIn(TreeMapNode node) {
         if (node != null && node != this.tree) {
-            fillZoomStack(node.getAncestors());
+            fillZoomStack(node);
             redrawTreeMap(node);
             notifyZoomInToObservers(zoomStack.peek());
         } 
     }
 
-    private void fillZoomStack(LinkedList<TreeMapNode> ancestors) {
+    private void fillZoomStack(TreeMapNode node) {
         zoomStack.clear();
-        while (!ancestors.isEmpty()) {
-            zoomStack.push(ancestors.removeLast());
+        for (int level = 0; level <= node.getDepth(); level++) {
+            zoomStack.push(node.getAncestor(level));
         }
     }
 
@@ -515,19 +661,12 @@ public class TreeMapComponent extends JComponent {
     }
 
     /**
-     * check if last resize operation was called too closer to this
-     * one. If so, ignore it: the container is being dragged. 
-     * 
-     * @return true if this method is invoked at distance of 
-     * MIN_DRAGGING_TIME millisec, else false. 
+     * Returns the object which schedules this component's redraws on resize,
+     * which also keeps track of how many redraws have been run or skipped.
+     * @return the resize scheduler of this component.
      */
-    private boolean canResize(int millisec) {
-        long time = System.currentTimeMillis();
-        if (time - lastCall >= millisec) {
-            lastCall = time;
-            return true;
-        }
-        return false;
+    public ResizeScheduler getResizeScheduler() {
+        return resizeScheduler;
     }
 
 
@@ -556,75 +695,143 @@ public class TreeMapComponent extends JComponent {
      */
     public void setBorderStyle(int UIMode) {
         this.borderStyle = UIMode;
-        switch (borderStyle) {
-            case 1 : {
-                defaultBorder = new EmptyBorder(0, 0, 0, 0);
-                break;
-            }    
-            case 2 : {                
-                defaultBorder = BorderFactory.createEtchedBorder(EtchedBorder.LOWERED, Color.white, Color.darkGray);
-                break;
-            }
-            case 3 : {
-                defaultBorder = BorderFactory.createEtchedBorder(EtchedBorder.RAISED, Color.white, Color.darkGray);
-                break;
-            }
-            default : {
-                defaultBorder = new LineBorder(Color.black, 1);
-                break;
-            }
-        }
-        applyBorderToSubtree(mainComp);
+        renderer.setBorderStyle(borderStyle);
+        invalidateOffscreen();
     }
-    
+
     /**
-     * Traverse recursively the tree from the given component applying to it 
-     * the default border.
-     * @param comp the subtree's root from which apply the border style.
+     * Discard the offscreen image, so the TreeMap will be drawn again at next
+     * repaint.
      */
-    private void applyBorderToSubtree(Comp comp) {
-        comp.setBorder(defaultBorder);
-        Component[] children = comp.getComponents();
-        for (int i = 0; i < children.length; i++) {
-            if (children[i] instanceof Comp) {
-                applyBorderToSubtree((Comp) children[i]);
+    private void invalidateOffscreen() {
+        offscreen = null;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        Object event = TreeMapEvents.beginPaint();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        boolean rendered = false;
+        if (offscreen == null) {
+            offscreen = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            renderer.paint(offscreen, view, tree);
+            offscreenRenderCount++;
+            rendered = true;
+            if (Thread.currentThread().isInterrupted()) {
+                // the image may be incomplete, render it again next time
+                offscreen = null;
             }
         }
+        if (offscreen == null) {
+            // nothing to copy
+        } else if (offscreen.getWidth() == w && offscreen.getHeight() == h) {
+            g.drawImage(offscreen, 0, 0, null);
+        } else {
+            // the size has changed but the relayout is still pending
+            g.drawImage(offscreen, 0, 0, w, h, null);
+        }
+        paintOverlays((Graphics2D) g);
+        if (start != 0) {
+            metrics.painted(System.nanoTime() - start);
+        }
+        TreeMapEvents.commitPaint(event, shownNodes, shownDepth, w, h, rendered);
     }
 
     /**
-     * Return the last clicked component inside the TreeMap.
-     * @return the last clicked {@Comp} object.
+     * Draw the highlighted nodes, the selection and the hover highlights 
+     * over the TreeMap image.
      */
-    public Comp getClickedComponent() {
-        return lastClicked;
+    private void paintOverlays(Graphics2D g) {
+        if (!highlighted.isEmpty()) {
+            renderer.paintHighlights(g, view, tree, highlighted);
+        }
+        Rectangle selected = getOverlayBounds(lastClicked);
+        if (selected != null) {
+            g.setColor(SELECTION_COLOR);
+            g.fillRect(selected.x, selected.y, selected.width, selected.height);
+        }
+        Rectangle hover = getOverlayBounds(hovered);
+        if (hover != null) {
+            g.setColor(HOVER_COLOR);
+            g.drawRect(hover.x, hover.y, hover.width - 1, hover.height - 1);
+        }
     }
 
     /**
-     * This class provides an extension of {@link JLabel} which main 
-     * characteristic is to implement the {@link Cloneable} interface in order
-     * to make his creation faster then JLabel class.
+     * Return the bounds of the given component in this object's coordinates.
+     * @return the bounds, or null if comp is null or is not shown.
      */
-    class Label extends JLabel implements Cloneable {
-        private static final long serialVersionUID = 1L;
+    private Rectangle getOverlayBounds(Comp comp) {
+        if (comp == null || comp.getParent() == null) {
+            return null;
+        }
+        return SwingUtilities.convertRectangle(comp.getParent(), comp.getBounds(), this);
+    }
 
-        public Label(String s) {
-            super(s);
-            setFont(FONT);
-            setBounds(0, 0, getPreferredSize().width, FONT_SIZE);
+    /**
+     * Repaint only the area covered by the given component.
+     */
+    private void repaintOverlay(Comp comp) {
+        Rectangle r = getOverlayBounds(comp);
+        if (r != null) {
+            repaint(r);
         }
+    }
 
-        @Override
-        protected JLabel clone() {
-            Label clone = new Label("");
-            clone.setFont(getFont());
-            clone.setText(getText());
-            clone.setBackground(getBackground());
-            clone.setBounds(getBounds());
-            clone.setBorder(getBorder());
-            return clone;
+    /**
+     * Change the rectangle under the mouse pointer.
+     * @param comp the hovered component, it can be null.
+     */
+    private void setHovered(Comp comp) {
+        if (comp != hovered) {
+            repaintOverlay(hovered);
+            hovered = comp;
+            repaintOverlay(hovered);
         }
-    }    
+    }
+
+    /**
+     * Change the selected rectangle.
+     * @param comp the selected component.
+     */
+    private void setSelected(Comp comp) {
+        repaintOverlay(lastClicked);
+        lastClicked = comp;
+        repaintOverlay(lastClicked);
+    }
+
+    /**
+     * Highlight the given nodes, replacing the ones highlighted before. Only
+     * the overlays are drawn again, so highlights can follow the user's 
+     * typing.
+     * @param nodes the nodes to highlight, none if null.
+     */
+    public void setHighlighted(Collection<TreeMapNode> nodes) {
+        highlighted = nodes == null ? Collections.<TreeMapNode>emptyList() : nodes;
+        repaint();
+    }
+
+    /**
+     * @return the highlighted nodes.
+     */
+    public Collection<TreeMapNode> getHighlighted() {
+        return highlighted;
+    }
+
+    /**
+     * Return the last clicked component inside the TreeMap.
+     * @return the last clicked {@Comp} object.
+     */
+    public Comp getClickedComponent() {
+        return lastClicked;
+    }
 
     /**
      * This class provides an extension of {@link JComponent} which main 
@@ -655,7 +862,11 @@ public class TreeMapComponent extends JComponent {
         public Comp() {
             super();
             thisComponent = this;
+            metrics.componentCreated();
+            setOpaque(false);
             addClickListener(this);
+            addMouseListener(hoverListener);
+            addMouseMotionListener(hoverListener);
         }
 
         @Override
@@ -664,7 +875,7 @@ public class TreeMapComponent extends JComponent {
             clone.setBounds(getBounds());
             clone.setBorder(getBorder());
             clone.setLayout(getLayout());
-            clone.setOpaque(true);
+            clone.setOpaque(false);
             return clone;
         }
 
@@ -672,7 +883,16 @@ public class TreeMapComponent extends JComponent {
             this.node = node;
             this.color = node.getColor();
             ValueFormatter f = new ValueFormatter(this.node.getRealWeight());
-            this.setToolTipText(this.node.getLabel() + " - " + f.format());
+            StringBuilder text = this.node.appendLabel(new StringBuilder());
+            text.append(" - ").append(f.format());
+            // leaves holding pruned classes tell how many they are
+            AttributeSchema schema = node.getAttributeSchema();
+            int pruned = schema == null ? AttributeSchema.NONE 
+                    : schema.getSlot(HistogramConverter.PRUNED_CLASSES);
+            if (pruned != AttributeSchema.NONE && node.hasAttribute(pruned)) {
+                text.append(" - ").append(node.getLongAttribute(pruned)).append(" classes");
+            }
+            this.setToolTipText(text.toString());
         }
         
         public TreeMapNode getNode() {
@@ -687,15 +907,6 @@ public class TreeMapComponent extends JComponent {
             this.color = c;
         }
 
-        @Override
-        public void paintComponent(Graphics g) {
-            super.paintComponent(g); 
-            if (this.color != null) {
-                g.setColor(color);
-                g.fillRect(0, 0, getWidth(), getHeight());
-            }
-        }   
-
         /**
          * Add a mouse listener to this component. It allows to select it and
          * zoom it. 
@@ -727,17 +938,11 @@ public class TreeMapComponent extends JComponent {
         }
 
         /**
-         * This method gives a darker color to this component and restore the
-         * original color to the last selected component.
+         * This method selects this component. The selection is drawn as an 
+         * overlay, so just the old and the new selected areas are repainted.
          */
         private void selectComp() {
-            if (lastClicked != null) {
-                lastClicked.setColor(lastClicked.getColor().brighter());
-                lastClicked.repaint();
-            } 
-            lastClicked = thisComponent;
-            setColor(getColor().darker());
-            repaint();
+            setSelected(thisComponent);
             notifySelectionToObservers(node);
         }
     }
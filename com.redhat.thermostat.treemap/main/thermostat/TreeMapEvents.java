@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class emits Java Flight Recorder events for the conversion, layout 
+ * and paint phases of TreeMaps, so that slow frames can be correlated with
+ * GC and EDT stalls in a recording.
+ * 
+ * <p>The event classes need the jdk.jfr module, which the Java 8 class 
+ * library doesn't have, so they are built from their own source folder and
+ * this class finds them by reflection. Events are only created when they 
+ * have been found, JFR is available on the running JVM and the event is 
+ * enabled in a recording; otherwise the methods of this class return null
+ * or do nothing.
+ */
+final class TreeMapEvents {
+
+    static final String CONVERSION = "thermostat.treemap.Conversion";
+    static final String LAYOUT = "thermostat.treemap.Layout";
+    static final String PAINT = "thermostat.treemap.Paint";
+
+    private static final String RECORDER = "thermostat.JfrRecorder";
+
+    /**
+     * The events' recorder, or null if events can't be recorded.
+     */
+    private static final Recorder recorder = loadRecorder();
+
+    /**
+     * True if the running JVM supports custom JFR events.
+     */
+    static final boolean AVAILABLE = recorder != null;
+
+    private TreeMapEvents() {
+    }
+
+    private static Recorder loadRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            Class<?> type = Class.forName(RECORDER);
+            return (Recorder) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Start a conversion event.
+     * @return the started event, or null if it is not recorded.
+     */
+    static Object beginConversion() {
+        return recorder == null ? null : recorder.begin(CONVERSION);
+    }
+
+    /**
+     * Commit a conversion event.
+     * @param event the event returned by {@link #beginConversion()}, can be 
+     * null.
+     * @param records the number of histogram records converted.
+     * @param tree the resulting tree.
+     */
+    static void commitConversion(Object event, int records, TreeMapNode tree) {
+        if (event == null || !recorder.end(event)) {
+            return;
+        }
+        int[] size = measure(tree);
+        recorder.commitConversion(event, records, size[0], size[1]);
+    }
+
+    /**
+     * Start a layout event.
+     * @return the started event, or null if it is not recorded.
+     */
+    static Object beginLayout() {
+        return recorder == null ? null : recorder.begin(LAYOUT);
+    }
+
+    /**
+     * Commit a layout event.
+     * @param event the event returned by {@link #beginLayout()}, can be null.
+     * @param sample the counters collected during the layout.
+     * @param area the area the tree has been laid out in.
+     */
+    static void commitLayout(Object event, TreeMapMetrics.LayoutSample sample, 
+            Rectangle2D area) {
+        if (event == null || !recorder.end(event)) {
+            return;
+        }
+        recorder.commitLayout(event, sample, area);
+    }
+
+    /**
+     * Start a paint event.
+     * @return the started event, or null if it is not recorded.
+     */
+    static Object beginPaint() {
+        return recorder == null ? null : recorder.begin(PAINT);
+    }
+
+    /**
+     * Commit a paint event.
+     * @param event the event returned by {@link #beginPaint()}, can be null.
+     * @param nodes the number of nodes shown.
+     * @param depth the depth of the deepest node shown.
+     * @param width the painted width.
+     * @param height the painted height.
+     * @param rendered true if the TreeMap image has been rendered again.
+     */
+    static void commitPaint(Object event, int nodes, int depth, int width, 
+            int height, boolean rendered) {
+        if (event == null || !recorder.end(event)) {
+            return;
+        }
+        recorder.commitPaint(event, nodes, depth, width, height, rendered);
+    }
+
+    /**
+     * Count the nodes of a tree and its depth, without recursion.
+     * @return an array holding the number of nodes and the depth.
+     */
+    private static int[] measure(TreeMapNode tree) {
+        int nodes = 0;
+        int depth = 0;
+        Deque<TreeMapNode> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(tree);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            TreeMapNode node = stack.pop();
+            int d = depths.pop();
+            nodes++;
+            depth = Math.max(depth, d);
+            for (TreeMapNode child : node.getChildren()) {
+                stack.push(child);
+                depths.push(d + 1);
+            }
+        }
+        return new int[] { nodes, depth };
+    }
+
+    /**
+     * The events' implementation, on top of JFR.
+     */
+    abstract static class Recorder {
+
+        /**
+         * Start an event.
+         * @param name the name of the event.
+         * @return the started event, or null if it is not enabled.
+         */
+        abstract Object begin(String name);
+
+        /**
+         * End an event.
+         * @return true if the event should be committed.
+         */
+        abstract boolean end(Object event);
+
+        abstract void commitConversion(Object event, int records, int nodes, int depth);
+
+        abstract void commitLayout(Object event, TreeMapMetrics.LayoutSample sample, 
+                Rectangle2D area);
+
+        abstract void commitPaint(Object event, int nodes, int depth, int width, 
+                int height, boolean rendered);
+    }
+}
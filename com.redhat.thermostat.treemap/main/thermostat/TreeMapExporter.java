@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class exports a TreeMap as a PNG image without using any Swing 
+ * component, so it can run with <code>java.awt.headless=true</code>.
+ * 
+ * <p>A copy of the tree is laid out for the requested size, so the given 
+ * tree keeps its rectangles. The copy is then drawn one horizontal strip at
+ * a time and each strip is immediately encoded by a 
+ * {@link PngStripWriter}. Memory used for pixels is bounded by the strip 
+ * height, so huge images can be exported.
+ */
+public class TreeMapExporter {
+
+    /**
+     * Default number of rows drawn at a time.
+     */
+    public static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    /**
+     * Color of the areas not covered by the tree.
+     */
+    private static final Color BACKGROUND = Color.WHITE;
+
+    /**
+     * The object which draws the strips.
+     */
+    private final TreeMapRenderer renderer;
+
+    /**
+     * The number of rows drawn at a time.
+     */
+    private int stripHeight = DEFAULT_STRIP_HEIGHT;
+
+    /**
+     * Constructor. It exports images using the same font and border style of
+     * {@link TreeMapComponent}.
+     */
+    public TreeMapExporter() {
+        this(new TreeMapRenderer(new Font(Font.SERIF, Font.PLAIN, 8), new LabelCache()));
+    }
+
+    /**
+     * Constructor.
+     * @param renderer the object used to draw the tree.
+     */
+    public TreeMapExporter(TreeMapRenderer renderer) {
+        this.renderer = Objects.requireNonNull(renderer);
+    }
+
+    public TreeMapRenderer getRenderer() {
+        return renderer;
+    }
+
+    public int getStripHeight() {
+        return stripHeight;
+    }
+
+    public void setStripHeight(int stripHeight) {
+        if (stripHeight <= 0) {
+            throw new IllegalArgumentException("strip height must be positive");
+        }
+        this.stripHeight = stripHeight;
+    }
+
+    /**
+     * Lay out a copy of the given tree for the given size and write it as 
+     * PNG image in the given file.
+     * @param tree the tree to export.
+     * @param width the image width.
+     * @param height the image height.
+     * @param file the destination file.
+     * @throws IOException if writing fails.
+     */
+    public void exportPng(TreeMapNode tree, int width, int height, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            exportPng(tree, width, height, out);
+        }
+    }
+
+    /**
+     * Lay out a copy of the given tree for the given size and write it as 
+     * PNG image on the given stream, which is not closed.
+     * @param tree the tree to export.
+     * @param width the image width.
+     * @param height the image height.
+     * @param out the destination stream.
+     * @throws IOException if writing fails.
+     */
+    public void exportPng(TreeMapNode tree, int width, int height, OutputStream out) throws IOException {
+        Objects.requireNonNull(tree);
+        Objects.requireNonNull(out);
+        // a copy is laid out, so the rectangles of the given tree, maybe 
+        // shown on screen, are left as they are
+        final FlatTree flat = FlatTree.fromNodes(tree);
+        TreeProcessor.processTreeMap(flat, new Rectangle2D.Double(0, 0, width, height));
+
+        // the placements are collected once and bucketed by strip
+        int strips = (height + stripHeight - 1) / stripHeight;
+        final List<Color> colors = new ArrayList<>();
+        final List<String> labels = new ArrayList<>();
+        final List<Rectangle> bounds = new ArrayList<>();
+        final List<Rectangle> visibles = new ArrayList<>();
+        TreeMapRenderer.visit(flat, new TreeMapRenderer.FlatVisitor() {
+            @Override
+            public void visit(int node, Rectangle b, Rectangle visible) {
+                if (!visible.isEmpty()) {
+                    colors.add(flat.getColor(node));
+                    labels.add(flat.getLabel(node));
+                    bounds.add(b);
+                    visibles.add(visible);
+                }
+            }
+        });
+        int[][] stripMembers = bucket(visibles, strips, height);
+
+        int rows = Math.min(stripHeight, height);
+        BufferedImage strip = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+
+        try (PngStripWriter writer = new PngStripWriter(out, width, height)) {
+            for (int s = 0; s < strips; s++) {
+                int top = s * stripHeight;
+                Graphics2D g = strip.createGraphics();
+                try {
+                    g.setColor(BACKGROUND);
+                    g.fillRect(0, 0, width, rows);
+                    g.translate(0, -top);
+                    g.clipRect(0, top, width, rows);
+                    for (int i : stripMembers[s]) {
+                        renderer.paintRectangle(g, colors.get(i), bounds.get(i), visibles.get(i));
+                    }
+                    if (renderer.isDrawLabels()) {
+                        for (int i : stripMembers[s]) {
+                            String label = labels.get(i);
+                            if (label != null && !label.isEmpty()) {
+                                renderer.paintLabel(g, label, visibles.get(i));
+                            }
+                        }
+                    }
+                } finally {
+                    g.dispose();
+                }
+                writer.writeRows(pixels, 0, width, Math.min(rows, height - top));
+            }
+        }
+    }
+
+    /**
+     * Return, for each strip, the indexes of the rectangles intersecting it in
+     * drawing order.
+     */
+    private int[][] bucket(List<Rectangle> rectangles, int strips, int height) {
+        int[] counts = new int[strips];
+        for (Rectangle r : rectangles) {
+            for (int s = firstStrip(r); s <= lastStrip(r, strips); s++) {
+                counts[s]++;
+            }
+        }
+        int[][] members = new int[strips][];
+        for (int s = 0; s < strips; s++) {
+            members[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int i = 0; i < rectangles.size(); i++) {
+            Rectangle r = rectangles.get(i);
+            for (int s = firstStrip(r); s <= lastStrip(r, strips); s++) {
+                members[s][counts[s]++] = i;
+            }
+        }
+        return members;
+    }
+
+    private int firstStrip(Rectangle r) {
+        return Math.max(0, r.y / stripHeight);
+    }
+
+    private int lastStrip(Rectangle r, int strips) {
+        return Math.min(strips - 1, (r.y + r.height - 1) / stripHeight);
+    }
+}
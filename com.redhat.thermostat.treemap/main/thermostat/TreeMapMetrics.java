@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects metrics about TreeMaps layout and painting, and 
+ * publishes them in the platform MBean server under the {@link #NAME} name.
+ * 
+ * <p>Recording is off by default, it can be turned on through JMX or by
+ * setting the <i>thermostat.treemap.metrics</i> system property to true.
+ * When off, instrumented code only reads a volatile flag; when on, layout 
+ * counters are accumulated in a {@link LayoutSample} and published once per
+ * layout.
+ */
+public class TreeMapMetrics implements TreeMapMetricsMXBean {
+
+    /**
+     * The name of the MBean.
+     */
+    public static final String NAME = "thermostat.treemap:type=TreeMapMetrics";
+
+    private static final TreeMapMetrics INSTANCE = new TreeMapMetrics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // metrics are still available through getInstance()
+        }
+    }
+
+    private volatile boolean enabled = Boolean.getBoolean("thermostat.treemap.metrics");
+
+    private final AtomicLong layoutCount = new AtomicLong();
+    private final AtomicLong layoutTime = new AtomicLong();
+    private final AtomicLong sortTime = new AtomicLong();
+    private final AtomicLong normalizeTime = new AtomicLong();
+    private final AtomicLong squarifyTime = new AtomicLong();
+    private final AtomicLong squarifySteps = new AtomicLong();
+    private final AtomicLong lastLayoutTime = new AtomicLong();
+    private final AtomicLong nodesVisited = new AtomicLong();
+    private final AtomicLong nodesCulled = new AtomicLong();
+    private final AtomicLong componentsCreated = new AtomicLong();
+    private final AtomicLong paintCount = new AtomicLong();
+    private final AtomicLong paintTime = new AtomicLong();
+    private final AtomicLong lastPaintTime = new AtomicLong();
+    private final AtomicLong lastTreeSize = new AtomicLong();
+
+    private TreeMapMetrics() {
+    }
+
+    /**
+     * @return the metrics shared by all TreeMaps.
+     */
+    public static TreeMapMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void reset() {
+        AtomicLong[] all = { layoutCount, layoutTime, sortTime, normalizeTime, 
+                squarifyTime, squarifySteps, lastLayoutTime, nodesVisited, 
+                nodesCulled, componentsCreated, paintCount, paintTime, 
+                lastPaintTime, lastTreeSize };
+        for (AtomicLong value : all) {
+            value.set(0);
+        }
+    }
+
+    /**
+     * Start recording a layout.
+     * @param force true to create a sample even if metrics are disabled, 
+     * for instance because a JFR event needs it.
+     * @return a new sample, or null if metrics are disabled and the sample
+     * is not forced.
+     */
+    LayoutSample startLayout(boolean force) {
+        return enabled || force ? new LayoutSample() : null;
+    }
+
+    /**
+     * Publish the metrics of a finished layout.
+     * @param sample the sample returned by {@link #startLayout(boolean)}, 
+     * can be null.
+     */
+    void endLayout(LayoutSample sample) {
+        if (sample == null || !enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - sample.start;
+        layoutCount.incrementAndGet();
+        layoutTime.addAndGet(elapsed);
+        lastLayoutTime.set(elapsed);
+        sortTime.addAndGet(sample.sortTime);
+        normalizeTime.addAndGet(sample.normalizeTime);
+        squarifyTime.addAndGet(sample.squarifyTime);
+        squarifySteps.addAndGet(sample.squarifySteps);
+        nodesVisited.addAndGet(sample.visited);
+        nodesCulled.addAndGet(sample.culled);
+        lastTreeSize.set(sample.placed);
+    }
+
+    void componentCreated() {
+        if (enabled) {
+            componentsCreated.incrementAndGet();
+        }
+    }
+
+    void nodeCulled() {
+        if (enabled) {
+            nodesCulled.incrementAndGet();
+        }
+    }
+
+    void painted(long elapsed) {
+        paintCount.incrementAndGet();
+        paintTime.addAndGet(elapsed);
+        lastPaintTime.set(elapsed);
+    }
+
+    @Override
+    public long getLayoutCount() {
+        return layoutCount.get();
+    }
+
+    @Override
+    public long getLayoutTime() {
+        return layoutTime.get();
+    }
+
+    @Override
+    public long getSortTime() {
+        return sortTime.get();
+    }
+
+    @Override
+    public long getNormalizeTime() {
+        return normalizeTime.get();
+    }
+
+    @Override
+    public long getSquarifyTime() {
+        return squarifyTime.get();
+    }
+
+    @Override
+    public long getSquarifySteps() {
+        return squarifySteps.get();
+    }
+
+    @Override
+    public long getRecurseTime() {
+        return Math.max(0, getLayoutTime() - getSortTime() - getNormalizeTime() 
+                - getSquarifyTime());
+    }
+
+    @Override
+    public long getLastLayoutTime() {
+        return lastLayoutTime.get();
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited.get();
+    }
+
+    @Override
+    public long getNodesCulled() {
+        return nodesCulled.get();
+    }
+
+    @Override
+    public long getComponentsCreated() {
+        return componentsCreated.get();
+    }
+
+    @Override
+    public long getPaintCount() {
+        return paintCount.get();
+    }
+
+    @Override
+    public long getPaintTime() {
+        return paintTime.get();
+    }
+
+    @Override
+    public long getLastPaintTime() {
+        return lastPaintTime.get();
+    }
+
+    @Override
+    public long getLastTreeSize() {
+        return lastTreeSize.get();
+    }
+
+    /**
+     * Metrics of a single layout, collected without synchronization by the
+     * thread doing it.
+     */
+    static final class LayoutSample {
+        final long start = System.nanoTime();
+        long sortTime;
+        long normalizeTime;
+        long squarifyTime;
+        long squarifySteps;
+        long visited;
+        long culled;
+        long placed;
+        int depth;
+    }
+}
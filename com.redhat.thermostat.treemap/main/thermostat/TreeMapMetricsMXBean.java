@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+/**
+ * Management interface of {@link TreeMapMetrics}. Times are in nanosec and,
+ * as the counters, are cumulative since the last {@link #reset()}.
+ */
+public interface TreeMapMetricsMXBean {
+
+    /**
+     * @return true if metrics are being recorded.
+     */
+    boolean isEnabled();
+
+    /**
+     * Turn the recording of metrics on or off.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Set all metrics to 0.
+     */
+    void reset();
+
+    long getLayoutCount();
+
+    long getLayoutTime();
+
+    long getSortTime();
+
+    long getNormalizeTime();
+
+    long getSquarifyTime();
+
+    /**
+     * @return the greedy steps of the squarified algorithm, each comparing
+     * the aspect ratio of a row with and without the next rectangle. They 
+     * are at most twice the rectangles placed.
+     */
+    long getSquarifySteps();
+
+    /**
+     * @return the layout time not spent in sort, normalize and squarify 
+     * phases: walking the tree, coloring nodes and computing sub areas.
+     */
+    long getRecurseTime();
+
+    long getLastLayoutTime();
+
+    /**
+     * @return the number of nodes whose children have been laid out.
+     */
+    long getNodesVisited();
+
+    /**
+     * @return the number of nodes skipped, with their subtrees, because too
+     * small to be processed or shown.
+     */
+    long getNodesCulled();
+
+    long getComponentsCreated();
+
+    long getPaintCount();
+
+    long getPaintTime();
+
+    long getLastPaintTime();
+
+    /**
+     * @return the number of nodes placed by the last layout.
+     */
+    long getLastTreeSize();
+}
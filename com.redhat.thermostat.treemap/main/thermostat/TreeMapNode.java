@@ -38,20 +38,28 @@ package thermostat;
 
 import java.awt.Color;
 import java.awt.geom.Rectangle2D;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class provide a tree recursive implementation used in
  * {@link SquarifiedTreeMap}. It contains a reference to the parent node and to
  * a node list, which represent the node's children. It is also 
  * possible to store generic information inside the node using a {@link Map} 
- * object. Furthermore, the main property of this class is the chance to have a
+ * object, or typed attributes described by an {@link AttributeSchema}. 
+ * Furthermore, the main property of this class is the chance to have a
  * weight for the node and associate to it a {@link Rectangle2D.Double} object.
  * 
  * <p>When an instance of this class is created, it will automatically be 
@@ -71,6 +79,11 @@ public class TreeMapNode {
      */
     private static int idCounter = 0;
 
+    /**
+     * Separator of the labels in full names.
+     */
+    public static final char NAME_SEPARATOR = '.';
+
     /**
      * The rectangle which will graphically represent this node.
      */
@@ -82,14 +95,53 @@ public class TreeMapNode {
     private int id;
     
     /**
-     * A Map in which store information for this node.
+     * A Map in which store information for this node, created when the first
+     * information is added.
      */
     private Map<String, String> info;
+
+    /**
+     * Typed attributes: their schema, which stores their values, and this 
+     * node's row in the schema's columns, given when the first value is set.
+     */
+    private AttributeSchema schema;
+    private int row = AttributeSchema.NONE;
+
+    /**
+     * The view returned by {@link #getInfo()}, created by its first call.
+     */
+    private InfoView infoView;
     
     /**
      * Reference to the parent.
      */
     private TreeMapNode parent;
+
+    /**
+     * This node's depth, kept up to date when the tree's structure changes.
+     */
+    private int depth;
+
+    /**
+     * Nodes from the root to this one, by depth, or null if not computed 
+     * yet. Arrays are shared: a node uses its parent's array if the slot 
+     * after the parent is free, so a path is copied only by siblings.
+     */
+    private TreeMapNode[] path;
+
+    /**
+     * Children by the hash of their label, in an open addressing table 
+     * built by the first name lookup through this node and dropped when its
+     * children or their labels change. Labels are hashed from their 
+     * characters, so the index doesn't keep label strings.
+     */
+    private TreeMapNode[] childIndex;
+
+    /**
+     * The structure of the tree this node belongs to, shared by its nodes, 
+     * or null if this node has never been part of a tree nor observed.
+     */
+    private Structure structure;
     
     /**
      * Reference to children.
@@ -105,6 +157,13 @@ public class TreeMapNode {
      * The node's label. It can be the same of another node.
      */
     private String label;
+
+    /**
+     * The dictionary storing the node's label and its id, when the label is
+     * not stored as a string.
+     */
+    private LabelDictionary dictionary;
+    private int labelId;
     
     /**
      * The node's weight which has been set inside the constructor. Note that
@@ -173,11 +232,26 @@ public class TreeMapNode {
         this.parent = null;
         this.children = new ArrayList<TreeMapNode>();
         this.rectangle = new Rectangle2D.Double();
-        this.info = new HashMap<String, String>();
         this.weight = realWeight;
         this.realWeight = realWeight;
     }
 
+    /**
+     * Constructor that allow to set the nodes' real weight and the label,
+     * stored in a {@link LabelDictionary}. Others fields are initialized to 
+     * their default value.
+     *
+     * @param dictionary the dictionary storing the label.
+     * @param labelId the label's id in the dictionary.
+     * @param realWeight the nodes real weight, which will be not affected 
+     * during node processing.
+     */
+    public TreeMapNode(LabelDictionary dictionary, int labelId, double realWeight) {
+        this((String) null, realWeight);
+        this.dictionary = dictionary;
+        this.labelId = labelId;
+    }
+
     /**
      * Return the id of this object.
      * @return the id automatically assigned at this object initialization.
@@ -192,14 +266,91 @@ public class TreeMapNode {
      */
     public void setLabel(String newLabel) {
         this.label = newLabel;
+        this.dictionary = null;
+        labelChanged();
+    }
+
+    /**
+     * Set this node's label, stored in a {@link LabelDictionary}.
+     * @param newDictionary the dictionary storing the label.
+     * @param newLabelId the label's id in the dictionary.
+     */
+    public void setLabel(LabelDictionary newDictionary, int newLabelId) {
+        this.label = null;
+        this.dictionary = newDictionary;
+        this.labelId = newLabelId;
+        labelChanged();
+    }
+
+    private void labelChanged() {
+        if (parent != null) {
+            parent.childIndex = null;
+        }
+        structureChanged();
     }
     
     /**
-     * Return the label of this object.
+     * Return the label of this object. A label stored in a 
+     * {@link LabelDictionary} is built at each call: to draw or compare it,
+     * use {@link #appendLabel(StringBuilder)} or 
+     * {@link #labelEquals(String)}.
      * @return the label assigned at instantiation time to this object.
      */
     public String getLabel() {
-        return this.label;
+        return dictionary == null ? this.label : dictionary.toString(labelId);
+    }
+
+    /**
+     * Append the label of this object to the given builder, without building
+     * a string if the label is stored in a {@link LabelDictionary}.
+     * @return the builder.
+     */
+    public StringBuilder appendLabel(StringBuilder sb) {
+        return dictionary == null ? sb.append(label) : dictionary.append(labelId, sb);
+    }
+
+    /**
+     * @return the dictionary storing this node's label, or null if the label
+     * is stored as a string.
+     */
+    public LabelDictionary getLabelDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the id of this node's label in its {@link LabelDictionary}.
+     */
+    public int getLabelId() {
+        return labelId;
+    }
+
+    /**
+     * @return true if this node's label is equal to the given one, comparing
+     * ids if both labels are stored in the same dictionary.
+     */
+    public boolean hasSameLabel(TreeMapNode other) {
+        if (dictionary != null && dictionary == other.dictionary) {
+            return labelId == other.labelId;
+        }
+        return labelEquals(other.getLabel());
+    }
+
+    /**
+     * @return true if this node's label is not null nor empty.
+     */
+    public boolean hasLabel() {
+        return dictionary != null ? !dictionary.matches(labelId, "") 
+                : label != null && !label.isEmpty();
+    }
+
+    /**
+     * @return true if this node's label is equal to the given string.
+     */
+    public boolean labelEquals(String key) {
+        if (dictionary != null) {
+            return key != null && dictionary.matches(labelId, key);
+        }
+        return label == null ? key == null : label.equals(key);
     }
 
     /**
@@ -216,7 +367,36 @@ public class TreeMapNode {
      * value.
      */
     public void setParent(TreeMapNode parent) {
+        if (parent == this.parent) {
+            return;
+        }
         this.parent = parent;
+        if (parent != null) {
+            // this subtree becomes part of the parent's tree
+            Structure s = parent.structure();
+            if (structure != null) {
+                structure.find().mergeInto(s);
+            }
+            structure = s;
+        }
+        structureChanged();
+        int newDepth = parent == null ? 0 : parent.depth + 1;
+        if (newDepth == depth && path == null) {
+            // descendants have neither changed depth nor computed paths
+            return;
+        }
+        // update depths and forget paths in this subtree
+        TreeTraversal.PreOrder it = new TreeTraversal.PreOrder(this);
+        while (it.hasNext()) {
+            TreeMapNode node = it.next();
+            int d = node == this ? newDepth : node.parent.depth + 1;
+            if (node != this && d == node.depth && node.path == null) {
+                it.skipChildren();
+                continue;
+            }
+            node.depth = d;
+            node.path = null;
+        }
     }
 
     /**
@@ -232,18 +412,70 @@ public class TreeMapNode {
      * @param children the new list of children for this node.
      */
     public void setChildren(List<TreeMapNode> children) {
+        if (children != this.children) {
+            childIndex = null;
+            structureChanged();
+        }
         this.children = children;
         for (TreeMapNode child : this.children) {
             child.setParent(this);
         }
     }
 
+    /**
+     * Move under this node the children of the given node, replacing this
+     * node's children, as collapsing a chain of nodes does. Unlike 
+     * {@link #setChildren(List)}, the moved subtrees are not walked: their
+     * depths and paths are left stale until {@link #updateDepths()} is 
+     * called on an ancestor, so a whole tree can be rearranged in linear 
+     * time. Both nodes must belong to the same tree.
+     * @param node the node whose children are moved.
+     */
+    void relinkChildren(TreeMapNode node) {
+        children = node.children;
+        childIndex = null;
+        for (TreeMapNode child : children) {
+            child.parent = this;
+        }
+        structureChanged();
+    }
+
+    /**
+     * Recompute the depths of the nodes below this one and forget their 
+     * paths, in a single walk. This node's depth is assumed to be right.
+     */
+    void updateDepths() {
+        TreeTraversal.PreOrder it = new TreeTraversal.PreOrder(this);
+        while (it.hasNext()) {
+            TreeMapNode node = it.next();
+            if (node != this) {
+                node.depth = node.parent.depth + 1;
+            }
+            node.path = null;
+        }
+    }
+
+    /**
+     * Replace the children list with one holding the same nodes in another
+     * order, as laying out the tree does. The tree's structure doesn't 
+     * change, so name lookups are not updated.
+     * @param children the reordered children.
+     */
+    void setChildrenOrder(List<TreeMapNode> children) {
+        this.children = children;
+    }
+
     /**
      * Return the {@link Map} object containing all information of this node.
+     * Typed attributes are shown as strings, and can't be changed through 
+     * the map. The map is a live view, the same for all calls.
      * @return a {@link Map} object.
      */
     public Map<String, String> getInfo() {
-        return this.info;
+        if (infoView == null) {
+            infoView = new InfoView();
+        }
+        return infoView;
     }
     
     /**
@@ -253,17 +485,227 @@ public class TreeMapNode {
      * @return the old value for the given key.
      */
     public String addInfo(String key, String value) {
+        if (this.info == null) {
+            this.info = new HashMap<String, String>();
+        }
         return this.info.put(key, value);
     }
 
     /**
      * Return the information stored in this object, corresponding to the key 
-     * given in input.
+     * given in input. Typed attributes are returned as strings.
      * @param key the key value for the search information.
      * @return the corresponding value for the given key.
      */
     public String getInfo(String key) {
-        return this.info.get(key);
+        String value = this.info == null ? null : this.info.get(key);
+        if (value == null && schema != null) {
+            int slot = schema.getSlot(key);
+            if (slot != AttributeSchema.NONE && hasAttribute(slot)) {
+                value = schema.format(slot, schema.get(slot, row));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the schema of this node's attributes, or null if none has been
+     * set.
+     */
+    public AttributeSchema getAttributeSchema() {
+        return schema;
+    }
+
+    /**
+     * Set the schema of this node's attributes, if not set yet.
+     * @throws IllegalArgumentException if the node has another schema.
+     */
+    public void setAttributeSchema(AttributeSchema newSchema) {
+        if (schema != null && schema != newSchema) {
+            throw new IllegalArgumentException("node has another attribute schema");
+        }
+        schema = newSchema;
+    }
+
+    /**
+     * Set the value of a {@link AttributeSchema.Type#LONG} attribute.
+     * @param attributeSchema the schema of this node's attributes.
+     * @param slot the attribute's slot in the schema.
+     * @param value the attribute's value.
+     */
+    public void setLongAttribute(AttributeSchema attributeSchema, int slot, long value) {
+        checkAttribute(attributeSchema, slot, AttributeSchema.Type.LONG);
+        schema.set(slot, row, value);
+    }
+
+    /**
+     * Set the value of a {@link AttributeSchema.Type#DOUBLE} attribute.
+     * @param attributeSchema the schema of this node's attributes.
+     * @param slot the attribute's slot in the schema.
+     * @param value the attribute's value.
+     */
+    public void setDoubleAttribute(AttributeSchema attributeSchema, int slot, double value) {
+        checkAttribute(attributeSchema, slot, AttributeSchema.Type.DOUBLE);
+        schema.set(slot, row, Double.doubleToRawLongBits(value));
+    }
+
+    private void checkAttribute(AttributeSchema attributeSchema, int slot, 
+            AttributeSchema.Type type) {
+        setAttributeSchema(attributeSchema);
+        if (schema.getType(slot) != type) {
+            throw new IllegalArgumentException("attribute " + schema.getKey(slot) 
+                    + " is not " + type);
+        }
+        if (row == AttributeSchema.NONE) {
+            row = schema.newRow();
+        }
+    }
+
+    /**
+     * Move the information and the attributes of the given node into this 
+     * one, replacing this node's ones, as when a node is collapsed into its 
+     * parent. This node takes the other's row of attributes, and its own row,
+     * if any, is left unused.
+     */
+    void takeInfo(TreeMapNode other) {
+        if (other.info != null) {
+            info = other.info;
+        }
+        if (other.schema != null) {
+            schema = other.schema;
+            row = other.row;
+        }
+        other.info = null;
+        other.row = AttributeSchema.NONE;
+    }
+
+    /**
+     * @return true if the attribute with the given slot has a value.
+     */
+    public boolean hasAttribute(int slot) {
+        return row != AttributeSchema.NONE && schema.has(slot, row);
+    }
+
+    /**
+     * @return the value of the attribute with the given slot, converted to 
+     * long, or 0 if it has no value.
+     */
+    public long getLongAttribute(int slot) {
+        if (!hasAttribute(slot)) {
+            return 0;
+        }
+        long bits = schema.get(slot, row);
+        return schema.getType(slot) == AttributeSchema.Type.LONG ? bits
+                : (long) Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @return the value of the attribute with the given slot, converted to 
+     * double, or 0 if it has no value.
+     */
+    public double getDoubleAttribute(int slot) {
+        return hasAttribute(slot) ? schema.decode(slot, schema.get(slot, row)) : 0;
+    }
+
+    /**
+     * A map of this node's information and of its attributes as strings.
+     * Entries are read from the node while iterating, nothing is copied.
+     */
+    private class InfoView extends AbstractMap<String, String> {
+
+        private final Set<Map.Entry<String, String>> entries = 
+                new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new InfoIterator();
+            }
+
+            @Override
+            public int size() {
+                int size = info == null ? 0 : info.size();
+                for (int slot = nextSlot(0); slot != AttributeSchema.NONE; 
+                        slot = nextSlot(slot + 1)) {
+                    size++;
+                }
+                return size;
+            }
+        };
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? getInfo((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public String put(String key, String value) {
+            return addInfo(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            return info == null ? null : info.remove(key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return entries;
+        }
+
+        /**
+         * @return the first slot from the given one having a value which 
+         * isn't hidden by an information, or {@link AttributeSchema#NONE}.
+         */
+        private int nextSlot(int slot) {
+            if (row == AttributeSchema.NONE) {
+                return AttributeSchema.NONE;
+            }
+            for (; slot < schema.size(); slot++) {
+                if (schema.has(slot, row) 
+                        && (info == null || !info.containsKey(schema.getKey(slot)))) {
+                    return slot;
+                }
+            }
+            return AttributeSchema.NONE;
+        }
+
+        /**
+         * Iterates the information, then the attributes.
+         */
+        private class InfoIterator implements Iterator<Map.Entry<String, String>> {
+            private final Iterator<Map.Entry<String, String>> infos = info == null 
+                    ? Collections.<Map.Entry<String, String>>emptyIterator() 
+                    : info.entrySet().iterator();
+            private int slot = nextSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return infos.hasNext() || slot != AttributeSchema.NONE;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (infos.hasNext()) {
+                    return new SimpleImmutableEntry<>(infos.next());
+                }
+                if (slot == AttributeSchema.NONE) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> entry = new SimpleImmutableEntry<>(
+                        schema.getKey(slot), schema.format(slot, schema.get(slot, row)));
+                slot = nextSlot(slot + 1);
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
     }
 
     /**
@@ -274,7 +716,9 @@ public class TreeMapNode {
     public void addChild(TreeMapNode child) {
         if (child != null) {
             this.children.add(child);
+            childIndex = null;
             child.setParent(this);
+            structureChanged();
         }
     }
 
@@ -295,18 +739,228 @@ public class TreeMapNode {
      * @return the node of exists, else null.
      */
     public TreeMapNode searchNodeByLabel(String key) {
-        if (this.getLabel().equals(key)) {
+        for (TreeMapNode node : TreeTraversal.preOrder(this)) {
+            if (node.labelEquals(key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the full name of this node: the labels of the nodes from the 
+     * root to this one, separated by dots, like the fully qualified name of
+     * a class. Empty labels are skipped, as the root's one, and the leading
+     * dot the root's label has when packed by {@link HistogramConverter}.
+     * @return the full name of this node.
+     */
+    public String getFullName() {
+        StringBuilder sb = new StringBuilder();
+        for (int level = 0; level <= depth; level++) {
+            getAncestor(level).appendName(sb, level == 0);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append this node's label to a full name, without building the label's
+     * string.
+     * @param root true if this node is the root of the name.
+     */
+    void appendName(StringBuilder sb, boolean root) {
+        if (dictionary == null && label == null) {
+            return;
+        }
+        int length = sb.length();
+        if (length > 0) {
+            sb.append(NAME_SEPARATOR);
+        }
+        int start = sb.length();
+        appendLabel(sb);
+        if (root && sb.length() > start && sb.charAt(start) == NAME_SEPARATOR) {
+            sb.deleteCharAt(start);
+        }
+        if (sb.length() == start) {
+            // empty labels are skipped
+            sb.setLength(length);
+        }
+    }
+
+    /**
+     * Search in the subtree having this node as root the node with the given
+     * full name, as returned by {@link #getFullName()}. Unlike 
+     * {@link #searchNodeByLabel(String)}, the search descends from this node
+     * through the children whose labels match the name, looking them up in
+     * indexes, so it takes a time proportional to the name's length.
+     * @param name the full name to search, like a fully qualified class name.
+     * @return the node, or null if not found.
+     */
+    public TreeMapNode findByName(String name) {
+        String prefix = getFullName();
+        int start;
+        if (prefix.isEmpty()) {
+            start = 0;
+        } else if (name.equals(prefix)) {
             return this;
+        } else if (name.startsWith(prefix) && name.length() > prefix.length() 
+                && name.charAt(prefix.length()) == NAME_SEPARATOR) {
+            start = prefix.length() + 1;
+        } else {
+            return null;
         }
-        
-        TreeMapNode result = null;
-        for (TreeMapNode child : getChildren()) {
-            result = child.searchNodeByLabel(key) ;
-            if (result != null) {
-                return result;
+        if (start == name.length()) {
+            return this;
+        }
+
+        TreeMapNode node = this;
+        // labels can contain dots, so try the labels ending at each 
+        // separator, shortest first
+        while (node != null) {
+            TreeMapNode next = null;
+            int end = start;
+            while (next == null && end != -1) {
+                end = name.indexOf(NAME_SEPARATOR, end + 1);
+                String key = name.substring(start, end == -1 ? name.length() : end);
+                next = node.findChild(key);
+                if (next != null && end == -1) {
+                    return next;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            node = next;
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * @return the child having the given label, or null if none.
+     */
+    private TreeMapNode findChild(String key) {
+        TreeMapNode[] index = childIndex;
+        if (index == null) {
+            index = new TreeMapNode[2 * Integer.highestOneBit(Math.max(2, 2 * children.size()))];
+            int mask = index.length - 1;
+            StringBuilder sb = new StringBuilder();
+            for (TreeMapNode child : children) {
+                if (child.dictionary == null && child.label == null) {
+                    continue;
+                }
+                sb.setLength(0);
+                int slot = hash(child.appendLabel(sb)) & mask;
+                while (index[slot] != null && !index[slot].hasSameLabel(child)) {
+                    slot = (slot + 1) & mask;
+                }
+                // the first child having a label is found
+                if (index[slot] == null) {
+                    index[slot] = child;
+                }
             }
+            childIndex = index;
+        }
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; index[slot] != null; slot = (slot + 1) & mask) {
+            if (index[slot].labelEquals(key)) {
+                return index[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the hash of the given characters, spread over the low bits.
+     */
+    private static int hash(CharSequence s) {
+        int h = 0;
+        for (int k = 0; k < s.length(); k++) {
+            h = 31 * h + s.charAt(k);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Return the version of the structure of this node's tree, which changes
+     * when nodes of the tree are added, moved or renamed. Changes of other 
+     * trees don't affect it, so indexes of a tree only need to be rebuilt 
+     * when that tree changes.
+     * @return the version of this node's tree.
+     */
+    int getStructureVersion() {
+        return structure().version;
+    }
+
+    /**
+     * @return the structure of this node's tree, created if needed.
+     */
+    private Structure structure() {
+        if (structure == null) {
+            structure = new Structure();
+        } else {
+            structure = structure.find();
+        }
+        return structure;
+    }
+
+    private void structureChanged() {
+        if (structure != null) {
+            structure = structure.find();
+            structure.version++;
         }
-        return result;
+    }
+
+    /**
+     * The version of the structure of a tree, shared by all its nodes. Nodes
+     * without a parent nor children get a structure when they are first 
+     * observed, so building a tree allocates one structure for its root.
+     * 
+     * <p>When a subtree is attached to another tree its structure is merged 
+     * into the tree's, as in a union-find forest, so moving nodes doesn't
+     * walk them. A subtree detached from a tree keeps sharing its structure,
+     * which only makes changes of either invalidate the indexes of both.
+     * 
+     * <p>As trees, structures are meant to be changed by one thread at a 
+     * time. Their fields are volatile so that indexes used by other threads
+     * see the changes.
+     */
+    private static final class Structure {
+        private volatile int version;
+
+        /**
+         * The structure this one has been merged into, or null.
+         */
+        private volatile Structure merged;
+
+        Structure find() {
+            Structure s = this;
+            while (s.merged != null) {
+                s = s.merged;
+            }
+            return s;
+        }
+
+        /**
+         * Merge this structure, which must not have been merged yet, into
+         * the given one, changing its version so that it differs from both
+         * the previous versions.
+         */
+        void mergeInto(Structure other) {
+            if (other != this) {
+                other.version = Math.max(version, other.version) + 1;
+                merged = other;
+            }
+        }
+    }
+
+    /**
+     * Walk the subtree having this node as root depth first, without 
+     * recursion.
+     * @param visitor the object to notify when entering and leaving nodes.
+     * @see TreeTraversal
+     */
+    public void accept(TreeMapVisitor visitor) {
+        TreeTraversal.walk(this, visitor);
     }
 
     /**
@@ -414,23 +1068,105 @@ public class TreeMapNode {
      * If this node has no color assigned then the START_COLOR is returned.
      */
     public Color getNextColor() {
-        if (this.color != null) {
+        return nextColor(this.color);
+    }
+
+    /**
+     * Returns the color which comes after the given one in the color list.
+     * @param color a color, can be null.
+     * @return the next color, or the first color of the list if the given 
+     * one is null or not in the list.
+     */
+    static Color nextColor(Color color) {
+        if (color != null) {
             for (int i = 0; i < colors.length; i++) {
-                if (this.color.equals(colors[i])) {
+                if (color.equals(colors[i])) {
                     return colors[(i + 1) % colors.length];
                 }
             }
         }
-        return START_COLOR;
+        return colors[0];
     }
 
 
+    /**
+     * @return the number of ancestors of this node, kept up to date when the
+     * tree's structure changes.
+     */
     public int getDepth() {
-        if (this.parent == null) {
-            return 0;
+        return depth;
+    }
+
+    /**
+     * Return the ancestor of this node at the given depth. The path of 
+     * ancestors is computed at the first call and kept until the tree's 
+     * structure changes, so other calls don't allocate.
+     * @param level the ancestor's depth, 0 for the root and 
+     * {@link #getDepth()} for this node.
+     * @return the ancestor.
+     */
+    public TreeMapNode getAncestor(int level) {
+        if (level < 0 || level > depth) {
+            throw new IndexOutOfBoundsException("level " + level + ", depth " + depth);
+        }
+        return path()[level];
+    }
+
+    /**
+     * @return a read only view of the nodes from the root to this one, 
+     * backed by the same path as {@link #getAncestor(int)}.
+     */
+    public List<TreeMapNode> getPath() {
+        final TreeMapNode[] nodes = path();
+        final int size = depth + 1;
+        return new AbstractList<TreeMapNode>() {
+            @Override
+            public TreeMapNode get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+                }
+                return nodes[index];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private TreeMapNode[] path() {
+        if (path == null) {
+            // compute the missing paths from the nearest ancestor having one
+            List<TreeMapNode> missing = new ArrayList<>();
+            for (TreeMapNode node = this; node != null && node.path == null; node = node.parent) {
+                missing.add(node);
+            }
+            for (int i = missing.size() - 1; i >= 0; i--) {
+                missing.get(i).claimPath();
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Compute this node's path from its parent's one.
+     */
+    private void claimPath() {
+        if (parent == null) {
+            path = new TreeMapNode[8];
+            path[0] = this;
+            return;
+        }
+        TreeMapNode[] nodes = parent.path;
+        if (depth < nodes.length && (nodes[depth] == null || nodes[depth] == this)) {
+            nodes[depth] = this;
         } else {
-            return 1 + parent.getDepth();
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length, depth + 8));
+            Arrays.fill(nodes, depth, nodes.length, null);
+            nodes[depth] = this;
         }
+        path = nodes;
     }
 
     /**
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class draws a tree already processed by {@link TreeProcessor} on a
+ * {@link Graphics2D} object, without instantiating any Swing component. 
+ * The result is the same as the one produced by the nested components of a 
+ * {@link TreeMapComponent}: nodes are placed and culled with the same rules 
+ * and each node is clipped to its ancestors' area.
+ * 
+ * <p>Drawing happens in two passes: rectangles and borders first, then 
+ * labels. Labels' measures come from a {@link LabelCache}.
+ */
+public class TreeMapRenderer {
+
+    /**
+     * Min size for rectangles' sides. Rectangles having one or both sides less
+     * or equal than MIN_SIDE pixels will be not drawn.
+     */
+    public static final int MIN_SIDE = 1;
+
+    /**
+     * Location and color of the labels inside rectangles.
+     */
+    public static final int LABEL_X = 5;
+    public static final int LABEL_Y = 1;
+    public static final Color LABEL_COLOR = Color.BLACK;
+
+    /**
+     * Colors used by etched borders.
+     */
+    private static final Color HIGHLIGHT = Color.white;
+    private static final Color SHADOW = Color.darkGray;
+
+    /**
+     * Colors of the highlight drawn over nodes by 
+     * {@link #paintHighlights(Graphics2D, TreeMapNode, Collection)}.
+     */
+    public static final Color HIGHLIGHT_FILL = new Color(255, 255, 0, 128);
+    public static final Color HIGHLIGHT_BORDER = new Color(255, 128, 0);
+
+    /**
+     * Font used to draw labels.
+     */
+    private final Font font;
+
+    /**
+     * Cache for labels' measures.
+     */
+    private final LabelCache labelCache;
+
+    /**
+     * The border style, one of {@link TreeMapComponent}'s UI constraints.
+     */
+    private int borderStyle = TreeMapComponent.ETCHED_LOWERED;
+
+    /**
+     * If false labels are not drawn.
+     */
+    private boolean drawLabels = true;
+
+    /**
+     * Constructor.
+     * @param font the font used for labels.
+     * @param labelCache the cache for labels' measures.
+     */
+    public TreeMapRenderer(Font font, LabelCache labelCache) {
+        this.font = Objects.requireNonNull(font);
+        this.labelCache = Objects.requireNonNull(labelCache);
+    }
+
+    public int getBorderStyle() {
+        return borderStyle;
+    }
+
+    /**
+     * Set the border style. Use {@link TreeMapComponent}'s static constraints.
+     * @param borderStyle the border style to use.
+     */
+    public void setBorderStyle(int borderStyle) {
+        this.borderStyle = borderStyle;
+    }
+
+    public boolean isDrawLabels() {
+        return drawLabels;
+    }
+
+    public void setDrawLabels(boolean drawLabels) {
+        this.drawLabels = drawLabels;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * Draw the given tree. Nodes outside the clip of the given graphics 
+     * object are skipped.
+     * @param g the graphics object on which to draw.
+     * @param root the root of a processed tree.
+     */
+    public void paint(Graphics2D g, TreeMapNode root) {
+        paint(g, null, root);
+    }
+
+    /**
+     * Draw the nodes shown by the given view, from the given root. Nodes 
+     * outside the clip of the given graphics object are skipped.
+     * @param g the graphics object on which to draw.
+     * @param view the view to draw, or null to draw all nodes.
+     * @param root the root of a processed tree, or a node of a processed 
+     * view.
+     */
+    public void paint(final Graphics2D g, TreeView view, TreeMapNode root) {
+        final Rectangle clip = g.getClipBounds();
+        final List<TreeMapNode> labelled = new ArrayList<>();
+        final List<Rectangle> labelBounds = new ArrayList<>();
+
+        visit(view, root, new Visitor() {
+            @Override
+            public void visit(TreeMapNode node, Rectangle bounds, Rectangle visible) {
+                if (clip != null && !clip.intersects(visible)) {
+                    return;
+                }
+                paintRectangle(g, node, bounds, visible);
+                if (drawLabels && node.hasLabel()) {
+                    labelled.add(node);
+                    labelBounds.add(visible);
+                }
+            }
+        });
+
+        // labels are built into one builder, not as strings
+        StringBuilder label = new StringBuilder();
+        for (int i = 0; i < labelled.size(); i++) {
+            label.setLength(0);
+            paintLabel(g, labelled.get(i).appendLabel(label), labelBounds.get(i));
+        }
+    }
+
+    /**
+     * Draw the nodes shown by the given view into the given image, as 
+     * {@link #paint(Graphics2D, TreeView, TreeMapNode)} does.
+     * @param img the image to draw into.
+     * @param view the view to draw, or null to draw all nodes.
+     * @param root the root of a processed tree, or a node of a processed 
+     * view.
+     */
+    public void paint(BufferedImage img, TreeView view, TreeMapNode root) {
+        Graphics2D g = img.createGraphics();
+        try {
+            paint(g, view, root);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Draw the given flat tree. Nodes outside the clip of the given graphics 
+     * object are skipped.
+     * @param g the graphics object on which to draw.
+     * @param tree a processed tree.
+     */
+    public void paint(final Graphics2D g, final FlatTree tree) {
+        final Rectangle clip = g.getClipBounds();
+        final List<String> labels = new ArrayList<>();
+        final List<Rectangle> labelBounds = new ArrayList<>();
+
+        visit(tree, new FlatVisitor() {
+            @Override
+            public void visit(int node, Rectangle bounds, Rectangle visible) {
+                if (clip != null && !clip.intersects(visible)) {
+                    return;
+                }
+                paintRectangle(g, tree.getColor(node), bounds, visible);
+                String label = tree.getLabel(node);
+                if (drawLabels && label != null && !label.isEmpty()) {
+                    labels.add(label);
+                    labelBounds.add(visible);
+                }
+            }
+        });
+
+        for (int i = 0; i < labels.size(); i++) {
+            paintLabel(g, labels.get(i), labelBounds.get(i));
+        }
+    }
+
+    /**
+     * Draw a highlight over the given nodes of a tree already drawn by 
+     * {@link #paint(Graphics2D, TreeMapNode)}, so they can be marked without
+     * laying out or drawing the tree again. Nodes outside the root's 
+     * subtree, culled or outside the clip of the given graphics object are 
+     * skipped.
+     * @param g the graphics object on which to draw.
+     * @param root the root of the drawn tree.
+     * @param nodes the nodes to highlight.
+     */
+    public void paintHighlights(Graphics2D g, TreeMapNode root, Collection<TreeMapNode> nodes) {
+        paintHighlights(g, null, root, nodes);
+    }
+
+    /**
+     * Draw a highlight over the given nodes of a view drawn by 
+     * {@link #paint(Graphics2D, TreeView, TreeMapNode)}, as 
+     * {@link #paintHighlights(Graphics2D, TreeMapNode, Collection)} does. 
+     * Nodes not shown by the view are skipped.
+     * @param view the drawn view, or null if all nodes were drawn.
+     */
+    public void paintHighlights(Graphics2D g, TreeView view, TreeMapNode root, 
+            Collection<TreeMapNode> nodes) {
+        Rectangle clip = g.getClipBounds();
+        for (TreeMapNode node : nodes) {
+            if (view != null && !view.contains(node)) {
+                continue;
+            }
+            Rectangle visible = getVisibleBounds(root, node);
+            if (visible == null || visible.isEmpty() || 
+                    (clip != null && !clip.intersects(visible))) {
+                continue;
+            }
+            g.setColor(HIGHLIGHT_FILL);
+            g.fillRect(visible.x, visible.y, visible.width, visible.height);
+            g.setColor(HIGHLIGHT_BORDER);
+            g.drawRect(visible.x, visible.y, visible.width - 1, visible.height - 1);
+        }
+    }
+
+    /**
+     * Calculate where the given node is drawn, placing its ancestors from 
+     * the root as {@link #visit(TreeMapNode, Visitor)} does. 
+     * @param root the root of a processed tree.
+     * @param node a node of the tree.
+     * @return the part of the node's bounds not clipped by the ancestors, in
+     * the root's coordinate space, or null if the node is not drawn.
+     */
+    static Rectangle getVisibleBounds(TreeMapNode root, TreeMapNode node) {
+        int base = root.getDepth();
+        if (node.getDepth() < base || node.getAncestor(base) != root) {
+            return null;
+        }
+        Rectangle bounds = root.getRectangle().getBounds();
+        Rectangle visible = new Rectangle(bounds);
+        for (int level = base + 1; level <= node.getDepth(); level++) {
+            bounds = place(node.getAncestor(level), bounds);
+            if (bounds == null) {
+                return null;
+            }
+            visible = bounds.intersection(visible);
+        }
+        return visible;
+    }
+
+    /**
+     * Fill the node's rectangle and draw its border.
+     * @param g the graphics object on which to draw.
+     * @param node the node to draw.
+     * @param bounds the node's bounds.
+     * @param visible the part of the bounds not clipped by ancestors.
+     */
+    void paintRectangle(Graphics2D g, TreeMapNode node, Rectangle bounds, Rectangle visible) {
+        paintRectangle(g, node.getColor(), bounds, visible);
+    }
+
+    /**
+     * Fill a rectangle with the given color and draw its border.
+     * @param g the graphics object on which to draw.
+     * @param color the fill color, can be null.
+     * @param bounds the rectangle's bounds.
+     * @param visible the part of the bounds not clipped by ancestors.
+     */
+    void paintRectangle(Graphics2D g, Color color, Rectangle bounds, Rectangle visible) {
+        if (color != null) {
+            g.setColor(color);
+            g.fillRect(visible.x, visible.y, visible.width, visible.height);
+        }
+        if (borderStyle == TreeMapComponent.FLAT) {
+            return;
+        }
+
+        boolean clipped = !visible.equals(bounds);
+        Shape oldClip = null;
+        if (clipped) {
+            oldClip = g.getClip();
+            g.clipRect(visible.x, visible.y, visible.width, visible.height);
+        }
+        paintBorder(g, bounds.x, bounds.y, bounds.width, bounds.height);
+        if (clipped) {
+            g.setClip(oldClip);
+        }
+    }
+
+    /**
+     * Draw a border as Swing's {@link javax.swing.border.LineBorder} and 
+     * {@link javax.swing.border.EtchedBorder} would do.
+     */
+    private void paintBorder(Graphics2D g, int x, int y, int w, int h) {
+        switch (borderStyle) {
+            case TreeMapComponent.ETCHED_LOWERED :
+            case TreeMapComponent.ETCHED_RAISED : {
+                boolean lowered = borderStyle == TreeMapComponent.ETCHED_LOWERED;
+                g.setColor(lowered ? SHADOW : HIGHLIGHT);
+                g.drawRect(x, y, w - 2, h - 2);
+                g.setColor(lowered ? HIGHLIGHT : SHADOW);
+                g.drawLine(x + 1, y + h - 3, x + 1, y + 1);
+                g.drawLine(x + 1, y + 1, x + w - 3, y + 1);
+                g.drawLine(x, y + h - 1, x + w - 1, y + h - 1);
+                g.drawLine(x + w - 1, y + h - 1, x + w - 1, y);
+                break;
+            }
+            default : {
+                g.setColor(Color.black);
+                g.drawRect(x, y, w - 1, h - 1);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Draw the given label inside the given area, truncated to fit its width.
+     */
+    void paintLabel(Graphics2D g, CharSequence label, Rectangle area) {
+        Rectangle fontArea = labelCache.getBounds(label, font);
+        if (area.height <= fontArea.height) {
+            return;
+        }
+        GlyphVector glyphs = labelCache.getFitGlyphVector(label, font, area.width - LABEL_X);
+        if (glyphs != null) {
+            // truncated labels share the whole label's baseline
+            g.setColor(LABEL_COLOR);
+            g.drawGlyphVector(glyphs, area.x + LABEL_X, area.y + LABEL_Y - fontArea.y);
+        }
+    }
+
+    /**
+     * Visit in pre-order the drawable nodes of the given processed tree, 
+     * computing their location in the root's coordinate space. 
+     * 
+     * <p>Nodes are placed and culled as {@link TreeMapComponent} does: a node
+     * is shown if its sides are greater than {@link #MIN_SIDE} and its 
+     * parent is large enough to contain it together with the padding. The 
+     * children of a node not shown are not visited.
+     * 
+     * @param root the root of a processed tree.
+     * @param visitor the object to notify for each node.
+     */
+    public static void visit(TreeMapNode root, Visitor visitor) {
+        visit(null, root, visitor);
+    }
+
+    /**
+     * Visit the drawable nodes shown by the given view, as 
+     * {@link #visit(TreeMapNode, Visitor)} does.
+     * @param view the processed view, or null to visit all nodes.
+     * @param root the node from which to visit.
+     * @param visitor the object to notify for each node.
+     */
+    public static void visit(TreeView view, TreeMapNode root, final Visitor visitor) {
+        // bounds and visible parts of the nodes from the root to the current one
+        final List<Rectangle> parents = new ArrayList<>();
+        final List<Rectangle> visibles = new ArrayList<>();
+        TreeTraversal.walk(root, new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                Rectangle bounds;
+                Rectangle visible;
+                if (depth == 0) {
+                    bounds = node.getRectangle().getBounds();
+                    visible = new Rectangle(bounds);
+                } else {
+                    bounds = place(node, parents.get(depth - 1));
+                    if (bounds == null) {
+                        return Result.SKIP_CHILDREN;
+                    }
+                    visible = bounds.intersection(visibles.get(depth - 1));
+                }
+                visitor.visit(node, bounds, visible);
+                parents.add(bounds);
+                visibles.add(visible);
+                return Result.CONTINUE;
+            }
+
+            @Override
+            public Result leave(TreeMapNode node, int depth) {
+                parents.remove(depth);
+                visibles.remove(depth);
+                return Result.CONTINUE;
+            }
+        }, view);
+    }
+
+    /**
+     * Visit the drawable nodes of the given processed flat tree, as 
+     * {@link #visit(TreeMapNode, Visitor)} does. The tree is walked with an
+     * explicit stack, so it can be arbitrarily deep.
+     * 
+     * @param tree a processed tree.
+     * @param visitor the object to notify for each node.
+     */
+    public static void visit(FlatTree tree, FlatVisitor visitor) {
+        int root = tree.getRoot();
+        if (root == FlatTree.NONE) {
+            return;
+        }
+        Rectangle bounds = tree.getRectangle(root).getBounds();
+        visitor.visit(root, bounds, new Rectangle(bounds));
+
+        int[] stack = new int[64];
+        Rectangle[] parents = new Rectangle[64];
+        Rectangle[] parentsVisible = new Rectangle[64];
+        int top = push(tree, root, bounds, bounds, stack, parents, parentsVisible, 0);
+        while (top > 0) {
+            top--;
+            int node = stack[top];
+            Rectangle parentVisible = parentsVisible[top];
+            bounds = place(tree, node, parents[top]);
+            if (bounds == null) {
+                continue;
+            }
+            Rectangle visible = bounds.intersection(parentVisible);
+            visitor.visit(node, bounds, visible);
+            if (top + tree.getChildCount(node) > stack.length) {
+                int capacity = Math.max(stack.length * 2, top + tree.getChildCount(node));
+                stack = Arrays.copyOf(stack, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                parentsVisible = Arrays.copyOf(parentsVisible, capacity);
+            }
+            top = push(tree, node, bounds, visible, stack, parents, parentsVisible, top);
+        }
+    }
+
+    /**
+     * Push the node's children in reverse order, so they are visited in 
+     * order.
+     * @return the new top of the stack.
+     */
+    private static int push(FlatTree tree, int node, Rectangle bounds, Rectangle visible, 
+            int[] stack, Rectangle[] parents, Rectangle[] parentsVisible, int top) {
+        int count = tree.getChildCount(node);
+        int i = top + count;
+        for (int c = tree.getFirstChild(node); c != FlatTree.NONE; c = tree.getNextSibling(c)) {
+            i--;
+            stack[i] = c;
+            parents[i] = bounds;
+            parentsVisible[i] = visible;
+        }
+        return top + count;
+    }
+
+    /**
+     * Calculate the bounds of the given node inside its parent.
+     * @param node the node to place.
+     * @param parent the bounds of the parent node.
+     * @return the node's bounds, or null if the node is not drawable.
+     */
+    static Rectangle place(TreeMapNode node, Rectangle parent) {
+        return place(node.getRectangle(), parent);
+    }
+
+    /**
+     * Calculate the bounds of the given node of a flat tree inside its 
+     * parent.
+     * @return the node's bounds, or null if the node is not drawable.
+     */
+    static Rectangle place(FlatTree tree, int node, Rectangle parent) {
+        return place(tree.getRectangle(node), parent);
+    }
+
+    private static Rectangle place(Rectangle2D.Double rect, Rectangle parent) {
+        if (parent.width <= rect.width + TreeProcessor.X_PADDING || 
+                parent.height <= rect.height + TreeProcessor.Y_PADDING) {
+            return null;
+        }
+        if (rect.width <= MIN_SIDE || rect.height <= MIN_SIDE) {
+            return null;
+        }
+        Rectangle bounds = rect.getBounds();
+        bounds.x += parent.x + TreeProcessor.X_PADDING;
+        bounds.y += parent.y + TreeProcessor.Y_PADDING;
+        return bounds;
+    }
+
+    /**
+     * This interface is used to be notified about the nodes drawn by a 
+     * renderer.
+     */
+    public interface Visitor {
+
+        /**
+         * Invoked for each drawable node.
+         * @param node the node.
+         * @param bounds the node's bounds in the root's coordinate space.
+         * @param visible the part of the bounds not clipped by the ancestors.
+         */
+        void visit(TreeMapNode node, Rectangle bounds, Rectangle visible);
+    }
+
+    /**
+     * This interface is used to be notified about the nodes of a 
+     * {@link FlatTree} drawn by a renderer.
+     */
+    public interface FlatVisitor {
+
+        /**
+         * Invoked for each drawable node.
+         * @param node the node's index.
+         * @param bounds the node's bounds in the root's coordinate space.
+         * @param visible the part of the bounds not clipped by the ancestors.
+         */
+        void visit(int node, Rectangle bounds, Rectangle visible);
+    }
+}
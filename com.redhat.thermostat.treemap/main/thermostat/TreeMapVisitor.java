@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+/**
+ * This class is notified by {@link TreeTraversal#walk(TreeMapNode, TreeMapVisitor)}
+ * when a depth first traversal enters and leaves each node of a tree. Both
+ * callbacks can prune the traversal: by default, all nodes are visited.
+ */
+public abstract class TreeMapVisitor {
+
+    /**
+     * What the traversal has to do after a callback.
+     */
+    public enum Result {
+        /**
+         * Go on with the traversal.
+         */
+        CONTINUE,
+        /**
+         * Don't visit the children of the node just entered. The node is not
+         * left either.
+         */
+        SKIP_CHILDREN,
+        /**
+         * Stop the traversal.
+         */
+        STOP
+    }
+
+    /**
+     * Called before visiting the node's children. The children are read 
+     * after this call, so they can be changed here.
+     * @param node the node entered.
+     * @param depth the node's depth from the traversal's root.
+     * @return what to do next.
+     */
+    public Result enter(TreeMapNode node, int depth) {
+        return Result.CONTINUE;
+    }
+
+    /**
+     * Called after visiting the node's children.
+     * @param node the node left.
+     * @param depth the node's depth from the traversal's root.
+     * @return what to do next. {@link Result#SKIP_CHILDREN} is the same as
+     * {@link Result#CONTINUE}.
+     */
+    public Result leave(TreeMapNode node, int depth) {
+        return Result.CONTINUE;
+    }
+}
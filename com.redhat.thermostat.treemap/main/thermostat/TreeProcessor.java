@@ -38,6 +38,8 @@ package thermostat;
 
 import java.awt.Color;
 import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 public class TreeProcessor {
@@ -63,35 +65,182 @@ public class TreeProcessor {
             tree.setColor(tree.START_COLOR);
         }
         
-        process(tree);
+        Object event = TreeMapEvents.beginLayout();
+        TreeMapMetrics metrics = TreeMapMetrics.getInstance();
+        TreeMapMetrics.LayoutSample sample = metrics.startLayout(event != null);
+        if (sample != null) {
+            sample.placed++;
+        }
+        process(tree, null, sample);
+        metrics.endLayout(sample);
+        TreeMapEvents.commitLayout(event, sample, area);
+        return tree;
+    }
+
+    /**
+     * This method processes the nodes shown by the given view as 
+     * {@link #processTreeMap(TreeMapNode, Rectangle2D.Double)} does, giving 
+     * to each node a rectangle proportional to its weight in the view. 
+     * Nodes' children lists and real weights are left as they are, so 
+     * switching view doesn't change the tree.
+     * @param view the view to lay out.
+     * @param root the node of the view to lay out in the given area, the 
+     * view's root or one of its shown nodes.
+     * @return the root.
+     */
+    public static TreeMapNode processTreeMap(TreeView view, TreeMapNode root, 
+            Rectangle2D.Double area) {
+        Objects.requireNonNull(view);
+        Objects.requireNonNull(root);
+        Objects.requireNonNull(area);
+        root.setRectangle(area);
+        if (root.getColor() == null) {
+            root.setColor(root.START_COLOR);
+        }
+
+        Object event = TreeMapEvents.beginLayout();
+        TreeMapMetrics metrics = TreeMapMetrics.getInstance();
+        TreeMapMetrics.LayoutSample sample = metrics.startLayout(event != null);
+        if (sample != null) {
+            sample.placed++;
+        }
+        process(root, view, sample);
+        metrics.endLayout(sample);
+        TreeMapEvents.commitLayout(event, sample, area);
+        return root;
+    }
+
+    /**
+     * This method processes the tree as 
+     * {@link #processTreeMap(TreeMapNode, Rectangle2D.Double)} does, using
+     * as weights the values of the given attribute, like the number of 
+     * instances instead of the size of classes. Leaves are weighted by the
+     * absolute value of their attribute, so that changes can be shown, and 
+     * inner nodes by the sum of their children. Nodes' weights and children
+     * lists are left as they are: the tree is laid out through a 
+     * {@link TreeView} showing all its leaves.
+     * @param metric the slot of the attribute to use as weight, in the 
+     * tree's {@link AttributeSchema}, or {@link AttributeSchema#NONE} to 
+     * use nodes' real weights.
+     * @return the updated tree.
+     * @see LayoutCache
+     */
+    public static TreeMapNode processTreeMap(TreeMapNode tree, Rectangle2D.Double area,
+            int metric) {
+        Objects.requireNonNull(tree);
+        if (metric == AttributeSchema.NONE) {
+            return processTreeMap(tree, area);
+        }
+        return processTreeMap(new TreeView(tree, TreeView.all(), metric), tree, area);
+    }
+
+    /**
+     * This method processes a {@link FlatTree} as 
+     * {@link #processTreeMap(TreeMapNode, Rectangle2D.Double)} does, giving
+     * the same rectangles, colors and children order. The tree is walked 
+     * with an explicit stack, so it can be arbitrarily deep. Unlike the
+     * node version, the weights normalized to the area are only kept while
+     * laying out, so the tree's weights are left unchanged and it can be 
+     * laid out again with the same result.
+     * @return the updated tree.
+     */
+    public static FlatTree processTreeMap(FlatTree tree, Rectangle2D.Double area) {
+        Objects.requireNonNull(tree);
+        Objects.requireNonNull(area);
+        if (tree.size() == 0) {
+            return tree;
+        }
+        int root = tree.getRoot();
+        tree.setRectangle(root, area.x, area.y, area.width, area.height);
+        if (tree.getColor(root) == null) {
+            tree.setColor(root, TreeMapNode.colors[0]);
+        }
+
+        Object event = TreeMapEvents.beginLayout();
+        TreeMapMetrics metrics = TreeMapMetrics.getInstance();
+        TreeMapMetrics.LayoutSample sample = metrics.startLayout(event != null);
+        if (sample != null) {
+            sample.placed++;
+        }
+        new FlatLayout(tree, sample).process(root);
+        metrics.endLayout(sample);
+        TreeMapEvents.commitLayout(event, sample, area);
         return tree;
     }
 
     /**
      * This method is used to effectively process the whole tree structure. It
      * uses a {@link SquarifiedTreeMap} object to calculate a TreeMap for each
-     * node who has children.
-     * @param node the subtree's root to process
+     * node who has children. The tree is walked without recursion.
+     * @param tree the subtree's root to process
+     * @param view the view showing the tree, or null to process all nodes.
+     * @param sample where to record metrics, can be null.
      */
-    private static void process(TreeMapNode node) {                                                                                                                            
-        
-        SquarifiedTreeMap algorithm = new SquarifiedTreeMap(getSubArea(node.getRectangle()), node.getChildren());
-        node.setChildren(algorithm.squarify());
+    private static void process(TreeMapNode tree, final TreeView view, 
+            final TreeMapMetrics.LayoutSample sample) {
+        TreeTraversal.walk(tree, new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                // if squarified rectangles have drawable sides then continue to 
+                // process, else don't process the subtree having as root a 
+                // non drawable rectangle.
+                if (depth > 0 && !node.isDrawable()) {
+                    if (sample != null) {
+                        sample.culled++;
+                    }
+                    return Result.SKIP_CHILDREN;
+                }
 
-        Color c = node.getNextColor();
-        
-        for (TreeMapNode child : node.getChildren()) {
-            //children will have all the same color, which is the parent's next one
-            if (child.getColor() == null) {
-                child.setColor(c);
+                List<TreeMapNode> children;
+                if (view == null) {
+                    SquarifiedTreeMap algorithm = new SquarifiedTreeMap(
+                            getSubArea(node.getRectangle()), node.getChildren());
+                    node.setChildrenOrder(algorithm.squarify(sample));
+                    children = node.getChildren();
+                } else {
+                    children = squarify(node, view, sample);
+                }
+                if (sample != null) {
+                    sample.visited++;
+                    sample.placed += children.size();
+                    sample.depth = Math.max(sample.depth, depth);
+                }
+
+                Color c = node.getNextColor();
+                for (TreeMapNode child : children) {
+                    //children will have all the same color, which is the parent's next one
+                    if (child.getColor() == null) {
+                        child.setColor(c);
+                    }
+                }
+                return Result.CONTINUE;
             }
-            // if squarified rectangles have drawable sides then continue to 
-            // process, else don't process the subtree having as root a 
-            // non drawable rectangle.
-            if (child.isDrawable()) {
-                process(child);
-            } 
+        }, view);
+    }
+
+    /**
+     * Calculate the rectangles of the children of the given node shown by 
+     * the view, weighted as in the view. Only rectangles are stored into the
+     * nodes: the weights stay in the view.
+     * @return the shown children, heaviest first.
+     */
+    private static List<TreeMapNode> squarify(TreeMapNode node, TreeView view, 
+            TreeMapMetrics.LayoutSample sample) {
+        List<TreeMapNode> children = view.getChildren(node);
+        int count = children.size();
+        double[] w = new double[count];
+        double[] r = new double[4 * count];
+        for (int i = 0; i < count; i++) {
+            w[i] = view.getWeight(children.get(i));
         }
+        new SquarifiedTreeMap(getSubArea(node.getRectangle())).squarify(w, count, r, sample);
+        for (int i = 0; i < count; i++) {
+            TreeMapNode child = children.get(i);
+            child.setRectangle(new Rectangle2D.Double(r[4 * i + SquarifiedTreeMap.X], 
+                    r[4 * i + SquarifiedTreeMap.Y], r[4 * i + SquarifiedTreeMap.W], 
+                    r[4 * i + SquarifiedTreeMap.H]));
+        }
+        return children;
     }
 
     /**
@@ -107,4 +256,143 @@ public class TreeProcessor {
         subArea.height = Math.max(0, (subArea.height - 1.5 * Y_PADDING));
         return subArea;
     }  
+
+    /**
+     * Lays out a {@link FlatTree}, reusing the same buffers for all nodes.
+     */
+    private static final class FlatLayout {
+        private final FlatTree tree;
+        private final TreeMapMetrics.LayoutSample sample;
+
+        private int[] stack = new int[64];
+        private int[] depths = new int[64];
+
+        /**
+         * A node's children and their weights, sorted by weight, and their
+         * rectangles. The weights are normalized here by the squarifier, 
+         * and never written back to the tree.
+         */
+        private int[] order = new int[16];
+        private double[] weights = new double[16];
+        private int[] orderTmp = new int[16];
+        private double[] weightsTmp = new double[16];
+        private double[] rects = new double[64];
+
+        FlatLayout(FlatTree tree, TreeMapMetrics.LayoutSample sample) {
+            this.tree = tree;
+            this.sample = sample;
+        }
+
+        void process(int root) {
+            int top = 0;
+            stack[top] = root;
+            depths[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                int depth = depths[top];
+                int count = layoutChildren(node);
+                if (sample != null) {
+                    sample.visited++;
+                    sample.placed += count;
+                    sample.depth = Math.max(sample.depth, depth);
+                }
+
+                //children will have all the same color, which is the parent's next one
+                Color c = TreeMapNode.nextColor(tree.getColor(node));
+                if (top + count > stack.length) {
+                    int capacity = Math.max(stack.length * 2, top + count);
+                    stack = Arrays.copyOf(stack, capacity);
+                    depths = Arrays.copyOf(depths, capacity);
+                }
+                // push in reverse order, so children are processed in order
+                for (int i = count - 1; i >= 0; i--) {
+                    int child = order[i];
+                    if (tree.getColor(child) == null) {
+                        tree.setColor(child, c);
+                    }
+                    if (tree.isDrawable(child)) {
+                        stack[top] = child;
+                        depths[top++] = depth + 1;
+                    } else if (sample != null) {
+                        sample.culled++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Calculate the rectangles of the node's children, and sort them by
+         * weight.
+         * @return the number of children.
+         */
+        private int layoutChildren(int node) {
+            int count = tree.getChildCount(node);
+            if (count == 0) {
+                return 0;
+            }
+            if (count > order.length) {
+                int capacity = Math.max(order.length * 2, count);
+                order = new int[capacity];
+                weights = new double[capacity];
+                orderTmp = new int[capacity];
+                weightsTmp = new double[capacity];
+                rects = new double[4 * capacity];
+            }
+            int i = 0;
+            for (int c = tree.getFirstChild(node); c != FlatTree.NONE; c = tree.getNextSibling(c)) {
+                order[i] = c;
+                weights[i++] = tree.getWeight(c);
+            }
+
+            long start = sample == null ? 0 : System.nanoTime();
+            sort(count);
+            tree.setChildrenOrder(node, order, count);
+            if (sample != null) {
+                sample.sortTime += System.nanoTime() - start;
+            }
+
+            Rectangle2D.Double area = getSubArea(tree.getRectangle(node));
+            new SquarifiedTreeMap(area).squarify(weights, count, rects, sample);
+            for (i = 0; i < count; i++) {
+                int r = 4 * i;
+                tree.setRectangle(order[i], rects[r + SquarifiedTreeMap.X], 
+                        rects[r + SquarifiedTreeMap.Y], rects[r + SquarifiedTreeMap.W], 
+                        rects[r + SquarifiedTreeMap.H]);
+            }
+            return count;
+        }
+
+        /**
+         * Stable merge sort of the children by descending weight, as 
+         * {@link TreeMapNode#sort(java.util.List)} does.
+         */
+        private void sort(int count) {
+            for (int width = 1; width < count; width *= 2) {
+                for (int lo = 0; lo < count - width; lo += 2 * width) {
+                    merge(lo, lo + width, Math.min(lo + 2 * width, count));
+                }
+            }
+        }
+
+        private void merge(int lo, int mid, int hi) {
+            if (Double.compare(weights[mid - 1], weights[mid]) >= 0) {
+                // already in order
+                return;
+            }
+            System.arraycopy(order, lo, orderTmp, lo, hi - lo);
+            System.arraycopy(weights, lo, weightsTmp, lo, hi - lo);
+            int i = lo;
+            int j = mid;
+            for (int k = lo; k < hi; k++) {
+                // take from the right only if strictly heavier, for stability
+                if (j < hi && (i >= mid || Double.compare(weightsTmp[j], weightsTmp[i]) > 0)) {
+                    order[k] = orderTmp[j];
+                    weights[k] = weightsTmp[j++];
+                } else {
+                    order[k] = orderTmp[i];
+                    weights[k] = weightsTmp[i++];
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.io.Closeable;
+
+/**
+ * This interface abstracts the memory in which a {@link FlatTree} stores its
+ * nodes and the pools of labels and colors. Each node has a fixed number of
+ * int and double fields, identified by the constants of this interface.
+ * 
+ * @see HeapTreeStorage
+ * @see BufferTreeStorage
+ */
+interface TreeStorage extends Closeable {
+
+    /**
+     * Int fields of nodes.
+     */
+    int PARENT = 0;
+    int FIRST_CHILD = 1;
+    int LAST_CHILD = 2;
+    int NEXT_SIBLING = 3;
+    int CHILD_COUNT = 4;
+    int LABEL = 5;
+    int COLOR = 6;
+    int INT_FIELDS = 7;
+
+    /**
+     * Double fields of nodes.
+     */
+    int REAL_WEIGHT = 0;
+    int WEIGHT = 1;
+    int X = 2;
+    int Y = 3;
+    int WIDTH = 4;
+    int HEIGHT = 5;
+    int DOUBLE_FIELDS = 6;
+
+    int getSize();
+
+    void setSize(int size);
+
+    int getCapacity();
+
+    /**
+     * Make room for at least the given number of nodes, keeping the stored
+     * ones.
+     */
+    void ensureCapacity(int capacity);
+
+    int getInt(int node, int field);
+
+    void setInt(int node, int field, int value);
+
+    double getDouble(int node, int field);
+
+    void setDouble(int node, int field, double value);
+
+    int getLabelCount();
+
+    String getLabel(int id);
+
+    /**
+     * Add a label to the pool, its id is the previous labels count.
+     */
+    void addLabel(String label);
+
+    int getColorCount();
+
+    /**
+     * @return the ARGB value of the color with the given id.
+     */
+    int getColor(int id);
+
+    /**
+     * Add a color to the pool, its id is the previous colors count.
+     */
+    void addColor(int argb);
+
+    /**
+     * Write pending changes to the backing store, if any.
+     */
+    void flush();
+
+    /**
+     * Flush and release the storage. The tree can't be used anymore.
+     */
+    @Override
+    void close();
+}
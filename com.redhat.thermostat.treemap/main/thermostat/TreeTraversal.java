@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class provides traversals of {@link TreeMapNode} trees which don't use
+ * recursion, so trees of any depth can be walked without exhausting the 
+ * stack: a visitor based depth first walk, and pre-order, post-order and
+ * breadth first iterators.
+ * 
+ * <p>Nodes' children are read when the traversal reaches them, so a visitor
+ * entering a node, or the user of a pre-order iterator, can change the 
+ * children of the current node. Other changes of the tree during a traversal
+ * have undefined results.
+ */
+public final class TreeTraversal {
+
+    private TreeTraversal() {
+        // static methods only
+    }
+
+    /**
+     * Walk the tree depth first, notifying the visitor when entering and 
+     * leaving each node.
+     * @param root the traversal's root.
+     * @param visitor the object to notify.
+     */
+    public static void walk(TreeMapNode root, TreeMapVisitor visitor) {
+        walk(root, visitor, null);
+    }
+
+    /**
+     * Walk the tree as {@link #walk(TreeMapNode, TreeMapVisitor)} does, 
+     * reading the children of nodes from the given view.
+     * @param view the view showing the tree, or null to walk all nodes.
+     */
+    static void walk(TreeMapNode root, TreeMapVisitor visitor, TreeView view) {
+        TreeMapVisitor.Result result = visitor.enter(root, 0);
+        if (result != TreeMapVisitor.Result.CONTINUE) {
+            return;
+        }
+        // path from the root to the current node, with the index of the next
+        // child to visit of each node
+        List<TreeMapNode> path = new ArrayList<>();
+        int[] next = new int[16];
+        path.add(root);
+        while (!path.isEmpty()) {
+            int top = path.size() - 1;
+            TreeMapNode node = path.get(top);
+            List<TreeMapNode> children = view == null ? node.getChildren() : view.getChildren(node);
+            if (next[top] < children.size()) {
+                TreeMapNode child = children.get(next[top]++);
+                result = visitor.enter(child, top + 1);
+                if (result == TreeMapVisitor.Result.STOP) {
+                    return;
+                }
+                if (result == TreeMapVisitor.Result.CONTINUE) {
+                    if (top + 1 == next.length) {
+                        next = Arrays.copyOf(next, 2 * next.length);
+                    }
+                    next[top + 1] = 0;
+                    path.add(child);
+                }
+            } else {
+                path.remove(top);
+                if (visitor.leave(node, top) == TreeMapVisitor.Result.STOP) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the nodes of the tree in pre-order: each node comes before its
+     * children. The returned iterators are {@link PreOrder} instances.
+     */
+    public static Iterable<TreeMapNode> preOrder(final TreeMapNode root) {
+        return new Iterable<TreeMapNode>() {
+            @Override
+            public Iterator<TreeMapNode> iterator() {
+                return new PreOrder(root);
+            }
+        };
+    }
+
+    /**
+     * @return the nodes of the tree in post-order: each node comes after its
+     * children.
+     */
+    public static Iterable<TreeMapNode> postOrder(final TreeMapNode root) {
+        return new Iterable<TreeMapNode>() {
+            @Override
+            public Iterator<TreeMapNode> iterator() {
+                return new PostOrder(root);
+            }
+        };
+    }
+
+    /**
+     * @return the nodes of the tree level by level.
+     */
+    public static Iterable<TreeMapNode> breadthFirst(final TreeMapNode root) {
+        return new Iterable<TreeMapNode>() {
+            @Override
+            public Iterator<TreeMapNode> iterator() {
+                return new BreadthFirst(root);
+            }
+        };
+    }
+
+    /**
+     * Pre-order iterator. The children of the last returned node are read
+     * when moving to the next one, and can be skipped.
+     */
+    public static final class PreOrder implements Iterator<TreeMapNode> {
+        private final List<TreeMapNode> stack = new ArrayList<>();
+        private TreeMapNode last;
+
+        public PreOrder(TreeMapNode root) {
+            stack.add(root);
+        }
+
+        /**
+         * Don't visit the children of the last returned node.
+         */
+        public void skipChildren() {
+            last = null;
+        }
+
+        private void expand() {
+            if (last != null) {
+                // push in reverse order, so the first child is visited first
+                List<TreeMapNode> children = last.getChildren();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.add(children.get(i));
+                }
+                last = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            expand();
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public TreeMapNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = stack.remove(stack.size() - 1);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Post-order iterator.
+     */
+    private static final class PostOrder implements Iterator<TreeMapNode> {
+        private final List<TreeMapNode> path = new ArrayList<>();
+        private int[] next = new int[16];
+
+        PostOrder(TreeMapNode root) {
+            path.add(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public TreeMapNode next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            while (true) {
+                int top = path.size() - 1;
+                TreeMapNode node = path.get(top);
+                List<TreeMapNode> children = node.getChildren();
+                if (next[top] < children.size()) {
+                    if (top + 1 == next.length) {
+                        next = Arrays.copyOf(next, 2 * next.length);
+                    }
+                    path.add(children.get(next[top]++));
+                    next[top + 1] = 0;
+                } else {
+                    path.remove(top);
+                    return node;
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Breadth first iterator.
+     */
+    private static final class BreadthFirst implements Iterator<TreeMapNode> {
+        private final ArrayDeque<TreeMapNode> queue = new ArrayDeque<>();
+
+        BreadthFirst(TreeMapNode root) {
+            queue.add(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public TreeMapNode next() {
+            TreeMapNode node = queue.remove();
+            queue.addAll(node.getChildren());
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
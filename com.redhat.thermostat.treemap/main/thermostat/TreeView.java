@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class shows a tree as if it held only the leaves accepted by a 
+ * {@link Filter}, together with their ancestors, without copying it. Inner
+ * nodes are weighted by the sum of the weights of their accepted leaves.
+ * 
+ * <p>Nothing is computed when the view is created: the weight of a subtree 
+ * is computed and kept the first time it is needed, as are the accepted 
+ * children of a node, sorted by weight. So a view of a large tree costs in 
+ * proportion to the part of it which is laid out and drawn.
+ * 
+ * <p>Views are laid out by 
+ * {@link TreeProcessor#processTreeMap(TreeView, TreeMapNode, java.awt.geom.Rectangle2D.Double)}
+ * and drawn by {@link TreeMapRenderer} and {@link TreeMapComponent}, which 
+ * store rectangles into the nodes as they do for whole trees.
+ * 
+ * <p>As {@link NameIndex} does, the view follows the changes of the tree's 
+ * structure. Call {@link #invalidate()} after changing nodes' weights or 
+ * attributes.
+ */
+public class TreeView {
+
+    /**
+     * This interface selects the leaves shown by a view.
+     */
+    public interface Filter {
+
+        /**
+         * @param leaf a node without children.
+         * @return true if the leaf is shown.
+         */
+        boolean accept(TreeMapNode leaf);
+    }
+
+    private final TreeMapNode root;
+    private final Filter filter;
+    private final int metric;
+
+    /**
+     * The measured nodes.
+     */
+    private final Map<TreeMapNode, Entry> entries = new IdentityHashMap<>();
+
+    private int version;
+
+    /**
+     * Constructor. Leaves are weighted by their real weight.
+     * @param root the root of the tree to show.
+     * @param filter the filter of the leaves.
+     */
+    public TreeView(TreeMapNode root, Filter filter) {
+        this(root, filter, AttributeSchema.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param root the root of the tree to show.
+     * @param filter the filter of the leaves.
+     * @param metric the slot of the attribute weighting leaves, as in 
+     * {@link TreeProcessor#processTreeMap(TreeMapNode, java.awt.geom.Rectangle2D.Double, int)},
+     * or {@link AttributeSchema#NONE} to weight them by their real weight.
+     */
+    public TreeView(TreeMapNode root, Filter filter, int metric) {
+        this.root = Objects.requireNonNull(root);
+        this.filter = Objects.requireNonNull(filter);
+        this.metric = metric;
+        this.version = root.getStructureVersion();
+    }
+
+    /**
+     * @return the root of the shown tree.
+     */
+    public TreeMapNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the filter of the leaves.
+     */
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return true if the given node, which must belong to the root's tree,
+     * is an accepted leaf or has accepted leaves.
+     */
+    public boolean contains(TreeMapNode node) {
+        return entry(node).contains;
+    }
+
+    /**
+     * @return the sum of the weights of the accepted leaves of the given 
+     * node, which must belong to the root's tree.
+     */
+    public double getWeight(TreeMapNode node) {
+        return entry(node).weight;
+    }
+
+    /**
+     * @return a read only list of the children of the given node having 
+     * accepted leaves, sorted by descending weight.
+     */
+    public List<TreeMapNode> getChildren(TreeMapNode node) {
+        Entry entry = entry(node);
+        if (entry.children == null) {
+            List<TreeMapNode> children = new ArrayList<>();
+            for (TreeMapNode child : node.getChildren()) {
+                if (entries.get(child).contains) {
+                    children.add(child);
+                }
+            }
+            Collections.sort(children, new Comparator<TreeMapNode>() {
+                @Override
+                public int compare(TreeMapNode o1, TreeMapNode o2) {
+                    return -(Double.compare(entries.get(o1).weight, entries.get(o2).weight));
+                }
+            });
+            entry.children = Collections.unmodifiableList(children);
+        }
+        return entry.children;
+    }
+
+    /**
+     * Walk the shown nodes of the subtree having the given root depth first,
+     * as {@link TreeMapNode#accept(TreeMapVisitor)} does. Depths are 
+     * relative to the given node.
+     * @param node the subtree's root.
+     * @param visitor the object to notify.
+     */
+    public void accept(TreeMapNode node, TreeMapVisitor visitor) {
+        TreeTraversal.walk(node, visitor, this);
+    }
+
+    /**
+     * Forget the computed weights and children, so they are computed again
+     * from the current state of the tree.
+     */
+    public void invalidate() {
+        entries.clear();
+        version = root.getStructureVersion();
+    }
+
+    /**
+     * @return the entry of the given node, measuring its subtree if needed.
+     */
+    private Entry entry(TreeMapNode node) {
+        if (version != root.getStructureVersion()) {
+            invalidate();
+        }
+        Entry entry = entries.get(node);
+        if (entry != null) {
+            return entry;
+        }
+        // nodes not measured yet, parents before children
+        List<TreeMapNode> pending = new ArrayList<>();
+        TreeTraversal.PreOrder nodes = new TreeTraversal.PreOrder(node);
+        while (nodes.hasNext()) {
+            TreeMapNode n = nodes.next();
+            if (entries.containsKey(n)) {
+                nodes.skipChildren();
+            } else {
+                pending.add(n);
+            }
+        }
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            TreeMapNode n = pending.get(i);
+            entry = new Entry();
+            if (n.getChildren().isEmpty()) {
+                entry.contains = filter.accept(n);
+                if (entry.contains) {
+                    entry.weight = metric == AttributeSchema.NONE ? n.getRealWeight() 
+                            : Math.abs(n.getDoubleAttribute(metric));
+                }
+            } else {
+                for (TreeMapNode child : n.getChildren()) {
+                    Entry c = entries.get(child);
+                    if (c.contains) {
+                        entry.contains = true;
+                        entry.weight += c.weight;
+                    }
+                }
+            }
+            entries.put(n, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return a filter accepting all leaves, to weight a tree by a metric.
+     */
+    public static Filter all() {
+        return new Filter() {
+            @Override
+            public boolean accept(TreeMapNode leaf) {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting the leaves whose full name starts with the
+     * given prefix, like <i>com.example.</i>.
+     */
+    public static Filter nameStartsWith(final String prefix) {
+        Objects.requireNonNull(prefix);
+        return new Filter() {
+            @Override
+            public boolean accept(TreeMapNode leaf) {
+                return leaf.getFullName().startsWith(prefix);
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting the leaves whose real weight is at least 
+     * the given one.
+     */
+    public static Filter minRealWeight(final double weight) {
+        return new Filter() {
+            @Override
+            public boolean accept(TreeMapNode leaf) {
+                return leaf.getRealWeight() >= weight;
+            }
+        };
+    }
+
+    /**
+     * The weight and the shown children of a measured node.
+     */
+    private static final class Entry {
+        private boolean contains;
+        private double weight;
+        private List<TreeMapNode> children;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2012-2015 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package thermostat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+/**
+ * This class generates synthetic, but realistic, heap histograms and trees. 
+ * Everything is derived from the seed given at construction time, so the 
+ * same generator produces the same data on every run and on every machine.
+ * 
+ * <p>Histograms resemble the ones of real JVMs:
+ * <ul>
+ * <li>class sizes follow a Zipf distribution, so few classes hold most of
+ * the heap;</li>
+ * <li>packages are derived from real JDK and library packages, with depth
+ * and fan-out of the synthetic sub packages sampled from typical 
+ * applications, and classes are spread over packages with a Zipf 
+ * distribution too;</li>
+ * <li>primitive and object arrays, in JVM descriptor form, are mixed in.</li>
+ * </ul>
+ */
+public class WorkloadGenerator {
+
+    /**
+     * Packages found in real heaps. Synthetic packages extend them.
+     */
+    private static final String[] PACKAGES = {
+        "java.lang", "java.lang.invoke", "java.lang.ref", "java.lang.reflect",
+        "java.util", "java.util.concurrent", "java.util.concurrent.atomic",
+        "java.util.concurrent.locks", "java.util.regex", "java.util.zip",
+        "java.io", "java.nio", "java.nio.channels", "java.net", "java.time",
+        "java.security", "java.math", "javax.management", "javax.swing",
+        "sun.nio.ch", "sun.nio.cs", "sun.security.util", "sun.reflect",
+        "jdk.internal.loader", "jdk.internal.misc", "jdk.internal.ref",
+        "org.springframework.beans.factory", "org.springframework.context",
+        "org.springframework.core", "org.hibernate.engine", 
+        "org.hibernate.internal", "org.apache.catalina.core", 
+        "org.apache.tomcat.util", "org.apache.commons.collections",
+        "com.fasterxml.jackson.databind", "com.fasterxml.jackson.core",
+        "io.netty.buffer", "io.netty.channel", "io.netty.util",
+        "com.google.common.collect", "com.google.common.cache",
+        "org.slf4j.impl", "ch.qos.logback.classic", "com.example.app"
+    };
+
+    /**
+     * Segments used to build synthetic sub packages.
+     */
+    private static final String[] SEGMENTS = {
+        "api", "impl", "internal", "util", "model", "service", "config", 
+        "handler", "io", "core", "cache", "spi", "support", "event", "web",
+        "data", "client", "server", "codec", "pool"
+    };
+
+    /**
+     * Common simple names and name stems of classes.
+     */
+    private static final String[] CLASS_NAMES = {
+        "Object", "String", "Node", "Entry", "HashMap", "ArrayList", "Integer",
+        "Long", "Map", "List", "Handler", "Factory", "Builder", "Context", 
+        "Manager", "Service", "Impl", "Support", "Holder", "Buffer", "Cache",
+        "Segment", "Reference", "Descriptor", "Key", "Value", "Event", 
+        "Listener", "Wrapper", "Proxy"
+    };
+
+    /**
+     * Primitive descriptors of arrays.
+     */
+    private static final String[] PRIMITIVES = {
+        "Z", "B", "C", "S", "I", "J", "F", "D"
+    };
+
+    /**
+     * Probabilities of adding 0, 1, 2 or 3 synthetic segments to a package.
+     */
+    private static final double[] EXTRA_DEPTH = { 0.3, 0.35, 0.25, 0.1 };
+
+    /**
+     * Size in bytes of the biggest class.
+     */
+    private static final long MAX_BYTES = 512L * 1024 * 1024;
+
+    private final long seed;
+
+    private double zipfExponent = 1.1;
+
+    private double arrayFraction = 0.05;
+
+    /**
+     * Constructor.
+     * @param seed the seed all generated data derive from.
+     */
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    /**
+     * Set the exponent of the Zipf distributions. Higher values give more
+     * skewed heaps.
+     * @param exponent a positive value.
+     */
+    public void setZipfExponent(double exponent) {
+        if (exponent <= 0) {
+            throw new IllegalArgumentException("exponent must be positive");
+        }
+        this.zipfExponent = exponent;
+    }
+
+    public double getArrayFraction() {
+        return arrayFraction;
+    }
+
+    /**
+     * Set the fraction of records which are arrays.
+     * @param fraction a value in [0, 1].
+     */
+    public void setArrayFraction(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("fraction must be in [0, 1]");
+        }
+        this.arrayFraction = fraction;
+    }
+
+    /**
+     * Generate an histogram with the given number of classes.
+     * @param classes the number of records.
+     * @return the histogram.
+     */
+    public ObjectHistogram histogram(int classes) {
+        ObjectHistogram histogram = new ObjectHistogram();
+        for (HistogramRecord record : records(classes)) {
+            histogram.addRecord(record);
+        }
+        return histogram;
+    }
+
+    /**
+     * Generate the given number of histogram records, with unique class 
+     * names, sorted by decreasing size.
+     * @param classes the number of records.
+     * @return the records.
+     */
+    public List<HistogramRecord> records(int classes) {
+        Random random = new Random(seed);
+        String[] packages = packages(random, Math.max(1, classes / 8));
+        Zipf packageRanks = new Zipf(packages.length, zipfExponent);
+
+        List<HistogramRecord> records = new ArrayList<>(classes);
+        Set<String> names = new HashSet<>();
+        Map<String, Integer> suffixes = new HashMap<>();
+        for (int rank = 1; rank <= classes; rank++) {
+            long bytes = Math.max(16, (long) (MAX_BYTES / Math.pow(rank, zipfExponent)));
+            String name;
+            int objectSize;
+            if (random.nextDouble() < arrayFraction) {
+                name = arrayName(random, packages);
+                objectSize = 16 + 8 * random.nextInt(512);
+            } else {
+                name = className(random, packages[packageRanks.sample(random)]);
+                objectSize = 16 + 8 * random.nextInt(16);
+            }
+            if (name.startsWith("[") && !name.endsWith(";") && names.contains(name)) {
+                // there are few primitive arrays, use an object array instead
+                name = dims(random) + "L" + className(random, packages[random.nextInt(packages.length)]) + ";";
+            }
+            // names must be unique inside an histogram
+            String unique = name;
+            while (names.contains(unique)) {
+                Integer n = suffixes.get(name);
+                n = n == null ? 2 : n + 1;
+                suffixes.put(name, n);
+                unique = name.endsWith(";") ? name.substring(0, name.length() - 1) + n + ";" : name + n;
+            }
+            names.add(unique);
+            long instances = Math.max(1, bytes / objectSize);
+            records.add(new HistogramRecord(unique, instances, bytes));
+        }
+        return records;
+    }
+
+    /**
+     * Generate a tree having the given number of levels. Each node has
+     * <i>childrenNumber</i> children, or a random number in 
+     * [1, childrenNumber] if <i>random</i> is true, and a weight following a
+     * Zipf distribution.
+     * @param levels the number of levels below the root.
+     * @param childrenNumber the (max) number of children of each node.
+     * @param random true to randomize the number of children.
+     * @return the tree's root.
+     */
+    public TreeMapNode tree(int levels, int childrenNumber, boolean random) {
+        Random rand = new Random(seed);
+        Zipf weights = new Zipf(1000, zipfExponent);
+        TreeMapNode root = new TreeMapNode("root", 0);
+        Deque<TreeMapNode> queue = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        queue.add(root);
+        depths.add(0);
+        int id = 0;
+        while (!queue.isEmpty()) {
+            TreeMapNode node = queue.removeFirst();
+            int depth = depths.removeFirst();
+            if (depth == levels) {
+                continue;
+            }
+            int children = random ? rand.nextInt(childrenNumber) + 1 : childrenNumber;
+            for (int i = 0; i < children; i++) {
+                double weight = 1000.0 / (1 + weights.sample(rand));
+                TreeMapNode child = new TreeMapNode("Node #" + (++id), weight);
+                node.addChild(child);
+                queue.addLast(child);
+                depths.addLast(depth + 1);
+            }
+        }
+        return root;
+    }
+
+    private String[] packages(Random random, int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder(PACKAGES[random.nextInt(PACKAGES.length)]);
+            int extra = sampleExtraDepth(random);
+            for (int d = 0; d < extra; d++) {
+                sb.append('.').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+            }
+            result[i] = sb.toString();
+        }
+        return result;
+    }
+
+    private int sampleExtraDepth(Random random) {
+        double p = random.nextDouble();
+        for (int i = 0; i < EXTRA_DEPTH.length; i++) {
+            p -= EXTRA_DEPTH[i];
+            if (p < 0) {
+                return i;
+            }
+        }
+        return EXTRA_DEPTH.length - 1;
+    }
+
+    private String arrayName(Random random, String[] packages) {
+        if (random.nextBoolean()) {
+            return dims(random) + PRIMITIVES[random.nextInt(PRIMITIVES.length)];
+        }
+        String pkg = packages[random.nextInt(packages.length)];
+        return dims(random) + "L" + className(random, pkg) + ";";
+    }
+
+    private static String dims(Random random) {
+        return random.nextInt(8) == 0 ? "[[" : "[";
+    }
+
+    private static String className(Random random, String pkg) {
+        String name = pkg + "." + CLASS_NAMES[random.nextInt(CLASS_NAMES.length)];
+        if (random.nextInt(4) == 0) {
+            // inner class
+            name += "$" + CLASS_NAMES[random.nextInt(CLASS_NAMES.length)];
+        }
+        return name;
+    }
+
+    /**
+     * Samples integers in [0, n) with probability proportional to 
+     * 1 / (i + 1)^exponent, by inversion of the cumulative distribution.
+     */
+    private static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, i >= 0 ? i : -i - 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeMapEventsTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("treemap", ".jfr");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public final void testEventsAreRecorded() throws Exception {
+        assertTrue(TreeMapEvents.AVAILABLE);
+
+        try (Recording recording = new Recording()) {
+            recording.enable(TreeMapEvents.CONVERSION);
+            recording.enable(TreeMapEvents.LAYOUT);
+            recording.enable(TreeMapEvents.PAINT);
+            recording.start();
+
+            TreeMapNode tree = HistogramConverter.convertToTreeMap(
+                    new WorkloadGenerator(42).histogram(500));
+            TreeMapComponent treeMap = new TreeMapComponent(tree, new Dimension(400, 300));
+            treeMap.setSize(400, 300);
+            BufferedImage img = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = img.createGraphics();
+            treeMap.paint(g);
+            g.dispose();
+
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+
+        Map<String, RecordedEvent> events = new HashMap<>();
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath());
+        for (RecordedEvent event : recorded) {
+            events.put(event.getEventType().getName(), event);
+        }
+
+        RecordedEvent conversion = events.get(TreeMapEvents.CONVERSION);
+        assertEquals(500, conversion.getInt("records"));
+        assertTrue(conversion.getInt("nodes") > 500);
+        assertTrue(conversion.getInt("depth") > 1);
+
+        RecordedEvent layout = events.get(TreeMapEvents.LAYOUT);
+        assertTrue(layout.getLong("nodes") > 1);
+        assertTrue(layout.getLong("visited") > 0);
+        assertEquals(400.0, layout.getDouble("width"), 0);
+        assertEquals(300.0, layout.getDouble("height"), 0);
+
+        RecordedEvent paint = events.get(TreeMapEvents.PAINT);
+        assertEquals(400, paint.getInt("width"));
+        assertEquals(300, paint.getInt("height"));
+        assertTrue(paint.getInt("nodes") > 1);
+        assertTrue(paint.getBoolean("rendered"));
+    }
+}
@@ -0,0 +1,177 @@
+package thermostat;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.awt.Dimension;
+import java.awt.geom.Rectangle2D;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+/**
+ * Checks the bytes allocated by the hot paths against budgets per node, to 
+ * catch regressions like per step list copies. Each path is run on a small 
+ * and on a large input, generated with a fixed seed, and the budget applies
+ * to the bytes allocated for each additional node: fixed costs, which vary 
+ * between JVMs, cancel out, while allocations growing faster than the input 
+ * exceed the budget. Budgets are about twice the measured allocations; when 
+ * a change reduces them, lower the budget. Absolute allocation rates are 
+ * measured by the JMH benchmarks with <code>-prof gc</code>.
+ * 
+ * <p>Tests are skipped on JVMs which can't measure thread allocations.
+ */
+public class AllocationBudgetTest {
+
+    /**
+     * Budgets in bytes per additional node of the resulting tree.
+     */
+    private static final long LAYOUT_BUDGET = 130;
+    private static final long CONVERSION_BUDGET = 1000;
+    private static final long RELAYOUT_BUDGET = 560;
+
+    private static final int CHILDREN = 6;
+    private static final int SMALL_LEVELS = 3;
+    private static final int LARGE_LEVELS = 4;
+    private static final int SMALL_CLASSES = 1000;
+    private static final int LARGE_CLASSES = 4000;
+    private static final int WARMUP = 3;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public final void testLayout() {
+        assertWithinBudget("layout", layout(SMALL_LEVELS), layout(LARGE_LEVELS), 
+                LAYOUT_BUDGET);
+    }
+
+    @Test
+    public final void testConversion() {
+        assertWithinBudget("conversion", conversion(SMALL_CLASSES), 
+                conversion(LARGE_CLASSES), CONVERSION_BUDGET);
+    }
+
+    @Test
+    public final void testRelayout() throws Exception {
+        assertWithinBudget("relayout", relayout(SMALL_LEVELS), relayout(LARGE_LEVELS), 
+                RELAYOUT_BUDGET);
+    }
+
+    /**
+     * Measure the layout of a tree.
+     */
+    private Measure layout(int levels) {
+        long allocated = 0;
+        int nodes = 0;
+        for (int i = 0; i <= WARMUP; i++) {
+            final TreeMapNode tree = new WorkloadGenerator(42).tree(levels, CHILDREN, false);
+            nodes = count(tree);
+            allocated = allocated(new Runnable() {
+                @Override
+                public void run() {
+                    TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 1024, 768));
+                }
+            });
+        }
+        return new Measure(allocated, nodes);
+    }
+
+    /**
+     * Measure the conversion of a histogram.
+     */
+    private Measure conversion(int classes) {
+        final ObjectHistogram histogram = new WorkloadGenerator(42).histogram(classes);
+        final TreeMapNode[] tree = new TreeMapNode[1];
+        long allocated = 0;
+        for (int i = 0; i <= WARMUP; i++) {
+            allocated = allocated(new Runnable() {
+                @Override
+                public void run() {
+                    tree[0] = HistogramConverter.convertToTreeMap(histogram);
+                }
+            });
+        }
+        return new Measure(allocated, count(tree[0]));
+    }
+
+    /**
+     * Measure the relayout of a component after a resize.
+     */
+    private Measure relayout(int levels) throws Exception {
+        final TreeMapNode tree = new WorkloadGenerator(42).tree(levels, CHILDREN, false);
+        final long[] allocated = new long[1];
+        // the component is only touched from the EDT, where resize requests 
+        // are served
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                final TreeMapComponent treeMap = new TreeMapComponent(tree, 
+                        new Dimension(1024, 768));
+                for (int i = 0; i <= WARMUP; i++) {
+                    final int size = 800 + 100 * (i % 2);
+                    allocated[0] = allocated(new Runnable() {
+                        @Override
+                        public void run() {
+                            treeMap.setSize(size, size);
+                            treeMap.getResizeScheduler().schedule();
+                            treeMap.getResizeScheduler().flush();
+                        }
+                    });
+                }
+            }
+        });
+        return new Measure(allocated[0], count(tree));
+    }
+
+    private int count(TreeMapNode tree) {
+        int nodes = 0;
+        for (TreeMapNode node : TreeTraversal.preOrder(tree)) {
+            nodes++;
+        }
+        return nodes;
+    }
+
+    /**
+     * Run the task and return the bytes it allocated in the current thread.
+     */
+    private long allocated(Runnable task) {
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        task.run();
+        return threads.getThreadAllocatedBytes(id) - before;
+    }
+
+    private void assertWithinBudget(String path, Measure small, Measure large, long budget) {
+        long perNode = (large.bytes - small.bytes) / (large.nodes - small.nodes);
+        assertTrue(path + " allocated " + perNode + " bytes per additional node, budget is " 
+                + budget, perNode <= budget);
+    }
+
+    /**
+     * The bytes allocated for a tree of the given size.
+     */
+    private static class Measure {
+        final long bytes;
+        final int nodes;
+
+        Measure(long bytes, int nodes) {
+            this.bytes = bytes;
+            this.nodes = nodes;
+        }
+    }
+}
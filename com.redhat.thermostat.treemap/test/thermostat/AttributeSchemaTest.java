@@ -0,0 +1,132 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class AttributeSchemaTest {
+
+    private AttributeSchema schema;
+    private int count;
+    private int ratio;
+
+    @Before
+    public void setUp() {
+        schema = new AttributeSchema();
+        count = schema.register("count", AttributeSchema.Type.LONG);
+        ratio = schema.register("ratio", AttributeSchema.Type.DOUBLE);
+    }
+
+    @Test
+    public final void testRegister() {
+        assertEquals(0, count);
+        assertEquals(1, ratio);
+        assertEquals(count, schema.register("count", AttributeSchema.Type.LONG));
+        assertEquals(ratio, schema.getSlot("ratio"));
+        assertEquals(AttributeSchema.NONE, schema.getSlot("missing"));
+        assertEquals(2, schema.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testRegisterOtherType() {
+        schema.register("count", AttributeSchema.Type.DOUBLE);
+    }
+
+    @Test
+    public final void testNodeAttributes() {
+        TreeMapNode node = new TreeMapNode("node", 1);
+        assertFalse(node.hasAttribute(count));
+        assertEquals(0L, node.getLongAttribute(count));
+
+        node.setLongAttribute(schema, count, 42);
+        node.setDoubleAttribute(schema, ratio, 0.5);
+        assertTrue(node.hasAttribute(count));
+        assertEquals(42L, node.getLongAttribute(count));
+        assertEquals(42.0, node.getDoubleAttribute(count), 0);
+        assertEquals(0.5, node.getDoubleAttribute(ratio), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testWrongType() {
+        new TreeMapNode("node", 1).setDoubleAttribute(schema, count, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testOtherSchema() {
+        TreeMapNode node = new TreeMapNode("node", 1);
+        node.setLongAttribute(schema, count, 1);
+        node.setLongAttribute(new AttributeSchema(), 0, 1);
+    }
+
+    @Test
+    public final void testInfoView() {
+        TreeMapNode node = new TreeMapNode("node", 1);
+        node.setLongAttribute(schema, count, 42);
+        node.addInfo("key", "value");
+
+        assertEquals("42", node.getInfo("count"));
+        assertNull(node.getInfo("ratio"));
+        Map<String, String> info = node.getInfo();
+        assertEquals(2, info.size());
+        assertEquals("42", info.get("count"));
+        assertEquals("value", info.get("key"));
+        info.put("other", "x");
+        assertEquals("x", node.getInfo("other"));
+        assertSame(info, node.getInfo());
+        // the view is live
+        node.setDoubleAttribute(schema, ratio, 0.25);
+        assertEquals(4, info.size());
+        assertEquals("0.25", info.get("ratio"));
+    }
+
+    @Test
+    public final void testManyAttributesAndNodes() {
+        int[] slots = new int[100];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = schema.register("a" + i, AttributeSchema.Type.LONG);
+        }
+        TreeMapNode[] nodes = new TreeMapNode[200];
+        for (int n = 0; n < nodes.length; n++) {
+            nodes[n] = new TreeMapNode("node" + n, 1);
+            for (int i = n % 2; i < slots.length; i += 2) {
+                nodes[n].setLongAttribute(schema, slots[i], n * 1000 + i);
+            }
+        }
+        for (int n = 0; n < nodes.length; n++) {
+            for (int i = 0; i < slots.length; i++) {
+                assertEquals(i % 2 == n % 2, nodes[n].hasAttribute(slots[i]));
+                assertEquals(i % 2 == n % 2 ? n * 1000 + i : 0, 
+                        nodes[n].getLongAttribute(slots[i]));
+            }
+            assertEquals(slots.length / 2, nodes[n].getInfo().size());
+        }
+    }
+
+    @Test
+    public final void testConvertedHistogram() {
+        ObjectHistogram histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord("Ljava/lang/String;", 7, 100));
+        histogram.addRecord(new HistogramRecord("Ljava/lang/Integer;", 3, 50));
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram);
+
+        int slot = root.getAttributeSchema().getSlot(HistogramConverter.NUMBER_OF);
+        long total = 0;
+        for (TreeMapNode leaf : root.getChildren()) {
+            assertTrue(leaf.hasAttribute(slot));
+            assertEquals(Long.toString(leaf.getLongAttribute(slot)), 
+                    leaf.getInfo(HistogramConverter.NUMBER_OF));
+            total += leaf.getLongAttribute(slot);
+        }
+        assertEquals(10L, total);
+    }
+}
@@ -0,0 +1,126 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferTreeStorageTest {
+
+    private TreeMapNode nodes;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        nodes = new WorkloadGenerator(7).tree(4, 5, true);
+        file = Files.createTempFile("treemap", ".tree");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testDirect() {
+        // a small capacity makes the buffer grow
+        FlatTree tree = FlatTree.allocateDirect(1);
+        tree.addNodes(FlatTree.NONE, nodes);
+        assertSameTree(nodes, tree.toNodes());
+        tree.close();
+    }
+
+    @Test
+    public final void testReopen() throws IOException {
+        FlatTree tree = FlatTree.create(file, 1);
+        tree.addNodes(FlatTree.NONE, nodes);
+        tree.close();
+
+        FlatTree reopened = FlatTree.open(file);
+        assertEquals(tree.size(), reopened.size());
+        assertEquals(tree.getLabelCount(), reopened.getLabelCount());
+        assertSameTree(nodes, reopened.toNodes());
+        reopened.close();
+    }
+
+    @Test
+    public final void testLayoutOfReopenedTree() throws IOException {
+        FlatTree tree = FlatTree.create(file, 16);
+        tree.addNodes(FlatTree.NONE, nodes);
+        tree.close();
+
+        Rectangle2D.Double area = new Rectangle2D.Double(0, 0, 800, 600);
+        TreeProcessor.processTreeMap(nodes, area);
+        FlatTree reopened = FlatTree.open(file);
+        TreeProcessor.processTreeMap(reopened, area);
+        // the stored weights are left as they were
+        assertSameTree(nodes, reopened.toNodes(), false);
+        reopened.close();
+
+        // the layout has been stored too
+        reopened = FlatTree.open(file);
+        assertSameTree(nodes, reopened.toNodes(), false);
+        reopened.close();
+    }
+
+    @Test
+    public final void testAppendToReopenedTree() throws IOException {
+        FlatTree tree = FlatTree.create(file, 1);
+        int root = tree.addNode(FlatTree.NONE, "root", 1);
+        tree.addNode(root, null, 2);
+        tree.addNode(root, "\u00e8", 3);
+        tree.close();
+
+        tree = FlatTree.open(file);
+        assertNull(tree.getLabel(1));
+        assertEquals("\u00e8", tree.getLabel(2));
+        int child = tree.addNode(root, "new", 4);
+        tree.setColor(child, java.awt.Color.ORANGE);
+        tree.close();
+
+        tree = FlatTree.open(file);
+        assertEquals(4, tree.size());
+        assertEquals(3, tree.getChildCount(root));
+        assertEquals("new", tree.getLabel(child));
+        assertEquals(java.awt.Color.ORANGE, tree.getColor(child));
+        assertEquals(4.0, tree.getRealWeight(child), 0);
+        tree.close();
+    }
+
+    @Test
+    public final void testOpenInvalidFile() throws IOException {
+        Files.write(file, new byte[100]);
+        try {
+            FlatTree.open(file);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertSameTree(TreeMapNode expected, TreeMapNode actual) {
+        assertSameTree(expected, actual, true);
+    }
+
+    private void assertSameTree(TreeMapNode expected, TreeMapNode actual, boolean weights) {
+        assertEquals(expected.getLabel(), actual.getLabel());
+        assertEquals(expected.getRealWeight(), actual.getRealWeight(), 0);
+        if (weights) {
+            assertEquals(expected.getWeight(), actual.getWeight(), 0);
+        }
+        assertEquals(expected.getRectangle(), actual.getRectangle());
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i), weights);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class ClassNameIndexTest {
+
+    private static final String[] CLASSES = {
+        "java.lang.String",
+        "java.lang.StringBuilder",
+        "java.util.List",
+        "com.example.util.List",
+        "com.example.Foo",
+        "strings.Util",
+    };
+
+    private TreeMapNode root;
+    private ClassNameIndex index;
+
+    @Before
+    public void setUp() {
+        ObjectHistogram histogram = new ObjectHistogram();
+        for (String name : CLASSES) {
+            histogram.addRecord(new HistogramRecord("L" + name.replace('.', '/') + ";", 1, 10));
+        }
+        root = HistogramConverter.convertToTreeMap(histogram);
+        index = new ClassNameIndex(root);
+    }
+
+    @Test
+    public final void testPrefix() {
+        assertEquals(CLASSES.length, index.size());
+        assertNames(index.findPrefix("java.lang."), "java.lang.String", "java.lang.StringBuilder");
+        // simple names and full names, ignoring case
+        assertNames(index.findPrefix("STR"), "java.lang.String", "java.lang.StringBuilder", 
+                "strings.Util");
+        assertNames(index.findPrefix("list"), "java.util.List", "com.example.util.List");
+        assertNames(index.findPrefix("lang"));
+        assertNames(index.findPrefix(""));
+    }
+
+    @Test
+    public final void testSubstring() {
+        assertNames(index.findSubstring("util"), "java.util.List", "com.example.util.List", 
+                "strings.Util");
+        assertNames(index.findSubstring("ng.S"), "java.lang.String", "java.lang.StringBuilder");
+        assertNames(index.findSubstring("o"), "com.example.util.List", "com.example.Foo");
+        assertNames(index.findSubstring("xyz"));
+    }
+
+    @Test
+    public final void testSharedCodes() {
+        // the two characters share their code in the index
+        ObjectHistogram histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord("La/B\u0400;", 1, 10));
+        histogram.addRecord(new HistogramRecord("La/C\u0800;", 1, 10));
+        root = HistogramConverter.convertToTreeMap(histogram);
+        index = new ClassNameIndex(root);
+        assertNames(index.findSubstring("\u0400"), "a.B\u0400");
+        assertNames(index.findSubstring("c\u0800"), "a.C\u0800");
+        assertNames(index.findSubstring(".c\u0800"), "a.C\u0800");
+    }
+
+    @Test
+    public final void testSearch() {
+        ClassNameIndex.Search search = index.search(false);
+        assertNames(search.append('S'), "java.lang.String", "java.lang.StringBuilder", 
+                "java.util.List", "com.example.util.List", "strings.Util");
+        assertNames(search.append('t'), "java.lang.String", "java.lang.StringBuilder", 
+                "java.util.List", "com.example.util.List", "strings.Util");
+        assertNames(search.append("ringb"), "java.lang.StringBuilder");
+        assertNames(search.backspace(), "java.lang.String", "java.lang.StringBuilder", 
+                "strings.Util");
+        assertEquals("string", search.getText());
+
+        // the index follows the tree
+        TreeMapNode lang = root.findByName("java.lang");
+        lang.addChild(new TreeMapNode("StringJoiner", 1));
+        assertNames(search.getMatches(), "java.lang.String", "java.lang.StringBuilder", 
+                "java.lang.StringJoiner", "strings.Util");
+
+        search.clear();
+        assertNames(search.getMatches());
+    }
+
+    @Test
+    public final void testGeneratedHeap() {
+        TreeMapNode tree = HistogramConverter.convertToTreeMap(
+                new WorkloadGenerator(42).histogram(20000));
+        ClassNameIndex generated = new ClassNameIndex(tree);
+        List<TreeMapNode> leaves = new ArrayList<>();
+        for (TreeMapNode node : TreeTraversal.preOrder(tree)) {
+            if (node.getChildren().isEmpty()) {
+                leaves.add(node);
+            }
+        }
+        assertEquals(leaves.size(), generated.size());
+
+        ClassNameIndex.Search search = generated.search(false);
+        String text = "util.conc";
+        for (int i = 0; i < text.length(); i++) {
+            String typed = text.substring(0, i + 1);
+            List<TreeMapNode> matches = search.append(text.charAt(i));
+            assertEquals(contains(leaves, typed), new HashSet<>(matches));
+            assertEquals(matches.size(), generated.findSubstring(typed).size());
+        }
+        Set<TreeMapNode> prefixed = new HashSet<>();
+        for (TreeMapNode leaf : leaves) {
+            if (leaf.getFullName().toLowerCase(Locale.ROOT).startsWith("java.util.")) {
+                prefixed.add(leaf);
+            }
+        }
+        assertEquals(prefixed, new HashSet<>(generated.findPrefix("java.util.")));
+    }
+
+    @Test
+    public final void testRebuiltByOwnTreeOnly() {
+        index.findPrefix("java");
+        assertEquals(1, index.getBuildCount());
+        TreeMapNode other = HistogramConverter.convertToTreeMap(
+                new WorkloadGenerator(1).histogram(100));
+        other.addChild(new TreeMapNode("Foo", 1));
+        index.findPrefix("java");
+        assertEquals(1, index.getBuildCount());
+
+        root.findByName("java").addChild(new TreeMapNode("Foo", 1));
+        assertNames(index.findPrefix("java.f"), "java.Foo");
+        assertEquals(2, index.getBuildCount());
+    }
+
+    private Set<TreeMapNode> contains(List<TreeMapNode> leaves, String text) {
+        Set<TreeMapNode> result = new HashSet<>();
+        for (TreeMapNode leaf : leaves) {
+            if (leaf.getFullName().toLowerCase(Locale.ROOT).contains(text)) {
+                result.add(leaf);
+            }
+        }
+        return result;
+    }
+
+    private void assertNames(List<TreeMapNode> matches, String... names) {
+        Set<String> expected = new HashSet<>();
+        for (String name : names) {
+            expected.add(name);
+        }
+        Set<String> actual = new HashSet<>();
+        for (TreeMapNode node : matches) {
+            actual.add(node.getFullName());
+            assertSame(node, root.findByName(node.getFullName()));
+        }
+        assertEquals(expected, actual);
+        assertTrue(matches.size() == names.length);
+    }
+}
@@ -0,0 +1,97 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class DescriptorConverterTest {
+
+    @Test
+    public final void testToJavaType() {
+        assertEquals("int", DescriptorConverter.toJavaType("I"));
+        assertEquals("boolean[]", DescriptorConverter.toJavaType("[Z"));
+        assertEquals("java.lang.String", DescriptorConverter.toJavaType("Ljava/lang/String;"));
+        assertEquals("java.lang.Object[][]", DescriptorConverter.toJavaType("[[Ljava/lang/Object;"));
+        assertEquals("java.util.Map$Entry", DescriptorConverter.toJavaType("java.util.Map$Entry"));
+    }
+
+    @Test
+    public final void testMemoized() {
+        DescriptorConverter converter = new DescriptorConverter(16);
+        String first = converter.convert("[Ljava/lang/String;");
+        assertSame(first, converter.convert(new String("[Ljava/lang/String;")));
+        assertSame(first, converter.convert(CharBuffer.wrap("xx[Ljava/lang/String;yy"), 2, 21));
+        assertEquals(1, converter.size());
+
+        // names which need no decoding are not copied
+        String name = "java.util.HashMap";
+        assertSame(name, converter.convert(name));
+
+        converter.clear();
+        assertEquals(0, converter.size());
+    }
+
+    @Test
+    public final void testCharSequence() {
+        CharBuffer buffer = CharBuffer.wrap("[J Lfoo/Bar; D");
+        assertEquals("long[]", DescriptorConverter.toJavaType(buffer, 0, 2));
+        assertEquals("foo.Bar", DescriptorConverter.toJavaType(buffer, 3, 12));
+        assertEquals("double", DescriptorConverter.toJavaType(buffer, 13, 14));
+
+        StringBuilder sb = new StringBuilder("type: ");
+        DescriptorConverter.appendJavaType(buffer, 3, 12, sb);
+        assertEquals("type: foo.Bar", sb.toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void testEmptyRange() {
+        new DescriptorConverter(16).convert("[[I", 0, 2);
+    }
+
+    @Test
+    public final void testBounded() {
+        DescriptorConverter converter = new DescriptorConverter(8);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("p" + i + ".C[]", converter.convert("[Lp" + i + "/C;"));
+        }
+        assertTrue(converter.size() <= 8);
+        // the latest descriptor is always found
+        String last = converter.convert("[Lp999/C;");
+        assertSame(last, converter.convert("[Lp999/C;"));
+    }
+
+    @Test
+    public final void testConcurrentUse() throws InterruptedException {
+        final DescriptorConverter converter = new DescriptorConverter(64);
+        final AtomicReference<String> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        int k = i % 200;
+                        String type = converter.convert("[Lp" + k + "/C;");
+                        if (!type.equals("p" + k + ".C[]")) {
+                            error.set(type);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,177 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlatTreeTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private TreeMapNode nodes;
+    private FlatTree flat;
+
+    @Before
+    public void setUp() {
+        nodes = new WorkloadGenerator(42).tree(4, 5, true);
+        flat = FlatTree.fromNodes(nodes);
+    }
+
+    @Test
+    public final void testAddNode() {
+        FlatTree tree = new FlatTree(1);
+        int root = tree.addNode(FlatTree.NONE, "root", 0);
+        int a = tree.addNode(root, "a", 1);
+        int b = tree.addNode(root, "b", 2);
+        int c = tree.addNode(a, "a", 3);
+
+        assertEquals(0, root);
+        assertEquals(4, tree.size());
+        assertEquals(FlatTree.NONE, tree.getParent(root));
+        assertEquals(a, tree.getFirstChild(root));
+        assertEquals(b, tree.getNextSibling(a));
+        assertEquals(FlatTree.NONE, tree.getNextSibling(b));
+        assertEquals(2, tree.getChildCount(root));
+        assertEquals(a, tree.getParent(c));
+        assertEquals("a", tree.getLabel(c));
+        // equal labels are stored once
+        assertEquals(tree.getLabelId(a), tree.getLabelId(c));
+        assertEquals(3, tree.getLabelCount());
+        assertEquals(3.0, tree.getRealWeight(c), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testSecondRoot() {
+        FlatTree tree = new FlatTree();
+        tree.addNode(FlatTree.NONE, "root", 0);
+        tree.addNode(FlatTree.NONE, "root", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testMissingParent() {
+        FlatTree tree = new FlatTree();
+        tree.addNode(FlatTree.NONE, "root", 0);
+        tree.addNode(1, "child", 0);
+    }
+
+    @Test
+    public final void testConversion() {
+        assertEquals(count(nodes), flat.size());
+        assertSameTree(nodes, flat.toNodes());
+    }
+
+    @Test
+    public final void testLayoutAsNodes() {
+        Rectangle2D.Double area = new Rectangle2D.Double(0, 0, WIDTH, HEIGHT);
+        TreeProcessor.processTreeMap(nodes, area);
+        TreeProcessor.processTreeMap(flat, area);
+        // the node tree keeps its normalized weights, the flat one doesn't
+        assertSameTree(nodes, flat.toNodes(), false);
+    }
+
+    @Test
+    public final void testLayoutKeepsWeights() {
+        Rectangle2D.Double area = new Rectangle2D.Double(0, 0, WIDTH, HEIGHT);
+        double[] weights = new double[flat.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = flat.getWeight(i);
+        }
+        TreeProcessor.processTreeMap(flat, area);
+        TreeMapNode first = flat.toNodes();
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i], flat.getWeight(i), 0);
+        }
+        TreeProcessor.processTreeMap(flat, area);
+        assertSameTree(first, flat.toNodes());
+    }
+
+    @Test
+    public final void testPaintAsNodes() {
+        Rectangle2D.Double area = new Rectangle2D.Double(0, 0, WIDTH, HEIGHT);
+        TreeProcessor.processTreeMap(nodes, area);
+        TreeProcessor.processTreeMap(flat, area);
+        Font font = new Font(Font.SERIF, Font.PLAIN, 8);
+
+        TreeMapRenderer renderer = new TreeMapRenderer(font, new LabelCache());
+        BufferedImage expected = image();
+        Graphics2D g = expected.createGraphics();
+        renderer.paint(g, nodes);
+        g.dispose();
+        BufferedImage actual = image();
+        g = actual.createGraphics();
+        renderer.paint(g, flat);
+        g.dispose();
+        assertTrue(Arrays.equals(pixels(expected), pixels(actual)));
+
+        RasterTreeMapRenderer raster = new RasterTreeMapRenderer(font, new LabelCache(), null, 1);
+        raster.setBorderStyle(TreeMapComponent.FLAT);
+        expected = image();
+        raster.render(expected, nodes);
+        actual = image();
+        raster.render(actual, flat);
+        assertTrue(Arrays.equals(pixels(expected), pixels(actual)));
+    }
+
+    @Test
+    public final void testDeepTree() {
+        FlatTree tree = new FlatTree();
+        int node = tree.addNode(FlatTree.NONE, "", 1);
+        for (int i = 0; i < 100000; i++) {
+            node = tree.addNode(node, "", 1);
+        }
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, WIDTH, HEIGHT));
+        final int[] visited = new int[1];
+        TreeMapRenderer.visit(tree, new TreeMapRenderer.FlatVisitor() {
+            @Override
+            public void visit(int node, Rectangle bounds, Rectangle visible) {
+                visited[0]++;
+            }
+        });
+        assertTrue(visited[0] > 1);
+    }
+
+    private void assertSameTree(TreeMapNode expected, TreeMapNode actual) {
+        assertSameTree(expected, actual, true);
+    }
+
+    private void assertSameTree(TreeMapNode expected, TreeMapNode actual, boolean weights) {
+        assertEquals(expected.getLabel(), actual.getLabel());
+        assertEquals(expected.getRealWeight(), actual.getRealWeight(), 0);
+        if (weights) {
+            assertEquals(expected.getWeight(), actual.getWeight(), 0);
+        }
+        assertEquals(expected.getRectangle(), actual.getRectangle());
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i), weights);
+        }
+    }
+
+    private int count(TreeMapNode node) {
+        int count = 1;
+        for (TreeMapNode child : node.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    private BufferedImage image() {
+        return new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private int[] pixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+}
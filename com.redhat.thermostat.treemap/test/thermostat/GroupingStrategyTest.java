@@ -0,0 +1,117 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class GroupingStrategyTest {
+
+    private ObjectHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord("Ljava/lang/String;", 1, 10, "java.base", null));
+        histogram.addRecord(new HistogramRecord("[Ljava/lang/String;", 1, 20, "java.base", null));
+        histogram.addRecord(new HistogramRecord("[[Ljava/lang/String;", 1, 30, "java.base", null));
+        histogram.addRecord(new HistogramRecord("[I", 1, 40, "java.base", null));
+        histogram.addRecord(new HistogramRecord("Lcom/example/util/List;", 1, 50, null, "app"));
+        histogram.addRecord(new HistogramRecord("Lcom/example/Foo;", 1, 60, null, "app"));
+    }
+
+    @Test
+    public final void testPackages() {
+        TreeMapNode expected = HistogramConverter.convertToTreeMap(histogram);
+        TreeMapNode actual = HistogramConverter.convertToTreeMap(histogram, null, null, 
+                GroupingStrategy.packages());
+        assertEquals(fullNames(expected), fullNames(actual));
+    }
+
+    @Test
+    public final void testPackageDepth() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, null, 
+                GroupingStrategy.packageDepth(1));
+        TreeMapNode list = root.findByName("com.example.util.List");
+        assertEquals("example.util.List", list.getLabel());
+        assertEquals("com", list.getParent().getLabel());
+        assertEquals(210, root.getRealWeight(), 0);
+    }
+
+    @Test
+    public final void testModuleThenPackage() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, null, 
+                GroupingStrategy.moduleThenPackage());
+        assertNotNull(root.findByName("java.base.java.lang.String"));
+        assertNotNull(root.findByName(GroupingStrategy.UNNAMED_MODULE + ".com.example.Foo"));
+        assertNull(root.findByName("java.lang.String"));
+    }
+
+    @Test
+    public final void testClassLoaderThenPackage() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, null, 
+                GroupingStrategy.classLoaderThenPackage());
+        assertNotNull(root.findByName("app.com.example.util.List"));
+        assertNotNull(root.findByName(GroupingStrategy.UNKNOWN_LOADER + ".int[]"));
+    }
+
+    @Test
+    public final void testArraysThenElementType() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, null, 
+                GroupingStrategy.arraysThenElementType());
+        TreeMapNode arrays = root.findByName(GroupingStrategy.ARRAYS + ".java.lang.String[]");
+        assertEquals(arrays.getParent(), 
+                root.findByName(GroupingStrategy.ARRAYS + ".java.lang.String[][]").getParent());
+        assertNotNull(root.findByName(GroupingStrategy.ARRAYS + ".int[]"));
+        assertNotNull(root.findByName(GroupingStrategy.INSTANCES + ".java.lang.String"));
+        assertEquals(90, root.findByName(GroupingStrategy.ARRAYS).getRealWeight(), 0);
+    }
+
+    @Test
+    public final void testPruningByGroup() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, 
+                PruningPolicy.topPerPackage(1), GroupingStrategy.arraysThenElementType());
+        // the arrays of String are pruned in their group, the String class 
+        // is in another group
+        assertNotNull(root.findByName(GroupingStrategy.INSTANCES + ".java.lang.String"));
+        assertNotNull(root.findByName(GroupingStrategy.ARRAYS + ".java.lang.String[][]"));
+        TreeMapNode others = root.findByName(GroupingStrategy.ARRAYS + ".java.lang." 
+                + HistogramConverter.OTHERS);
+        assertEquals(20, others.getRealWeight(), 0);
+    }
+
+    @Test
+    public final void testReadRecordWithoutModule() throws Exception {
+        // a record serialized before modules and class loaders were added
+        String serialized = "rO0ABXNyADNjb20ucmVkaGF0LnRoZXJtb3N0YXQudHJlZW1hcC5tb2RlbC5IaXN0b2dyYW1S"
+                + "ZWNvcmQOvrEcOMGCHAIAA0oACG51bWJlck9mSgAJdG90YWxTaXplTAAJY2xhc3NuYW1ldAAS"
+                + "TGphdmEvbGFuZy9TdHJpbmc7eHAAAAAAAAAAAwAAAAAAAABIcQB+AAE=";
+        HistogramRecord record;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(serialized)))) {
+            record = (HistogramRecord) in.readObject();
+        }
+        assertEquals(new HistogramRecord("Ljava/lang/String;", 3, 72), record);
+        assertNull(record.getModule());
+        assertNull(record.getClassLoader());
+    }
+
+    private Set<String> fullNames(TreeMapNode root) {
+        Set<String> names = new HashSet<>();
+        for (TreeMapNode node : TreeTraversal.preOrder(root)) {
+            names.add(node.getFullName() + "=" + node.getRealWeight());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,121 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.font.GlyphVector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LabelCacheTest {
+
+    private static final String TEXT = "com.redhat.thermostat.treemap";
+
+    private LabelCache cache;
+    private Font font;
+
+    @Before
+    public void setUp() {
+        cache = new LabelCache(2);
+        font = new Font(Font.SERIF, Font.PLAIN, 8);
+    }
+
+    @Test
+    public final void testMeasuresAreCached() {
+        Rectangle bounds = cache.getBounds(TEXT, font);
+        assertSame(bounds, cache.getBounds(TEXT, font));
+        assertSame(cache.getGlyphVector(TEXT, font), cache.getGlyphVector(TEXT, font));
+        assertEquals(1L, cache.getMeasureCount());
+
+        // a different font is a different label
+        cache.getBounds(TEXT, font.deriveFont(12f));
+        assertEquals(2L, cache.getMeasureCount());
+    }
+
+    @Test
+    public final void testCharSequenceLookup() {
+        Rectangle bounds = cache.getBounds(TEXT, font);
+        StringBuilder sb = new StringBuilder(TEXT);
+        assertSame(bounds, cache.getBounds(sb, font));
+        assertSame(TEXT, cache.fit(sb, font, bounds.width + 1));
+        assertEquals(1L, cache.getMeasureCount());
+
+        // the builder is not kept as key
+        sb.setLength(0);
+        sb.append("other");
+        cache.getBounds(sb, font);
+        assertEquals(2L, cache.getMeasureCount());
+        assertSame(bounds, cache.getBounds(TEXT, font));
+    }
+
+    @Test
+    public final void testFit() {
+        int width = cache.getBounds(TEXT, font).width;
+        assertSame(TEXT, cache.fit(TEXT, font, width + 1));
+
+        String truncated = cache.fit(TEXT, font, width / 2);
+        assertTrue(truncated.endsWith(LabelCache.ELLIPSIS));
+        assertTrue(TEXT.startsWith(truncated.substring(0, 
+                truncated.length() - LabelCache.ELLIPSIS.length())));
+        assertTrue(cache.getBounds(truncated, font).width < width / 2);
+
+        assertNull(cache.fit(TEXT, font, 1));
+    }
+
+    @Test
+    public final void testRepeatedFitDoesNotMeasure() {
+        int width = cache.getBounds(TEXT, font).width;
+        cache.fit(TEXT, font, width / 2);
+        long measures = cache.getMeasureCount();
+        for (int i = 0; i < 10; i++) {
+            cache.fit(TEXT, font, width / 2);
+        }
+        assertEquals(measures, cache.getMeasureCount());
+    }
+
+    @Test
+    public final void testFitAtSeveralWidths() {
+        int width = cache.getBounds(TEXT, font).width;
+        String half = cache.fit(TEXT, font, width / 2);
+        String third = cache.fit(TEXT, font, width / 3);
+        assertTrue(half.length() > third.length());
+        long measures = cache.getMeasureCount();
+        for (int i = 0; i < 10; i++) {
+            assertSame(half, cache.fit(TEXT, font, width / 2));
+            assertSame(third, cache.fit(TEXT, font, width / 3));
+        }
+        assertEquals(measures, cache.getMeasureCount());
+    }
+
+    @Test
+    public final void testTruncatedLabelsAreNotEntries() {
+        int width = cache.getBounds(TEXT, font).width;
+        cache.getBounds("other", font);
+        GlyphVector glyphs = cache.getFitGlyphVector(TEXT, font, width / 2);
+        assertEquals(cache.fit(TEXT, font, width / 2).length(), glyphs.getNumGlyphs());
+        assertSame(glyphs, cache.getFitGlyphVector(TEXT, font, width / 2));
+        assertSame(cache.getGlyphVector(TEXT, font), 
+                cache.getFitGlyphVector(TEXT, font, width + 1));
+        assertNull(cache.getFitGlyphVector(TEXT, font, 1));
+
+        // both labels are still cached
+        assertEquals(2, cache.size());
+        long measures = cache.getMeasureCount();
+        cache.getBounds("other", font);
+        cache.getBounds(TEXT, font);
+        assertEquals(measures, cache.getMeasureCount());
+    }
+
+    @Test
+    public final void testCapacity() {
+        cache.getBounds("a", font);
+        cache.getBounds("b", font);
+        cache.getBounds("c", font);
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,148 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LabelDictionaryTest {
+
+    private LabelDictionary labels;
+
+    @Before
+    public void setUp() {
+        labels = new LabelDictionary();
+    }
+
+    @Test
+    public final void testLabel() {
+        int string = labels.label("java.lang.String");
+        int integer = labels.label("java.lang.Integer");
+        int lang = labels.label("java.lang");
+
+        assertEquals("java.lang.String", labels.toString(string));
+        assertEquals("java.lang.Integer", labels.toString(integer));
+        // prefixes and segments are shared
+        assertEquals(lang, labels.getPrefix(string));
+        assertEquals(lang, labels.getPrefix(integer));
+        assertEquals(4, labels.size());
+        assertEquals(4, labels.getSegmentCount());
+        // equal labels have equal ids
+        assertEquals(string, labels.label(new StringBuilder("java.lang.String")));
+        assertEquals(labels.segment("lang", 0, 4), 
+                labels.segment("java.lang.String", 5, 9));
+    }
+
+    @Test
+    public final void testConcat() {
+        int com = labels.label("com");
+        int rest = labels.label("example.foo");
+        int full = labels.concat(com, rest);
+        assertEquals("com.example.foo", labels.toString(full));
+        assertEquals(labels.label("com.example.foo"), full);
+        assertEquals(".com", labels.toString(labels.concat(labels.label(""), com)));
+    }
+
+    @Test
+    public final void testAppendAndMatches() {
+        int id = labels.label("a.bb.ccc");
+        StringBuilder sb = new StringBuilder("x:");
+        assertEquals("x:a.bb.ccc", labels.append(id, sb).toString());
+        assertTrue(labels.matches(id, "a.bb.ccc"));
+        assertFalse(labels.matches(id, "a.bb.cc"));
+        assertFalse(labels.matches(id, "a.bb.cccc"));
+        assertFalse(labels.matches(id, "a.bbccc"));
+        assertTrue(labels.matches(labels.label(""), ""));
+        assertFalse(labels.matches(id, "x.a.bb.ccc"));
+        assertFalse(labels.matches(id, ".bb.ccc"));
+
+        // appending after other text
+        assertEquals("x:a.bb.ccc", labels.append(id, new StringBuilder("x:")).toString());
+    }
+
+    @Test
+    public final void testStringsAreNotKept() {
+        int id = labels.label("java.lang.String");
+        String s = labels.toString(id);
+        assertEquals(s, labels.toString(id));
+        assertNotSame(s, labels.toString(id));
+
+        // a reused builder gives the labels without strings
+        int other = labels.label("java.util.List");
+        StringBuilder sb = new StringBuilder();
+        TreeMapNode node = new TreeMapNode(labels, id, 1);
+        assertEquals("java.lang.String", node.appendLabel(sb).toString());
+        sb.setLength(0);
+        assertEquals("java.util.List", labels.append(other, sb).toString());
+    }
+
+    @Test
+    public final void testConcurrentReads() throws InterruptedException {
+        final int[] ids = new int[2000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = labels.label("p" + (i % 50) + ".q" + (i % 7) + ".C" + i);
+        }
+        final AtomicReference<String> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    StringBuilder sb = new StringBuilder();
+                    for (int round = 0; round < 20; round++) {
+                        for (int i = 0; i < ids.length; i++) {
+                            String expected = "p" + (i % 50) + ".q" + (i % 7) + ".C" + i;
+                            sb.setLength(0);
+                            if (!labels.matches(ids[i], expected) 
+                                    || !expected.equals(labels.append(ids[i], sb).toString())
+                                    || !expected.equals(labels.toString(ids[i]))) {
+                                error.set(expected);
+                            }
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+    }
+
+    @Test
+    public final void testGrowth() {
+        int[] ids = new int[10000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = labels.label("pkg" + (i % 100) + ".Class" + i);
+        }
+        assertEquals(10100, labels.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("pkg" + (i % 100) + ".Class" + i, labels.toString(ids[i]));
+            assertEquals(ids[i], labels.label("pkg" + (i % 100) + ".Class" + i));
+        }
+    }
+
+    @Test
+    public final void testNodes() {
+        TreeMapNode a = new TreeMapNode(labels, labels.label("a.b"), 1);
+        TreeMapNode b = new TreeMapNode(labels, labels.label("a.b"), 2);
+        TreeMapNode c = new TreeMapNode("a.b", 3);
+        assertEquals("a.b", a.getLabel());
+        assertTrue(a.hasSameLabel(b));
+        assertTrue(a.hasSameLabel(c));
+        assertTrue(c.hasSameLabel(a));
+        assertTrue(a.labelEquals("a.b"));
+        assertEquals(a, a.searchNodeByLabel("a.b"));
+    }
+}
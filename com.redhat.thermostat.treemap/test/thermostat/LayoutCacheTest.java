@@ -0,0 +1,199 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class LayoutCacheTest {
+
+    private static final Rectangle2D.Double AREA = new Rectangle2D.Double(0, 0, 800, 600);
+
+    private ObjectHistogram histogram;
+    private TreeMapNode tree;
+    private int bytes;
+    private int instances;
+
+    @Before
+    public void setUp() {
+        histogram = new WorkloadGenerator(3).histogram(300);
+        tree = HistogramConverter.convertToTreeMap(histogram);
+        AttributeSchema schema = tree.getAttributeSchema();
+        bytes = schema.getSlot(HistogramConverter.TOTAL_SIZE);
+        instances = schema.getSlot(HistogramConverter.NUMBER_OF);
+    }
+
+    @Test
+    public final void testMetricLayout() {
+        // laying out by size gives the same rectangles as the plain layout
+        TreeMapNode plain = HistogramConverter.convertToTreeMap(histogram);
+        TreeProcessor.processTreeMap(plain, area());
+        TreeProcessor.processTreeMap(tree, area(), bytes);
+        assertEquals(byName(plain), byName(tree));
+
+        // nodes' weights are not changed by other metrics
+        double weight = tree.getRealWeight();
+        TreeProcessor.processTreeMap(tree, area(), instances);
+        assertEquals(weight, tree.getRealWeight(), 0);
+        TreeMapNode first = tree.getChildren().get(0);
+        TreeMapNode second = tree.getChildren().get(1);
+        assertEquals(sum(first, instances) / sum(second, instances), 
+                area(first) / area(second), 1e-4);
+    }
+
+    @Test
+    public final void testSwitchBack() {
+        Map<TreeMapNode, Double> weights = weights(tree);
+        LayoutCache cache = new LayoutCache();
+        cache.process(tree, area(), AttributeSchema.NONE);
+        Map<TreeMapNode, Rectangle2D.Double> bySize = rectangles(tree);
+
+        cache.process(tree, area(), instances);
+        assertFalse(bySize.equals(rectangles(tree)));
+        cache.process(tree, area(), AttributeSchema.NONE);
+        assertEquals(1, cache.getHits());
+        assertEquals(bySize, rectangles(tree));
+        assertEquals(weights, weights(tree));
+    }
+
+    @Test
+    public final void testSwitchMetric() {
+        LayoutCache cache = new LayoutCache();
+        cache.process(tree, area(), bytes);
+        Map<TreeMapNode, Rectangle2D.Double> bySize = rectangles(tree);
+        cache.process(tree, area(), instances);
+        Map<TreeMapNode, Rectangle2D.Double> byCount = rectangles(tree);
+        assertFalse(bySize.equals(byCount));
+        assertEquals(0, cache.getHits());
+
+        cache.process(tree, area(), bytes);
+        assertEquals(1, cache.getHits());
+        assertEquals(bySize, rectangles(tree));
+        cache.process(tree, area(), instances);
+        assertEquals(2, cache.getHits());
+        assertEquals(byCount, rectangles(tree));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public final void testCapacity() {
+        LayoutCache cache = new LayoutCache(1);
+        cache.process(tree, area(), bytes);
+        cache.process(tree, area(), instances);
+        assertEquals(1, cache.size());
+
+        // the layout by size has been dropped
+        cache.process(tree, area(), bytes);
+        assertEquals(0, cache.getHits());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public final void testChangedArea() {
+        LayoutCache cache = new LayoutCache();
+        cache.process(tree, area(), bytes);
+        cache.process(tree, new Rectangle2D.Double(0, 0, 400, 300), bytes);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public final void testChangedShape() {
+        LayoutCache cache = new LayoutCache();
+        cache.process(tree, area(), bytes);
+        tree.getChildren().get(0).addChild(new TreeMapNode("new", 1));
+        cache.process(tree, area(), bytes);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public final void testDeltas() {
+        ObjectHistogram current = new ObjectHistogram();
+        current.addRecord(new HistogramRecord("Ljava/lang/String;", 10, 400));
+        current.addRecord(new HistogramRecord("Ljava/lang/Integer;", 5, 80));
+        ObjectHistogram previous = new ObjectHistogram();
+        previous.addRecord(new HistogramRecord("Ljava/lang/String;", 4, 160));
+        previous.addRecord(new HistogramRecord("Ljava/lang/Integer;", 8, 128));
+
+        TreeMapNode root = HistogramConverter.convertToTreeMap(current, previous);
+        AttributeSchema schema = root.getAttributeSchema();
+        int delta = schema.getSlot(HistogramConverter.DELTA_NUMBER_OF);
+        TreeMapNode string = root.searchNodeByLabel("String");
+        TreeMapNode integer = root.searchNodeByLabel("Integer");
+        assertEquals(6L, string.getLongAttribute(delta));
+        assertEquals(-3L, integer.getLongAttribute(delta));
+
+        // changes are weighted by their magnitude
+        TreeProcessor.processTreeMap(root, area(), delta);
+        assertEquals(2.0, area(string) / area(integer), 1e-9);
+    }
+
+    private Rectangle2D.Double area() {
+        return (Rectangle2D.Double) AREA.clone();
+    }
+
+    private double sum(TreeMapNode node, int slot) {
+        if (node.getChildren().isEmpty()) {
+            return node.getLongAttribute(slot);
+        }
+        double sum = 0;
+        for (TreeMapNode child : node.getChildren()) {
+            sum += sum(child, slot);
+        }
+        return sum;
+    }
+
+    private double area(TreeMapNode node) {
+        Rectangle2D.Double r = node.getRectangle();
+        return r.width * r.height;
+    }
+
+    private Map<TreeMapNode, Rectangle2D.Double> rectangles(TreeMapNode root) {
+        Map<TreeMapNode, Rectangle2D.Double> result = new HashMap<>();
+        for (TreeMapNode node : nodes(root)) {
+            result.put(node, (Rectangle2D.Double) node.getRectangle().clone());
+        }
+        return result;
+    }
+
+    private Map<String, Rectangle2D.Double> byName(TreeMapNode root) {
+        Map<String, Rectangle2D.Double> result = new HashMap<>();
+        for (TreeMapNode node : nodes(root)) {
+            result.put(node.getFullName(), node.getRectangle());
+        }
+        return result;
+    }
+
+    private Map<TreeMapNode, Double> weights(TreeMapNode root) {
+        Map<TreeMapNode, Double> result = new HashMap<>();
+        for (TreeMapNode node : TreeTraversal.preOrder(root)) {
+            result.put(node, node.getRealWeight());
+        }
+        return result;
+    }
+
+    /**
+     * @return the nodes laid out, which are the root and the children of 
+     * drawable nodes.
+     */
+    private List<TreeMapNode> nodes(TreeMapNode root) {
+        List<TreeMapNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i == 0 || nodes.get(i).isDrawable()) {
+                nodes.addAll(nodes.get(i).getChildren());
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,114 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class NameIndexTest {
+
+    private static final String[] CLASSES = {
+        "java.lang.String",
+        "java.util.List",
+        "com.example.util.List",
+        "com.example.Foo",
+    };
+
+    private TreeMapNode root;
+
+    @Before
+    public void setUp() {
+        ObjectHistogram histogram = new ObjectHistogram();
+        for (String name : CLASSES) {
+            histogram.addRecord(new HistogramRecord("L" + name.replace('.', '/') + ";", 1, 10));
+        }
+        root = HistogramConverter.convertToTreeMap(histogram);
+    }
+
+    @Test
+    public final void testFullName() {
+        TreeMapNode packed = root.findByName("com.example.util.List");
+        // com.example.util has one class, so its node is packed
+        assertEquals("util.List", packed.getLabel());
+        assertEquals("com.example.util.List", packed.getFullName());
+        assertEquals("", root.getFullName());
+    }
+
+    @Test
+    public final void testFindByName() {
+        for (String name : CLASSES) {
+            TreeMapNode node = root.findByName(name);
+            assertEquals(name, node.getFullName());
+            assertSame(node, node.findByName(name));
+        }
+        assertEquals("java", root.findByName("java").getLabel());
+        assertSame(root.findByName("java.util.List"),
+                root.findByName("java").findByName("java.util.List"));
+        assertNull(root.findByName("java.util.Map"));
+        assertNull(root.findByName("com.example.util"));
+        assertNull(root.findByName("java").findByName("com.example.Foo"));
+    }
+
+    @Test
+    public final void testIndex() {
+        NameIndex index = new NameIndex(root);
+        for (String name : CLASSES) {
+            assertSame(root.findByName(name), index.get(name));
+        }
+        assertSame(root, index.get(""));
+        assertNull(index.get("List"));
+    }
+
+    @Test
+    public final void testIndexFollowsChanges() {
+        NameIndex index = new NameIndex(root);
+        int size = index.size();
+        TreeMapNode java = root.findByName("java");
+        TreeMapNode integer = new TreeMapNode("Integer", 5);
+        java.addChild(integer);
+        assertSame(integer, index.get("java.Integer"));
+        assertSame(integer, root.findByName("java.Integer"));
+        assertEquals(size + 1, index.size());
+
+        integer.setLabel("Long");
+        assertNull(index.get("java.Integer"));
+        assertSame(integer, index.get("java.Long"));
+        assertSame(integer, root.findByName("java.Long"));
+    }
+
+    @Test
+    public final void testOtherTreesDontChangeVersion() {
+        int version = root.getStructureVersion();
+        ObjectHistogram histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord("Ljava/lang/Object;", 1, 10));
+        TreeMapNode other = HistogramConverter.convertToTreeMap(histogram);
+        other.addChild(new TreeMapNode("Integer", 5));
+        other.setLabel("other");
+        assertEquals(version, root.getStructureVersion());
+
+        root.findByName("java").addChild(new TreeMapNode("Integer", 5));
+        assertFalse(version == root.getStructureVersion());
+    }
+
+    @Test
+    public final void testAttachedSubtree() {
+        TreeMapNode sub = new TreeMapNode("sub", 1);
+        sub.addChild(new TreeMapNode("Foo", 1));
+        NameIndex index = new NameIndex(sub);
+        assertEquals("sub.Foo", index.get("sub.Foo").getFullName());
+
+        // full names now start with the new parent's name
+        root.findByName("java").addChild(sub);
+        assertNull(index.get("sub.Foo"));
+        assertSame(sub.getChildren().get(0), index.get("java.sub.Foo"));
+        TreeMapNode bar = new TreeMapNode("Bar", 1);
+        sub.addChild(bar);
+        assertSame(bar, index.get("java.sub.Bar"));
+    }
+}
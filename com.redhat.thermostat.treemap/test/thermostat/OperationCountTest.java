@@ -0,0 +1,141 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+/**
+ * Checks with operation counts that conversion and layout do an amount of 
+ * work linear in the size of the tree, on the inputs which used to be 
+ * quadratic. Unlike {@link ScalingTest}, results don't depend on timing.
+ */
+public class OperationCountTest {
+
+    private static final int N = 20000;
+
+    private TreeMapMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = TreeMapMetrics.getInstance();
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    @Test
+    public final void testConversionOfDeepPackage() {
+        // two classes at the bottom of a chain of N packages
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < N; i++) {
+            sb.append('p').append(i).append('.');
+        }
+        ObjectHistogram histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord(sb + "A", 1, 1));
+        histogram.addRecord(new HistogramRecord(sb + "B", 1, 2));
+
+        TreeMapNode tree = HistogramConverter.convertToTreeMap(histogram);
+        // the chain is packed into the root
+        assertEquals(2, tree.getChildren().size());
+        assertTrue(tree.getLabel().endsWith(sb.substring(0, sb.length() - 1)));
+        // a few labels per package: joining the chain's labels one node at
+        // a time would create a label for each prefix of each partial chain
+        LabelDictionary labels = tree.getLabelDictionary();
+        assertTrue(labels.getSegmentCount() <= N + 4);
+        assertTrue(labels.size() + " labels", labels.size() <= 4 * N);
+    }
+
+    @Test
+    public final void testConversionOfFlatPackage() {
+        ObjectHistogram histogram = new ObjectHistogram();
+        for (int i = 0; i < N; i++) {
+            histogram.addRecord(new HistogramRecord("com.example.Class" + i, 1, i + 1));
+        }
+        TreeMapNode tree = HistogramConverter.convertToTreeMap(histogram);
+        assertEquals(N, tree.getChildren().size());
+        LabelDictionary labels = tree.getLabelDictionary();
+        assertTrue(labels.getSegmentCount() <= N + 4);
+        assertTrue(labels.size() + " labels", labels.size() <= 3 * N);
+    }
+
+    @Test
+    public final void testLayoutOfFlatTree() {
+        TreeMapNode tree = new WorkloadGenerator(42).tree(1, 5 * N, false);
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 1024, 768));
+        assertSquarifyStepsLinear();
+    }
+
+    @Test
+    public final void testLayoutOfGeneratedHeap() {
+        TreeMapNode tree = HistogramConverter.convertToTreeMap(
+                new WorkloadGenerator(42).histogram(N));
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 4096, 4096));
+        assertSquarifyStepsLinear();
+    }
+
+    @Test
+    public final void testClassNameSearch() {
+        TreeMapNode tree = HistogramConverter.convertToTreeMap(
+                new WorkloadGenerator(42).histogram(N));
+        ClassNameIndex index = new ClassNameIndex(tree);
+        List<String> names = new ArrayList<>();
+        for (TreeMapNode node : TreeTraversal.preOrder(tree)) {
+            if (node.getChildren().isEmpty()) {
+                names.add(node.getFullName().toLowerCase(Locale.ROOT));
+            }
+        }
+        int steps = 32 - Integer.numberOfLeadingZeros(names.size());
+
+        for (String text : new String[] { "j", "ja", "jav", "java.util.", "hashm", "string" }) {
+            // four binary searches, over full and simple names
+            long count = index.getCompareCount();
+            index.findPrefix(text);
+            assertTrue(text, index.getCompareCount() - count <= 4 * steps);
+
+            // texts up to three characters are looked up, longer ones 
+            // verify the classes of their least common sequence
+            count = index.getCompareCount();
+            index.findSubstring(text);
+            long expected = 0;
+            if (text.length() > 3) {
+                expected = names.size();
+                for (int i = 0; i + 3 <= text.length(); i++) {
+                    expected = Math.min(expected, countContaining(names, text.substring(i, i + 3)));
+                }
+            }
+            assertTrue(text, index.getCompareCount() - count <= expected);
+        }
+    }
+
+    private int countContaining(List<String> names, String text) {
+        int count = 0;
+        for (String name : names) {
+            if (name.contains(text)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void assertSquarifyStepsLinear() {
+        long placed = metrics.getLastTreeSize();
+        long steps = metrics.getSquarifySteps();
+        assertTrue(steps + " steps for " + placed + " nodes", steps <= 2 * placed);
+    }
+}
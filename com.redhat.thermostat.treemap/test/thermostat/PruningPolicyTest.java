@@ -0,0 +1,92 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class PruningPolicyTest {
+
+    private ObjectHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord("La/A;", 1, 10));
+        histogram.addRecord(new HistogramRecord("La/B;", 2, 5));
+        histogram.addRecord(new HistogramRecord("La/C;", 3, 1));
+        histogram.addRecord(new HistogramRecord("Lb/D;", 4, 7));
+        histogram.addRecord(new HistogramRecord("[I", 5, 2));
+    }
+
+    @Test
+    public final void testTopPerPackage() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, 
+                PruningPolicy.topPerPackage(1));
+        assertEquals(25, root.getRealWeight(), 0);
+        assertNotNull(root.findByName("a.A"));
+        assertNull(root.findByName("a.B"));
+        assertOthers(root.findByName("a." + HistogramConverter.OTHERS), 6, 5, 2);
+        assertNotNull(root.findByName("b.D"));
+        // the only class of the default package is kept
+        assertNotNull(root.findByName("int[]"));
+    }
+
+    @Test
+    public final void testMinFraction() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, 
+                PruningPolicy.minFraction(0.1));
+        assertNotNull(root.findByName("a.B"));
+        assertOthers(root.findByName("a." + HistogramConverter.OTHERS), 1, 3, 1);
+        assertOthers(root.findByName(HistogramConverter.OTHERS), 2, 5, 1);
+        assertEquals(25, root.getRealWeight(), 0);
+    }
+
+    @Test
+    public final void testCoverage() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, null, 
+                PruningPolicy.coverage(0.9));
+        // 10 + 7 + 5 bytes cover 88% of 25 bytes, so 2 more are needed
+        assertNotNull(root.findByName("int[]"));
+        assertOthers(root.findByName("a." + HistogramConverter.OTHERS), 1, 3, 1);
+    }
+
+    @Test
+    public final void testDeltas() {
+        ObjectHistogram previous = new ObjectHistogram();
+        previous.addRecord(new HistogramRecord("La/B;", 1, 4));
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram, previous, 
+                PruningPolicy.topPerPackage(1));
+        TreeMapNode others = root.findByName("a." + HistogramConverter.OTHERS);
+        AttributeSchema schema = others.getAttributeSchema();
+        assertEquals(2L, others.getLongAttribute(schema.getSlot(HistogramConverter.DELTA_TOTAL_SIZE)));
+        assertEquals(4L, others.getLongAttribute(schema.getSlot(HistogramConverter.DELTA_NUMBER_OF)));
+    }
+
+    @Test
+    public final void testNoPolicy() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(histogram);
+        assertNull(root.findByName("a." + HistogramConverter.OTHERS));
+        assertEquals(AttributeSchema.NONE, 
+                root.getAttributeSchema().getSlot(HistogramConverter.PRUNED_CLASSES));
+        assertFalse(root.findByName("a.C") == null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidCoverage() {
+        PruningPolicy.coverage(1.5);
+    }
+
+    private void assertOthers(TreeMapNode others, double weight, long instances, long classes) {
+        AttributeSchema schema = others.getAttributeSchema();
+        assertEquals(weight, others.getRealWeight(), 0);
+        assertEquals(instances, others.getLongAttribute(schema.getSlot(HistogramConverter.NUMBER_OF)));
+        assertEquals(classes, others.getLongAttribute(schema.getSlot(HistogramConverter.PRUNED_CLASSES)));
+    }
+}
@@ -0,0 +1,185 @@
+package thermostat;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RasterTreeMapRendererTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private ExecutorService executor;
+    private TreeMapNode tree;
+    private Font font;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        font = new Font(Font.SERIF, Font.PLAIN, 8);
+        tree = new TreeMapNode("", 0);
+        generateTree(tree, 4, 5);
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, WIDTH, HEIGHT));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public final void testSameOutputAsJava2D() {
+        TreeMapRenderer java2D = new TreeMapRenderer(font, new LabelCache());
+        java2D.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        java2D.paint(g, tree);
+        g.dispose();
+
+        RasterTreeMapRenderer raster = new RasterTreeMapRenderer(font, 
+                new LabelCache(), executor, 4);
+        raster.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        raster.render(actual, tree);
+
+        assertTrue(Arrays.equals(pixels(expected), pixels(actual)));
+
+        // the same through the paint method
+        BufferedImage painted = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g = painted.createGraphics();
+        raster.paint(g, tree);
+        g.dispose();
+        assertTrue(Arrays.equals(pixels(expected), pixels(painted)));
+    }
+
+    @Test
+    public final void testLabelsSameOutputAsJava2D() {
+        TreeMapNode labelled = new TreeMapNode("root", 0);
+        generateTree(labelled, 3, 4);
+        label(labelled, "n");
+        TreeProcessor.processTreeMap(labelled, new Rectangle2D.Double(0, 0, WIDTH, HEIGHT));
+
+        TreeMapRenderer java2D = new TreeMapRenderer(font, new LabelCache());
+        java2D.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        java2D.paint(g, labelled);
+        g.dispose();
+
+        RasterTreeMapRenderer raster = new RasterTreeMapRenderer(font, 
+                new LabelCache(), executor, 4);
+        raster.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        raster.render(actual, labelled);
+
+        // labels have been drawn
+        BufferedImage unlabelled = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        raster.setDrawLabels(false);
+        raster.render(unlabelled, labelled);
+        assertFalse(Arrays.equals(pixels(unlabelled), pixels(actual)));
+
+        assertTrue(Arrays.equals(pixels(expected), pixels(actual)));
+    }
+
+    @Test
+    public final void testPaintIntoImage() {
+        TreeMapRenderer java2D = new TreeMapRenderer(font, new LabelCache());
+        java2D.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        java2D.paint(expected, null, tree);
+
+        RasterTreeMapRenderer raster = new RasterTreeMapRenderer(font, 
+                new LabelCache(), executor, 4);
+        raster.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        raster.paint(actual, null, tree);
+        assertTrue(Arrays.equals(pixels(expected), pixels(actual)));
+
+        // other image types are drawn with Java2D
+        raster.paint(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY), null, tree);
+    }
+
+    @Test
+    public final void testInterrupted() throws InterruptedException {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            // keep the pool busy so that all bands are still queued
+            single.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            RasterTreeMapRenderer raster = new RasterTreeMapRenderer(font, 
+                    new LabelCache(), single, 4);
+            raster.setBorderStyle(TreeMapComponent.FLAT);
+            BufferedImage painted = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = painted.createGraphics();
+            Thread.currentThread().interrupt();
+            try {
+                raster.paint(g, tree);
+            } finally {
+                g.dispose();
+                assertTrue(Thread.interrupted());
+            }
+            blocked.countDown();
+            single.shutdown();
+            assertTrue(single.awaitTermination(10, TimeUnit.SECONDS));
+
+            // the bands have been cancelled and nothing has been copied
+            assertTrue(Arrays.equals(new int[WIDTH * HEIGHT], pixels(painted)));
+        } finally {
+            blocked.countDown();
+            single.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testUnsupportedImage() {
+        RasterTreeMapRenderer raster = new RasterTreeMapRenderer(font, new LabelCache());
+        raster.render(new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY), tree);
+    }
+
+    private int[] pixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    private void label(TreeMapNode node, String label) {
+        node.setLabel(label);
+        int i = 0;
+        for (TreeMapNode child : node.getChildren()) {
+            label(child, label + i++);
+        }
+    }
+
+    private void generateTree(TreeMapNode root, int levels, int childrenNumber) {
+        if (levels == 0) {
+            return;
+        }
+        for (int i = 0; i < childrenNumber; i++) {
+            root.addChild(new TreeMapNode("", 10 + i * levels));
+        }
+        for (TreeMapNode child : root.getChildren()) {
+            generateTree(child, levels - 1, childrenNumber);
+        }
+    }
+}
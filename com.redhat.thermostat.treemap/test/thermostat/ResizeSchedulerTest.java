@@ -0,0 +1,102 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResizeSchedulerTest {
+
+    private int executions;
+    private Runnable task;
+
+    @Before
+    public void setUp() {
+        executions = 0;
+        task = new Runnable() {
+            @Override
+            public void run() {
+                executions++;
+            }
+        };
+    }
+
+    @Test(expected = NullPointerException.class)
+    public final void testNullTask() {
+        new ResizeScheduler(null, 10, 10);
+    }
+
+    @Test
+    public final void testBurstIsCoalesced() throws Exception {
+        final ResizeScheduler scheduler = new ResizeScheduler(task, 50, 10000);
+        onEDT(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    scheduler.schedule();
+                }
+            }
+        });
+        Thread.sleep(300);
+        flushEDT();
+
+        // the trailing execution is never dropped
+        assertEquals(1, executions);
+        assertEquals(1L, scheduler.getRunCount());
+        assertEquals(9L, scheduler.getSkippedCount());
+        assertFalse(scheduler.isPending());
+    }
+
+    @Test
+    public final void testMaxWait() throws Exception {
+        final ResizeScheduler scheduler = new ResizeScheduler(task, 10000, 0);
+        onEDT(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.schedule();
+                scheduler.schedule();
+            }
+        });
+        // with no max wait every request runs immediately
+        assertEquals(2, executions);
+        assertEquals(0L, scheduler.getSkippedCount());
+    }
+
+    @Test
+    public final void testFlushAndCancel() throws Exception {
+        final ResizeScheduler scheduler = new ResizeScheduler(task, 10000, 10000);
+        onEDT(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.schedule();
+                assertTrue(scheduler.isPending());
+                scheduler.flush();
+                assertFalse(scheduler.isPending());
+
+                scheduler.schedule();
+                scheduler.cancel();
+                assertFalse(scheduler.isPending());
+            }
+        });
+        assertEquals(1, executions);
+        assertEquals(1L, scheduler.getRunCount());
+        assertEquals(1L, scheduler.getSkippedCount());
+    }
+
+    private void onEDT(Runnable r) throws Exception {
+        SwingUtilities.invokeAndWait(r);
+    }
+
+    private void flushEDT() throws Exception {
+        onEDT(new Runnable() {
+            @Override
+            public void run() {
+                // nothing to do, just wait for pending events
+            }
+        });
+    }
+}
@@ -0,0 +1,223 @@
+package thermostat;
+
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+/**
+ * Runs each stage at n, 2n, 4n and 8n nodes and fits the growth exponent of
+ * its time, failing if a stage scales worse than n log n. For these sizes 
+ * n log n gives an exponent of about 1.1 and a quadratic stage about 2, so
+ * the max exponent is loose enough for noisy machines. Stages are timed 
+ * with the CPU time of the test thread, so time spent by other processes
+ * and by the garbage collector threads, which mostly depends on the heap 
+ * settings of the test JVM, is not counted. Class name searches are 
+ * checked against an absolute bound instead, among 200000 classes.
+ * 
+ * <p>Being based on timing, these tests are not part of the default build: 
+ * run them with <code>mvn test -Pscaling</code>. {@link OperationCountTest}
+ * checks the same inputs with operation counts in every build.
+ */
+public class ScalingTest {
+
+    private static final int N = 10000;
+    private static final double MAX_EXPONENT = 1.5;
+    private static final int RUNS = 5;
+
+    /**
+     * Max CPU time in nanosec of a class name search among 20 * N classes.
+     */
+    private static final long MAX_SEARCH_TIME = 1000000;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * A stage to measure.
+     */
+    private interface Stage {
+        /**
+         * Prepare the input for n nodes, not measured.
+         */
+        void prepare(int n);
+
+        void run();
+    }
+
+    @Test
+    public final void testConversionOfFlatPackage() {
+        assertScaling("conversion of a flat package", new Stage() {
+            private ObjectHistogram histogram;
+
+            @Override
+            public void prepare(int n) {
+                histogram = new ObjectHistogram();
+                for (int i = 0; i < n; i++) {
+                    histogram.addRecord(new HistogramRecord("com.example.Class" + i, 1, i + 1));
+                }
+            }
+
+            @Override
+            public void run() {
+                HistogramConverter.convertToTreeMap(histogram);
+            }
+        });
+    }
+
+    @Test
+    public final void testConversionOfGeneratedHeap() {
+        assertScaling("conversion of a generated heap", new Stage() {
+            private ObjectHistogram histogram;
+
+            @Override
+            public void prepare(int n) {
+                histogram = new WorkloadGenerator(42).histogram(n);
+            }
+
+            @Override
+            public void run() {
+                HistogramConverter.convertToTreeMap(histogram);
+            }
+        });
+    }
+
+    @Test
+    public final void testConversionOfDeepPackage() {
+        assertScaling("conversion of a deep package", new Stage() {
+            private ObjectHistogram histogram;
+
+            @Override
+            public void prepare(int n) {
+                // two classes at the bottom of a chain of n packages
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < n; i++) {
+                    sb.append('p').append(i).append('.');
+                }
+                histogram = new ObjectHistogram();
+                histogram.addRecord(new HistogramRecord(sb + "A", 1, 1));
+                histogram.addRecord(new HistogramRecord(sb + "B", 1, 2));
+            }
+
+            @Override
+            public void run() {
+                HistogramConverter.convertToTreeMap(histogram);
+            }
+        });
+    }
+
+    @Test
+    public final void testLayoutOfFlatTree() {
+        assertScaling("layout of a flat tree", new Stage() {
+            private TreeMapNode tree;
+
+            @Override
+            public void prepare(int n) {
+                tree = new WorkloadGenerator(42).tree(1, n, false);
+            }
+
+            @Override
+            public void run() {
+                TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 1024, 768));
+            }
+        });
+    }
+
+    @Test
+    public final void testLayoutOfGeneratedHeap() {
+        assertScaling("layout of a generated heap", new Stage() {
+            private TreeMapNode tree;
+
+            @Override
+            public void prepare(int n) {
+                tree = HistogramConverter.convertToTreeMap(new WorkloadGenerator(42).histogram(n));
+            }
+
+            @Override
+            public void run() {
+                TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 4096, 4096));
+            }
+        });
+    }
+
+    @Test
+    public final void testClassNameSearch() {
+        ClassNameIndex index = new ClassNameIndex(HistogramConverter.convertToTreeMap(
+                new WorkloadGenerator(42).histogram(20 * N)));
+        // the names operators type, looked up as each character is typed
+        for (String text : new String[] { "hashmap", "string", "concurrent", "buffer", "java.util." }) {
+            for (boolean prefix : new boolean[] { true, false }) {
+                for (int i = 1; i <= text.length(); i++) {
+                    String typed = text.substring(0, i);
+                    long time = Long.MAX_VALUE;
+                    for (int run = 0; run < 10 * RUNS; run++) {
+                        long start = threads.getCurrentThreadCpuTime();
+                        if (prefix) {
+                            index.findPrefix(typed);
+                        } else {
+                            index.findSubstring(typed);
+                        }
+                        time = Math.min(time, threads.getCurrentThreadCpuTime() - start);
+                    }
+                    assertTrue((prefix ? "prefix " : "substring ") + typed + " took " + time 
+                            + "ns", time < MAX_SEARCH_TIME);
+                }
+            }
+        }
+    }
+
+    private void assertScaling(String name, Stage stage) {
+        // warm up
+        measure(stage, N);
+
+        double[] x = new double[4];
+        double[] y = new double[4];
+        for (int i = 0; i < x.length; i++) {
+            int n = N << i;
+            x[i] = Math.log(n);
+            y[i] = Math.log(measure(stage, n));
+        }
+        double exponent = slope(x, y);
+        assertTrue(name + " grows as n^" + exponent, exponent <= MAX_EXPONENT);
+    }
+
+    /**
+     * @return the min CPU time in nanosec of some runs of the stage.
+     */
+    private long measure(Stage stage, int n) {
+        stage.prepare(n);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            // don't charge a run with the garbage of the previous ones
+            System.gc();
+            long start = threads.getCurrentThreadCpuTime();
+            stage.run();
+            min = Math.min(min, threads.getCurrentThreadCpuTime() - start);
+        }
+        return Math.max(1, min);
+    }
+
+    /**
+     * @return the slope of the least squares line fitting the points.
+     */
+    private double slope(double[] x, double[] y) {
+        double mx = 0;
+        double my = 0;
+        for (int i = 0; i < x.length; i++) {
+            mx += x[i] / x.length;
+            my += y[i] / y.length;
+        }
+        double num = 0;
+        double den = 0;
+        for (int i = 0; i < x.length; i++) {
+            num += (x[i] - mx) * (y[i] - my);
+            den += (x[i] - mx) * (x[i] - mx);
+        }
+        return num / den;
+    }
+}
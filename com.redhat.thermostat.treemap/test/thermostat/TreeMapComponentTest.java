@@ -0,0 +1,180 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeMapComponentTest {
+
+    private TreeMapComponent treeMap;
+    private TreeMapNode tree;
+    private TreeMapNode node1, node2;
+
+    @Before
+    public void setUp() {
+        tree = new TreeMapNode("root", 1);
+        node1 = new TreeMapNode("node1", 1);
+        node2 = new TreeMapNode("node2", 1);
+        tree.addChild(node1);
+        tree.addChild(node2);
+        node1.addChild(new TreeMapNode("leaf", 1));
+
+        treeMap = new TreeMapComponent(tree, new Dimension(400, 400));
+        treeMap.setSize(400, 400);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public final void testNullTree() {
+        new TreeMapComponent(null, new Dimension());
+    }
+
+    @Test
+    public final void testOffscreenIsReused() {
+        paint();
+        paint();
+        assertEquals(1, treeMap.offscreenRenderCount);
+
+        // a layout change invalidates the image
+        treeMap.zoomIn(node1);
+        paint();
+        assertEquals(2, treeMap.offscreenRenderCount);
+        assertEquals(node1, treeMap.getTreeMapRoot());
+
+        // so does a border style change
+        treeMap.setBorderStyle(TreeMapComponent.FLAT);
+        paint();
+        assertEquals(3, treeMap.offscreenRenderCount);
+    }
+
+    @Test
+    public final void testResizeKeepsOffscreen() {
+        paint();
+        // the relayout is scheduled, until then the old image is stretched
+        treeMap.setSize(600, 500);
+        paint();
+        paint();
+        assertEquals(1, treeMap.offscreenRenderCount);
+
+        treeMap.zoomIn(node1);
+        paint();
+        assertEquals(2, treeMap.offscreenRenderCount);
+    }
+
+    @Test
+    public final void testHighlightKeepsOffscreen() {
+        paint();
+        treeMap.setHighlighted(Arrays.asList(node2));
+        paint();
+        assertEquals(1, treeMap.offscreenRenderCount);
+        assertEquals(1, treeMap.getHighlighted().size());
+        assertNotNull(TreeMapRenderer.getVisibleBounds(tree, node2));
+
+        treeMap.setHighlighted(null);
+        assertTrue(treeMap.getHighlighted().isEmpty());
+    }
+
+    @Test
+    public final void testView() {
+        paint();
+        TreeView view = new TreeView(tree, TreeView.nameStartsWith("root.node1."));
+        treeMap.setView(view);
+        paint();
+        assertEquals(2, treeMap.offscreenRenderCount);
+        assertEquals(view, treeMap.getView());
+        assertEquals(1, treeMap.mainComp.getComponentCount());
+        assertEquals(2, tree.getChildren().size());
+
+        treeMap.setView(null);
+        assertEquals(2, treeMap.mainComp.getComponentCount());
+    }
+
+    @Test
+    public final void testMetricSwitchBack() {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(new WorkloadGenerator(5).histogram(200));
+        TreeMapComponent component = new TreeMapComponent(root, new Dimension(400, 400));
+        component.setSize(400, 400);
+        component.setMetric(AttributeSchema.NONE);
+        double weight = root.getRealWeight();
+        List<Rectangle2D.Double> rectangles = rectangles(root);
+
+        component.setMetric(root.getAttributeSchema().getSlot(HistogramConverter.NUMBER_OF));
+        assertEquals(weight, root.getRealWeight(), 0);
+        component.setMetric(AttributeSchema.NONE);
+        assertEquals(weight, root.getRealWeight(), 0);
+        assertEquals(rectangles, rectangles(root));
+    }
+
+    @Test
+    public final void testZoom() {
+        treeMap.zoomIn(node1);
+        assertEquals(2, treeMap.getZoomCallsStack().size());
+        treeMap.zoomOut();
+        assertEquals(tree, treeMap.getTreeMapRoot());
+        treeMap.zoomIn(node1);
+        treeMap.zoomFull();
+        assertEquals(tree, treeMap.getTreeMapRoot());
+        assertTrue(treeMap.getZoomCallsStack().size() == 1);
+    }
+
+    @Test
+    public final void testSetModelReleasesOldTree() throws InterruptedException {
+        TreeMapNode root = HistogramConverter.convertToTreeMap(
+                new WorkloadGenerator(5).histogram(200));
+        TreeMapComponent component = new TreeMapComponent(root, new Dimension(400, 300));
+        component.setSize(400, 300);
+        int instances = root.getAttributeSchema().getSlot(HistogramConverter.NUMBER_OF);
+        component.setMetric(instances);
+        component.setMetric(AttributeSchema.NONE);
+        component.zoomIn(root.getChildren().get(0));
+        component.setHighlighted(Arrays.asList(root.getChildren().get(1)));
+        paint(component);
+
+        WeakReference<TreeMapNode> old = new WeakReference<>(root);
+        root = null;
+        TreeMapNode other = new TreeMapNode("other", 1);
+        other.addChild(new TreeMapNode("child", 1));
+        component.setModel(other);
+        paint(component);
+        assertSame(other, component.getTreeMapRoot());
+        assertEquals(1, component.getZoomCallsStack().size());
+
+        for (int i = 0; i < 50 && old.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(old.get());
+    }
+
+    private List<Rectangle2D.Double> rectangles(TreeMapNode root) {
+        List<Rectangle2D.Double> result = new ArrayList<>();
+        for (TreeMapNode child : root.getChildren()) {
+            result.add((Rectangle2D.Double) child.getRectangle().clone());
+        }
+        return result;
+    }
+
+    private void paint() {
+        paint(treeMap);
+    }
+
+    private void paint(TreeMapComponent component) {
+        BufferedImage img = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        component.paint(g);
+        g.dispose();
+    }
+}
@@ -0,0 +1,90 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeMapExporterTest {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 210;
+
+    private TreeMapNode tree;
+    private TreeMapRenderer renderer;
+
+    @Before
+    public void setUp() {
+        tree = new TreeMapNode("root", 0);
+        for (int i = 0; i < 4; i++) {
+            TreeMapNode child = new TreeMapNode("child" + i, 0);
+            tree.addChild(child);
+            for (int j = 0; j < 3; j++) {
+                child.addChild(new TreeMapNode("leaf" + j, 10 + i + j));
+            }
+        }
+        renderer = new TreeMapRenderer(new Font(Font.SERIF, Font.PLAIN, 8), new LabelCache());
+    }
+
+    @Test
+    public final void testExportMatchesFullRender() throws Exception {
+        TreeMapExporter exporter = new TreeMapExporter(renderer);
+        // strips not multiple of the height, the last one is partial
+        exporter.setStripHeight(64);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.exportPng(tree, WIDTH, HEIGHT, out);
+
+        BufferedImage exported = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(WIDTH, exported.getWidth());
+        assertEquals(HEIGHT, exported.getHeight());
+
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, WIDTH, HEIGHT));
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = expected.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        renderer.paint(g, tree);
+        g.dispose();
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), exported.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public final void testTreeLayoutUnchanged() throws Exception {
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 40, 30));
+        List<Rectangle2D.Double> before = rectangles(tree);
+
+        new TreeMapExporter(renderer).exportPng(tree, WIDTH, HEIGHT, new ByteArrayOutputStream());
+
+        assertEquals(before, rectangles(tree));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidStripHeight() {
+        new TreeMapExporter().setStripHeight(0);
+    }
+
+    private List<Rectangle2D.Double> rectangles(TreeMapNode root) {
+        List<Rectangle2D.Double> result = new ArrayList<>();
+        for (TreeMapNode node : TreeTraversal.preOrder(root)) {
+            result.add((Rectangle2D.Double) node.getRectangle().clone());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeMapMetricsTest {
+
+    private TreeMapMetrics metrics;
+    private TreeMapNode tree;
+
+    @Before
+    public void setUp() {
+        metrics = TreeMapMetrics.getInstance();
+        metrics.reset();
+        metrics.setEnabled(true);
+        tree = new WorkloadGenerator(42).tree(3, 4, false);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    @Test
+    public final void testLayout() {
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 800, 600));
+        assertEquals(1L, metrics.getLayoutCount());
+        assertEquals(1L + 4 + 16 + 64, metrics.getLastTreeSize());
+        long visited = metrics.getNodesVisited();
+        assertTrue(visited > 0);
+        assertTrue(visited + metrics.getNodesCulled() <= metrics.getLastTreeSize());
+        assertTrue(metrics.getLastLayoutTime() > 0);
+        assertEquals(metrics.getLayoutTime(), metrics.getLastLayoutTime());
+        assertTrue(metrics.getSortTime() + metrics.getNormalizeTime() 
+                + metrics.getSquarifyTime() <= metrics.getLayoutTime());
+
+        // a smaller area culls more nodes
+        metrics.reset();
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 40, 40));
+        assertTrue(metrics.getNodesVisited() < visited);
+        assertTrue(metrics.getNodesCulled() > 0);
+    }
+
+    @Test
+    public final void testComponent() {
+        TreeMapComponent treeMap = new TreeMapComponent(tree, new Dimension(800, 600));
+        treeMap.setSize(800, 600);
+        assertTrue(metrics.getComponentsCreated() > 1);
+
+        BufferedImage img = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        treeMap.paint(g);
+        g.dispose();
+        assertEquals(1L, metrics.getPaintCount());
+        assertTrue(metrics.getLastPaintTime() > 0);
+    }
+
+    @Test
+    public final void testDisabled() {
+        metrics.setEnabled(false);
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 800, 600));
+        new TreeMapComponent(tree, new Dimension(800, 600));
+        assertEquals(0L, metrics.getLayoutCount());
+        assertEquals(0L, metrics.getNodesVisited());
+        assertEquals(0L, metrics.getComponentsCreated());
+    }
+
+    @Test
+    public final void testMBean() throws Exception {
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 800, 600));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TreeMapMetrics.NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(metrics.getLayoutCount(), server.getAttribute(name, "LayoutCount"));
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, metrics.getLayoutCount());
+    }
+}
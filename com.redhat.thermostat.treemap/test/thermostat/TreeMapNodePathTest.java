@@ -0,0 +1,130 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+import com.redhat.thermostat.treemap.model.ObjectHistogram;
+
+public class TreeMapNodePathTest {
+
+    private TreeMapNode root;
+    private TreeMapNode a;
+    private TreeMapNode b;
+    private TreeMapNode c;
+    private TreeMapNode d;
+
+    @Before
+    public void setUp() {
+        // root -> a -> c, root -> b -> d
+        root = new TreeMapNode("root", 0);
+        a = new TreeMapNode("a", 0);
+        b = new TreeMapNode("b", 0);
+        c = new TreeMapNode("c", 1);
+        d = new TreeMapNode("d", 1);
+        root.addChild(a);
+        root.addChild(b);
+        a.addChild(c);
+        b.addChild(d);
+    }
+
+    @Test
+    public final void testDepth() {
+        assertEquals(0, root.getDepth());
+        assertEquals(1, b.getDepth());
+        assertEquals(2, d.getDepth());
+
+        // children added to a subtree before it is attached
+        TreeMapNode e = new TreeMapNode("e", 0);
+        TreeMapNode f = new TreeMapNode("f", 1);
+        e.addChild(f);
+        assertEquals(1, f.getDepth());
+        d.addChild(e);
+        assertEquals(3, e.getDepth());
+        assertEquals(4, f.getDepth());
+    }
+
+    @Test
+    public final void testPath() {
+        assertEquals(Arrays.asList(root, a, c), c.getPath());
+        assertEquals(Arrays.asList(root, b, d), d.getPath());
+        assertSame(root, d.getAncestor(0));
+        assertSame(b, d.getAncestor(1));
+        assertSame(d, d.getAncestor(2));
+    }
+
+    @Test
+    public final void testStructureChanges() {
+        // compute paths first, they must be updated
+        assertEquals(Arrays.asList(root, a, c), c.getPath());
+        assertEquals(Arrays.asList(root, b, d), d.getPath());
+
+        // move b's subtree under c
+        c.setChildren(Arrays.asList(b));
+        root.setChildren(Arrays.asList(a));
+        assertEquals(3, b.getDepth());
+        assertEquals(4, d.getDepth());
+        assertEquals(Arrays.asList(root, a, c, b, d), d.getPath());
+
+        // collapse a into root, as the converter packs nodes
+        root.setChildren(a.getChildren());
+        assertEquals(1, c.getDepth());
+        assertEquals(3, d.getDepth());
+        assertEquals(Arrays.asList(root, c, b, d), d.getPath());
+        assertEquals(Arrays.asList(root, c), c.getPath());
+    }
+
+    @Test
+    public final void testGetAncestors() {
+        List<TreeMapNode> ancestors = d.getAncestors();
+        assertEquals(Arrays.asList(d, b, root), ancestors);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void testMissingAncestor() {
+        c.getAncestor(3);
+    }
+
+    @Test
+    public final void testRelinkChildren() {
+        // root -> a -> c -> e becomes root -> a -> e
+        TreeMapNode e = new TreeMapNode("e", 1);
+        c.addChild(e);
+        assertEquals(3, e.getDepth());
+        assertEquals(Arrays.asList(root, a, c, e), e.getPath());
+
+        a.relinkChildren(c);
+        assertEquals(Arrays.asList(e), a.getChildren());
+        assertSame(a, e.getParent());
+        root.updateDepths();
+        assertEquals(2, e.getDepth());
+        assertEquals(Arrays.asList(root, a, e), e.getPath());
+        assertEquals(a.getFullName() + ".e", e.getFullName());
+        assertSame(e, root.findByName(e.getFullName()));
+    }
+
+    @Test
+    public final void testDepthsAfterConversion() {
+        // nested chains: a.b.c is packed, and so are d.e under it
+        ObjectHistogram histogram = new ObjectHistogram();
+        histogram.addRecord(new HistogramRecord("a.b.c.d.e.X", 1, 1));
+        histogram.addRecord(new HistogramRecord("a.b.c.d.e.Y", 1, 1));
+        histogram.addRecord(new HistogramRecord("a.b.c.Z", 1, 1));
+        TreeMapNode tree = HistogramConverter.convertToTreeMap(histogram);
+        for (TreeMapNode node : TreeTraversal.preOrder(tree)) {
+            int depth = 0;
+            for (TreeMapNode p = node.getParent(); p != null; p = p.getParent()) {
+                depth++;
+            }
+            assertEquals(node.getLabel(), depth, node.getDepth());
+            assertSame(tree, node.getAncestor(0));
+            assertSame(node, node.getAncestor(depth));
+        }
+    }
+}
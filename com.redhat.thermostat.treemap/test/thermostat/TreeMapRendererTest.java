@@ -0,0 +1,74 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeMapRendererTest {
+
+    private TreeMapNode tree;
+    private TreeMapNode child;
+    private TreeMapRenderer renderer;
+
+    @Before
+    public void setUp() {
+        tree = new TreeMapNode("", 1);
+        child = new TreeMapNode("", 1);
+        tree.addChild(child);
+        TreeProcessor.processTreeMap(tree, new Rectangle2D.Double(0, 0, 200, 100));
+        renderer = new TreeMapRenderer(new Font(Font.SERIF, Font.PLAIN, 8), new LabelCache());
+    }
+
+    @Test
+    public final void testPlace() {
+        Rectangle parent = new Rectangle(0, 0, 200, 100);
+        Rectangle bounds = TreeMapRenderer.place(child, parent);
+        assertNotNull(bounds);
+        assertEquals(TreeProcessor.X_PADDING, bounds.x);
+        assertEquals(TreeProcessor.Y_PADDING, bounds.y);
+
+        // a parent too small to contain the child with its padding
+        assertNull(TreeMapRenderer.place(child, new Rectangle(0, 0, 20, 20)));
+    }
+
+    @Test
+    public final void testVisit() {
+        final List<TreeMapNode> visited = new ArrayList<>();
+        TreeMapRenderer.visit(tree, new TreeMapRenderer.Visitor() {
+            @Override
+            public void visit(TreeMapNode node, Rectangle bounds, Rectangle visible) {
+                visited.add(node);
+            }
+        });
+        assertEquals(2, visited.size());
+        assertEquals(tree, visited.get(0));
+        assertEquals(child, visited.get(1));
+    }
+
+    @Test
+    public final void testPaintFlat() {
+        renderer.setBorderStyle(TreeMapComponent.FLAT);
+        BufferedImage img = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        renderer.paint(g, tree);
+        g.dispose();
+
+        Color rootColor = tree.getColor();
+        Color childColor = child.getColor();
+        assertEquals(rootColor.getRGB(), img.getRGB(1, 1));
+        assertEquals(childColor.getRGB(), img.getRGB(TreeProcessor.X_PADDING + 1, 
+                TreeProcessor.Y_PADDING + 1));
+    }
+}
@@ -0,0 +1,128 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeTraversalTest {
+
+    private static final int DEEP = 100000;
+
+    private TreeMapNode root;
+
+    @Before
+    public void setUp() {
+        //        r
+        //      /   \
+        //     a     b
+        //    / \     \
+        //   c   d     e
+        root = new TreeMapNode("r", 0);
+        TreeMapNode a = new TreeMapNode("a", 0);
+        TreeMapNode b = new TreeMapNode("b", 0);
+        root.addChild(a);
+        root.addChild(b);
+        a.addChild(new TreeMapNode("c", 1));
+        a.addChild(new TreeMapNode("d", 2));
+        b.addChild(new TreeMapNode("e", 3));
+    }
+
+    @Test
+    public final void testOrders() {
+        assertEquals("racdbe", labels(TreeTraversal.preOrder(root)));
+        assertEquals("cdaebr", labels(TreeTraversal.postOrder(root)));
+        assertEquals("rabcde", labels(TreeTraversal.breadthFirst(root)));
+    }
+
+    @Test
+    public final void testSkipChildren() {
+        StringBuilder sb = new StringBuilder();
+        TreeTraversal.PreOrder it = new TreeTraversal.PreOrder(root);
+        while (it.hasNext()) {
+            TreeMapNode node = it.next();
+            sb.append(node.getLabel());
+            if (node.labelEquals("a")) {
+                it.skipChildren();
+            }
+        }
+        assertEquals("rabe", sb.toString());
+    }
+
+    @Test
+    public final void testVisitor() {
+        final StringBuilder sb = new StringBuilder();
+        root.accept(new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                sb.append('+').append(node.getLabel()).append(depth);
+                return node.labelEquals("b") ? Result.SKIP_CHILDREN : Result.CONTINUE;
+            }
+
+            @Override
+            public Result leave(TreeMapNode node, int depth) {
+                sb.append('-').append(node.getLabel());
+                return Result.CONTINUE;
+            }
+        });
+        assertEquals("+r0+a1+c2-c+d2-d-a+b1-r", sb.toString());
+    }
+
+    @Test
+    public final void testStop() {
+        final StringBuilder sb = new StringBuilder();
+        root.accept(new TreeMapVisitor() {
+            @Override
+            public Result enter(TreeMapNode node, int depth) {
+                sb.append(node.getLabel());
+                return node.labelEquals("d") ? Result.STOP : Result.CONTINUE;
+            }
+        });
+        assertEquals("racd", sb.toString());
+    }
+
+    @Test
+    public final void testDeepTree() {
+        TreeMapNode deep = new TreeMapNode("0", 1);
+        TreeMapNode last = deep;
+        for (int i = 1; i < DEEP; i++) {
+            TreeMapNode node = new TreeMapNode(Integer.toString(i), 1);
+            last.addChild(node);
+            last = node;
+        }
+
+        assertEquals(DEEP - 1, last.getDepth());
+        assertSame(last, deep.searchNodeByLabel(Integer.toString(DEEP - 1)));
+        assertNull(deep.searchNodeByLabel("missing"));
+        assertEquals(DEEP, count(TreeTraversal.postOrder(deep)));
+        assertEquals(DEEP, count(TreeTraversal.breadthFirst(deep)));
+
+        // deep trees are laid out without overflowing the stack
+        TreeProcessor.processTreeMap(deep, new Rectangle2D.Double(0, 0, 800, 600));
+        assertFalse(deep.getChildren().get(0).getRectangle().isEmpty());
+    }
+
+    private String labels(Iterable<TreeMapNode> nodes) {
+        StringBuilder sb = new StringBuilder();
+        for (TreeMapNode node : nodes) {
+            sb.append(node.getLabel());
+        }
+        return sb.toString();
+    }
+
+    private int count(Iterable<TreeMapNode> nodes) {
+        int count = 0;
+        Iterator<TreeMapNode> it = nodes.iterator();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+}
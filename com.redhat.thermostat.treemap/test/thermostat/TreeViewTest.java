@@ -0,0 +1,139 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeViewTest {
+
+    private TreeMapNode root, a, b, c, x, y, z;
+
+    @Before
+    public void setUp() {
+        root = new TreeMapNode("root", 11);
+        a = new TreeMapNode("a", 4);
+        b = new TreeMapNode("b", 5);
+        c = new TreeMapNode("c", 2);
+        x = new TreeMapNode("x", 3);
+        y = new TreeMapNode("y", 1);
+        z = new TreeMapNode("z", 5);
+        root.addChild(a);
+        root.addChild(b);
+        root.addChild(c);
+        a.addChild(x);
+        a.addChild(y);
+        b.addChild(z);
+    }
+
+    @Test
+    public final void testWeights() {
+        TreeView view = new TreeView(root, TreeView.minRealWeight(2));
+        assertEquals(10, view.getWeight(root), 0);
+        assertEquals(3, view.getWeight(a), 0);
+        assertTrue(view.contains(x));
+        assertFalse(view.contains(y));
+        assertEquals(Arrays.asList(b, a, c), view.getChildren(root));
+        assertEquals(Arrays.asList(x), view.getChildren(a));
+        // the tree doesn't change
+        assertEquals(Arrays.asList(a, b, c), root.getChildren());
+        assertEquals(4, a.getRealWeight(), 0);
+    }
+
+    @Test
+    public final void testLazy() {
+        final List<TreeMapNode> accepted = new ArrayList<>();
+        TreeView view = new TreeView(root, new TreeView.Filter() {
+            @Override
+            public boolean accept(TreeMapNode leaf) {
+                accepted.add(leaf);
+                return leaf != y;
+            }
+        });
+        assertTrue(accepted.isEmpty());
+        assertEquals(3, view.getWeight(a), 0);
+        assertEquals(new HashSet<>(Arrays.asList(x, y)), new HashSet<>(accepted));
+        // a's subtree is not measured again
+        assertEquals(10, view.getWeight(root), 0);
+        assertEquals(4, accepted.size());
+        assertEquals(new HashSet<>(Arrays.asList(x, y, z, c)), new HashSet<>(accepted));
+        view.getWeight(root);
+        assertEquals(4, accepted.size());
+
+        // the view follows the tree
+        TreeMapNode w = new TreeMapNode("w", 7);
+        c.addChild(w);
+        assertEquals(15, view.getWeight(root), 0);
+        assertSame(w, view.getChildren(c).get(0));
+    }
+
+    @Test
+    public final void testNameFilter() {
+        TreeView view = new TreeView(root, TreeView.nameStartsWith("root.a."));
+        assertEquals(4, view.getWeight(root), 0);
+        assertEquals(Arrays.asList(a), view.getChildren(root));
+        assertFalse(view.contains(b));
+    }
+
+    @Test
+    public final void testLayoutAsFilteredCopy() {
+        Rectangle2D.Double area = new Rectangle2D.Double(0, 0, 800, 600);
+        TreeView view = new TreeView(root, TreeView.minRealWeight(2));
+        TreeProcessor.processTreeMap(view, root, area);
+
+        TreeMapNode copy = new TreeMapNode("root", 10);
+        TreeMapNode a1 = new TreeMapNode("a", 3);
+        TreeMapNode b1 = new TreeMapNode("b", 5);
+        TreeMapNode c1 = new TreeMapNode("c", 2);
+        TreeMapNode x1 = new TreeMapNode("x", 3);
+        TreeMapNode z1 = new TreeMapNode("z", 5);
+        copy.addChild(a1);
+        copy.addChild(b1);
+        copy.addChild(c1);
+        a1.addChild(x1);
+        b1.addChild(z1);
+        TreeProcessor.processTreeMap(copy, new Rectangle2D.Double(0, 0, 800, 600));
+
+        assertEquals(a1.getRectangle(), a.getRectangle());
+        assertEquals(b1.getRectangle(), b.getRectangle());
+        assertEquals(c1.getRectangle(), c.getRectangle());
+        assertEquals(x1.getRectangle(), x.getRectangle());
+        assertEquals(z1.getRectangle(), z.getRectangle());
+        assertEquals(Arrays.asList(a, b, c), root.getChildren());
+        // nodes keep their own weights
+        assertEquals(4, a.getWeight(), 0);
+        assertEquals(1, y.getWeight(), 0);
+
+        final List<TreeMapNode> visited = new ArrayList<>();
+        TreeMapRenderer.visit(view, root, new TreeMapRenderer.Visitor() {
+            @Override
+            public void visit(TreeMapNode node, Rectangle bounds, Rectangle visible) {
+                visited.add(node);
+            }
+        });
+        assertEquals(Arrays.asList(root, b, z, a, x, c), visited);
+    }
+
+    @Test
+    public final void testOtherTreesKeepView() {
+        TreeView view = new TreeView(root, TreeView.minRealWeight(2));
+        List<TreeMapNode> children = view.getChildren(root);
+        TreeMapNode other = new TreeMapNode("other", 1);
+        other.addChild(new TreeMapNode("leaf", 1));
+        other.setLabel("renamed");
+        assertSame(children, view.getChildren(root));
+
+        c.setLabel("d");
+        assertFalse(children == view.getChildren(root));
+    }
+}
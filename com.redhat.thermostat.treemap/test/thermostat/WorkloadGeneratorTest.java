@@ -0,0 +1,95 @@
+package thermostat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.treemap.model.HistogramRecord;
+
+public class WorkloadGeneratorTest {
+
+    private static final int CLASSES = 5000;
+
+    private WorkloadGenerator generator;
+
+    @Before
+    public void setUp() {
+        generator = new WorkloadGenerator(42);
+    }
+
+    @Test
+    public final void testSameSeedSameRecords() {
+        List<HistogramRecord> first = generator.records(CLASSES);
+        List<HistogramRecord> second = new WorkloadGenerator(42).records(CLASSES);
+        assertEquals(first, second);
+        assertTrue(!first.equals(new WorkloadGenerator(43).records(CLASSES)));
+    }
+
+    @Test
+    public final void testUniqueNames() {
+        Set<String> names = new HashSet<>();
+        for (HistogramRecord record : generator.records(CLASSES)) {
+            assertTrue(names.add(record.getClassname()));
+        }
+        assertEquals(CLASSES, generator.histogram(CLASSES).getHistogram().size());
+    }
+
+    @Test
+    public final void testArrays() {
+        int primitives = 0;
+        int objects = 0;
+        for (HistogramRecord record : generator.records(CLASSES)) {
+            String name = record.getClassname();
+            if (name.startsWith("[L") || name.startsWith("[[L")) {
+                assertTrue(name.endsWith(";"));
+                objects++;
+            } else if (name.startsWith("[")) {
+                primitives++;
+            }
+        }
+        assertTrue(primitives > 0);
+        assertTrue(objects > 0);
+    }
+
+    @Test
+    public final void testZipfSizes() {
+        List<HistogramRecord> records = generator.records(CLASSES);
+        long total = 0;
+        long top = 0;
+        for (int i = 0; i < records.size(); i++) {
+            total += records.get(i).getTotalSize();
+            if (i < CLASSES / 100) {
+                top += records.get(i).getTotalSize();
+            }
+        }
+        // the biggest 1% of the classes holds most of the heap
+        assertTrue(top > total / 2);
+    }
+
+    @Test
+    public final void testTree() {
+        TreeMapNode tree = generator.tree(4, 3, false);
+        assertEquals(3 + 9 + 27 + 81, count(tree) - 1);
+
+        TreeMapNode first = generator.tree(6, 4, true);
+        TreeMapNode second = new WorkloadGenerator(42).tree(6, 4, true);
+        assertEquals(count(first), count(second));
+        assertEquals(first.getChildren().size(), second.getChildren().size());
+        assertEquals(first.getChildren().get(0).getRealWeight(), 
+                second.getChildren().get(0).getRealWeight(), 0);
+    }
+
+    private int count(TreeMapNode node) {
+        int count = 1;
+        for (TreeMapNode child : node.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+}